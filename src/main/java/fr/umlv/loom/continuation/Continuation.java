@@ -1,65 +1,143 @@
 package fr.umlv.loom.continuation;
 
 import fr.umlv.loom.executor.UnsafeExecutors;
+import jdk.internal.vm.ContinuationScope;
 
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
 
+// If the package jdk.internal.vm is exported (--add-exports java.base/jdk.internal.vm=ALL-UNNAMED),
+// the internal continuation is used directly, otherwise the body runs in a virtual thread scheduled
+// on the owner thread (the executor is Runnable::run) and the owner and the virtual thread
+// hand off using park/unpark and a volatile state, so a yield does not take a lock.
+// If neither the internal continuation nor the executor of a virtual thread is available
+// (UnsafeExecutors.Mode.DEFAULT_SCHEDULER), a continuation can not be created.
+// With the internal continuation, the body runs on the thread that calls run() and a ContinuationPool
+// is not used, if the body throws an exception, it is propagated by run() and the continuation is done.
 public class Continuation {
   private enum State { NEW, RUNNING, WAITED, TERMINATED }
 
+  private static final boolean INTERNAL =
+      Object.class.getModule().isExported("jdk.internal.vm", Continuation.class.getModule());
+
   private static final ScopedValue<Continuation> CONTINUATION_SCOPE_LOCAL = ScopedValue.newInstance();
 
   private final Runnable runnable;
   private final Thread owner;
-  private State state = State.NEW;
-  private final ReentrantLock lock = new ReentrantLock();
-  private final Condition condition = lock.newCondition();
+  private volatile State state = State.NEW;
+  private Thread thread;  // the virtual thread, written by the virtual thread before the first yield
+  private final InternalContinuation internal;  // null if not INTERNAL
+  private final ContinuationPool pool;  // null if not pooled
+  private ContinuationPool.Worker worker;  // the pooled virtual thread running this continuation
 
   public Continuation(Runnable runnable) {
+    this(runnable, null);
+  }
+
+  Continuation(Runnable runnable, ContinuationPool pool) {
+    if (!INTERNAL && UnsafeExecutors.mode() == UnsafeExecutors.Mode.DEFAULT_SCHEDULER) {
+      // the virtual thread would not run on the caller of run(), so run() would not wait for the next yield
+      throw new UnsupportedOperationException(
+          "the virtual thread executor can not be set (mode " + UnsafeExecutors.mode() + ") and jdk.internal.vm is not exported");
+    }
     this.runnable = runnable;
     this.owner = Thread.currentThread();
+    this.internal = INTERNAL? new InternalContinuation(runnable): null;
+    this.pool = INTERNAL? null: pool;
+  }
+
+  // true if the internal continuation is used
+  static boolean isInternal() {
+    return INTERNAL;
+  }
+
+  public boolean isDone() {
+    return state == State.TERMINATED;
   }
 
   public void run() {
     if (Thread.currentThread() != owner) {
       throw new IllegalStateException();
     }
+    if (internal != null) {
+      switch (state) {
+        case NEW, WAITED -> {
+          state = State.RUNNING;
+          // the body runs on this thread, so its interrupt status must not leak to the caller
+          // and the one of the caller must not be seen by the body
+          var interrupted = Thread.interrupted();
+          var completed = false;
+          try {
+            internal.run();
+            completed = true;
+          } finally {
+            state = !completed || internal.isDone()? State.TERMINATED: State.WAITED;
+            Thread.interrupted();
+            if (interrupted) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        }
+        case RUNNING, TERMINATED -> throw new IllegalStateException();
+      }
+      return;
+    }
     switch (state) {
       case NEW -> {
         state = State.RUNNING;
-        var executor = UnsafeExecutors.virtualThreadExecutor(Runnable::run);
-        executor.execute(() -> {
-          ScopedValue.runWhere(CONTINUATION_SCOPE_LOCAL, this, runnable);
-          state = State.TERMINATED;
-        });
+        if (pool != null) {
+          worker = pool.start(this);
+        } else {
+          var executor = UnsafeExecutors.virtualThreadExecutor(Runnable::run);
+          executor.execute(this::runBody);
+        }
       }
       case WAITED -> {
         state = State.RUNNING;
-        lock.lock();
-        try {
-          condition.signal();
-        } finally {
-          lock.unlock();
-        }
+        LockSupport.unpark(thread);  // the virtual thread runs on this thread until the next yield
       }
       case RUNNING, TERMINATED -> throw new IllegalStateException();
     }
+    if (worker != null && state == State.TERMINATED) {
+      // the virtual thread is parked, so it can be reused by another continuation
+      var worker = this.worker;
+      this.worker = null;
+      pool.release(worker);
+    }
+  }
+
+  // called by the virtual thread
+  void runBody() {
+    thread = Thread.currentThread();
+    try {
+      ScopedValue.runWhere(CONTINUATION_SCOPE_LOCAL, this, runnable);
+    } finally {
+      state = State.TERMINATED;
+    }
   }
 
   public static void yield() {
+    if (INTERNAL) {
+      if (jdk.internal.vm.Continuation.getCurrentContinuation(InternalContinuation.SCOPE) == null) {
+        throw new IllegalStateException();
+      }
+      jdk.internal.vm.Continuation.yield(InternalContinuation.SCOPE);
+      return;
+    }
     if (!CONTINUATION_SCOPE_LOCAL.isBound()) {
       throw new IllegalStateException();
     }
     var continuation = CONTINUATION_SCOPE_LOCAL.get();
-    continuation.lock.lock();
-    try {
-      continuation.state = State.WAITED;
-      continuation.condition.await();
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-    } finally {
-      continuation.lock.unlock();
+    continuation.state = State.WAITED;
+    do {
+      LockSupport.park(continuation);
+    } while(continuation.state == State.WAITED && !Thread.currentThread().isInterrupted());
+  }
+
+  private static final class InternalContinuation extends jdk.internal.vm.Continuation {
+    private static final ContinuationScope SCOPE = new ContinuationScope("fr.umlv.loom.continuation");
+
+    private InternalContinuation(Runnable runnable) {
+      super(SCOPE, runnable);
     }
   }
 }
@@ -0,0 +1,59 @@
+package fr.umlv.loom.continuation;
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.LongSupplier;
+
+// runs the coroutine that has consumed the least time (like Linux CFS),
+// the coroutines are stored in a binary heap ordered by consumed time then by insertion order,
+// so the selection is in O(log n) and two coroutines with the same consumed time run in FIFO order.
+// A newly registered coroutine starts with the minimum consumed time of the scheduler,
+// so it does not monopolize the scheduler.
+// The clock can be replaced by a deterministic one for the tests.
+public final class FairScheduler extends Scheduler {
+  private final PriorityQueue<Coroutine> schedulable = new PriorityQueue<>(
+      Comparator.<Coroutine>comparingLong(coroutine -> coroutine.consumed).thenComparingLong(coroutine -> coroutine.sequence));
+  private final LongSupplier clock;
+  private long minConsumed;
+  private long sequence;
+
+  public FairScheduler() {
+    this(System::nanoTime);
+  }
+
+  public FairScheduler(LongSupplier clock) {
+    this.clock = Objects.requireNonNull(clock);
+  }
+
+  @Override
+  long clock() {
+    return clock.getAsLong();
+  }
+
+  @Override
+  void add(Coroutine coroutine) {
+    coroutine.consumed = Math.max(coroutine.consumed, minConsumed);
+    coroutine.sequence = sequence++;
+    schedulable.offer(coroutine);
+  }
+
+  @Override
+  Coroutine poll() {
+    var coroutine = schedulable.poll();
+    if (coroutine != null) {
+      minConsumed = Math.max(minConsumed, coroutine.consumed);
+    }
+    return coroutine;
+  }
+
+  @Override
+  void afterRun(Coroutine coroutine, long elapsed) {
+    coroutine.consumed += elapsed;
+  }
+
+  // the time consumed by a coroutine in the unit of the clock
+  public long consumed(Coroutine coroutine) {
+    return coroutine.consumed;
+  }
+}
@@ -0,0 +1,18 @@
+package fr.umlv.loom.continuation;
+
+import java.util.ArrayDeque;
+
+// runs the coroutines in the order they are registered
+public final class FifoScheduler extends Scheduler {
+  private final ArrayDeque<Coroutine> schedulable = new ArrayDeque<>();
+
+  @Override
+  void add(Coroutine coroutine) {
+    schedulable.offer(coroutine);
+  }
+
+  @Override
+  Coroutine poll() {
+    return schedulable.poll();
+  }
+}
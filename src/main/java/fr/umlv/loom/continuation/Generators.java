@@ -0,0 +1,168 @@
+package fr.umlv.loom.continuation;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Generators built on Continuation, the producer is run lazily, one batch of elements at a time.
+// The elements are pushed into a buffer and the producer yields when the buffer is full,
+// so with a batch size of N, there is one context switch every N elements.
+// The continuation is created by the thread that asks for the first element and can only be resumed by that thread.
+// A generator that is not consumed entirely keeps its continuation suspended.
+public class Generators {
+  private static final int DEFAULT_BATCH_SIZE = 1;
+
+  private Generators() {
+    throw new AssertionError();
+  }
+
+  private static final class Generator<T> implements Iterator<T>, Spliterator<T> {
+    private final Consumer<? super Consumer<? super T>> producer;
+    private final Object[] buffer;
+    private int size;
+    private int index;
+    private Continuation continuation;
+    private Throwable failure;
+
+    private Generator(Consumer<? super Consumer<? super T>> producer, int batchSize) {
+      this.producer = producer;
+      this.buffer = new Object[batchSize];
+    }
+
+    private void push(T element) {
+      Objects.requireNonNull(element);
+      buffer[size++] = element;
+      if (size == buffer.length) {
+        Continuation.yield();
+      }
+    }
+
+    // returns true if there is at least one element in the buffer
+    private boolean fill() {
+      if (index < size) {
+        return true;
+      }
+      if (continuation == null) {
+        continuation = new Continuation(() -> {
+          try {
+            producer.accept((Consumer<T>) this::push);
+          } catch (RuntimeException | Error e) {
+            failure = e;
+          }
+        });
+      } else if (continuation.isDone()) {
+        return rethrowFailure();
+      }
+      size = 0;
+      index = 0;
+      continuation.run();
+      return size != 0 || rethrowFailure();
+    }
+
+    // the exception of the producer is thrown after the elements produced before it
+    private boolean rethrowFailure() {
+      var failure = this.failure;
+      if (failure == null) {
+        return false;
+      }
+      if (failure instanceof RuntimeException e) {
+        throw e;
+      }
+      throw (Error) failure;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T take() {
+      var element = (T) buffer[index];
+      buffer[index++] = null;  // help the GC
+      return element;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return fill();
+    }
+
+    @Override
+    public T next() {
+      if (!fill()) {
+        throw new NoSuchElementException();
+      }
+      return take();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      Objects.requireNonNull(action);
+      if (!fill()) {
+        return false;
+      }
+      action.accept(take());
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+      Objects.requireNonNull(action);
+      while(fill()) {
+        while(index < size) {
+          action.accept(take());
+        }
+      }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | NONNULL;
+    }
+  }
+
+  private static int checkBatchSize(int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize < 1");
+    }
+    return batchSize;
+  }
+
+  public static <T> Iterator<T> iterator(Consumer<? super Consumer<? super T>> producer) {
+    return iterator(DEFAULT_BATCH_SIZE, producer);
+  }
+
+  public static <T> Iterator<T> iterator(int batchSize, Consumer<? super Consumer<? super T>> producer) {
+    Objects.requireNonNull(producer);
+    return new Generator<>(producer, checkBatchSize(batchSize));
+  }
+
+  public static <T> Spliterator<T> spliterator(Consumer<? super Consumer<? super T>> producer) {
+    return spliterator(DEFAULT_BATCH_SIZE, producer);
+  }
+
+  public static <T> Spliterator<T> spliterator(int batchSize, Consumer<? super Consumer<? super T>> producer) {
+    Objects.requireNonNull(producer);
+    return new Generator<>(producer, checkBatchSize(batchSize));
+  }
+
+  public static <T> Stream<T> stream(Consumer<? super Consumer<? super T>> producer) {
+    return stream(DEFAULT_BATCH_SIZE, producer);
+  }
+
+  public static <T> Stream<T> stream(int batchSize, Consumer<? super Consumer<? super T>> producer) {
+    Objects.requireNonNull(producer);
+    checkBatchSize(batchSize);
+    return StreamSupport.stream(() -> new Generator<>(producer, batchSize), Spliterator.ORDERED | Spliterator.NONNULL, false);
+  }
+}
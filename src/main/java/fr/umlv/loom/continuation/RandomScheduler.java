@@ -0,0 +1,43 @@
+package fr.umlv.loom.continuation;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+// runs a random runnable coroutine, two schedulers with the same seed run the same coroutines
+// in the same order, so a failing interleaving can be reproduced by printing the seed
+public final class RandomScheduler extends Scheduler {
+  private final ArrayList<Coroutine> schedulable = new ArrayList<>();
+  private final long seed;
+  private final Random random;
+
+  public RandomScheduler() {
+    this(System.nanoTime());
+  }
+
+  public RandomScheduler(long seed) {
+    this.seed = seed;
+    this.random = new Random(seed);
+  }
+
+  public long seed() {
+    return seed;
+  }
+
+  @Override
+  void add(Coroutine coroutine) {
+    schedulable.add(coroutine);
+  }
+
+  @Override
+  Coroutine poll() {
+    var size = schedulable.size();
+    if (size == 0) {
+      return null;
+    }
+    var index = random.nextInt(size);
+    var coroutine = schedulable.get(index);
+    schedulable.set(index, schedulable.get(size - 1));  // swap remove, in O(1)
+    schedulable.remove(size - 1);
+    return coroutine;
+  }
+}
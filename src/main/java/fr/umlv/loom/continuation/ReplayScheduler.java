@@ -0,0 +1,45 @@
+package fr.umlv.loom.continuation;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+// runs the coroutines in the order of a trace recorded with Scheduler.tracer(),
+// once the trace is exhausted the remaining coroutines run in FIFO order
+public final class ReplayScheduler extends Scheduler {
+  private final int[] trace;
+  private int step;
+  private final HashMap<Integer, Coroutine> runnables = new HashMap<>();
+  private final ArrayDeque<Coroutine> fifo = new ArrayDeque<>();
+
+  public ReplayScheduler(int... trace) {
+    this.trace = trace.clone();
+  }
+
+  @Override
+  void add(Coroutine coroutine) {
+    runnables.put(coroutine.id(), coroutine);
+    fifo.offer(coroutine);
+  }
+
+  @Override
+  Coroutine poll() {
+    if (step < trace.length) {
+      var id = trace[step];
+      var coroutine = runnables.remove(id);
+      if (coroutine == null) {
+        if (runnables.isEmpty()) {
+          return null;
+        }
+        throw new IllegalStateException("coroutine " + id + " is not runnable at step " + step);
+      }
+      step++;
+      fifo.remove(coroutine);
+      return coroutine;
+    }
+    var coroutine = fifo.poll();
+    if (coroutine != null) {
+      runnables.remove(coroutine.id());
+    }
+    return coroutine;
+  }
+}
@@ -0,0 +1,141 @@
+package fr.umlv.loom.continuation;
+
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+// A cooperative scheduler of coroutines, all the coroutines run on the thread that calls loop(),
+// one at a time, so they can share data without synchronization.
+// A coroutine gives the control back to the scheduler with pause() (it will run again later)
+// or with yield() (it will run again only when someone registers it).
+// Each coroutine has an id (0, 1, 2 ...) in the order of schedule(), the ids of the coroutines
+// run by the loop can be recorded with a tracer and replayed with a ReplayScheduler.
+public abstract sealed class Scheduler permits FifoScheduler, FairScheduler, RandomScheduler, ReplayScheduler {
+  public static final class Coroutine {
+    private final int id;
+    private final Runnable body;
+    private Continuation continuation;  // created by the thread of the loop
+    private boolean queued;   // true if in the queue of the scheduler
+    private boolean pending;  // registered while running
+    long consumed;   // nanoseconds, used by the FairScheduler
+    long sequence;   // order of insertion, used by the FairScheduler
+
+    private Coroutine(int id, Runnable body) {
+      this.id = id;
+      this.body = body;
+    }
+
+    public int id() {
+      return id;
+    }
+
+    public boolean isDone() {
+      return continuation != null && continuation.isDone();
+    }
+
+    @Override
+    public String toString() {
+      return "Coroutine " + id;
+    }
+  }
+
+  private int nextId;
+  private Coroutine current;
+  private IntConsumer tracer = __ -> {};
+
+  Scheduler() {}
+
+  abstract void add(Coroutine coroutine);
+
+  // returns null if there is no runnable coroutine
+  abstract Coroutine poll();
+
+  // called after each run of a coroutine, elapsed is in nanoseconds
+  void afterRun(Coroutine coroutine, long elapsed) {
+    // empty
+  }
+
+  long clock() {
+    return 0;
+  }
+
+  public final Coroutine schedule(Runnable body) {
+    Objects.requireNonNull(body);
+    var coroutine = new Coroutine(nextId++, body);
+    register(coroutine);
+    return coroutine;
+  }
+
+  public final void register(Coroutine coroutine) {
+    Objects.requireNonNull(coroutine);
+    if (coroutine.isDone()) {
+      throw new IllegalStateException(coroutine + " is done");
+    }
+    if (coroutine == current) {
+      coroutine.pending = true;  // added once the run is finished
+      return;
+    }
+    if (coroutine.queued) {
+      return;
+    }
+    coroutine.queued = true;
+    add(coroutine);
+  }
+
+  public final Coroutine currentCoroutine() {
+    if (current == null) {
+      throw new IllegalStateException("no current coroutine");
+    }
+    return current;
+  }
+
+  public final boolean hasCurrentCoroutine() {
+    return current != null;
+  }
+
+  // suspends the current coroutine, it will run again only if it is registered
+  public final void yield() {
+    currentCoroutine();  // verify there is a current coroutine
+    Continuation.yield();
+  }
+
+  // suspends the current coroutine and registers it to run again later
+  public final void pause() {
+    register(currentCoroutine());
+    Continuation.yield();
+  }
+
+  // called with the id of each coroutine before it runs
+  public final void tracer(IntConsumer tracer) {
+    this.tracer = Objects.requireNonNull(tracer);
+  }
+
+  public final void loop() {
+    if (current != null) {
+      throw new IllegalStateException("loop() called by a coroutine");
+    }
+    Coroutine coroutine;
+    while((coroutine = poll()) != null) {
+      coroutine.queued = false;
+      tracer.accept(coroutine.id);
+      var continuation = coroutine.continuation;
+      if (continuation == null) {
+        continuation = coroutine.continuation = new Continuation(coroutine.body);
+      }
+      current = coroutine;
+      var start = clock();
+      try {
+        continuation.run();
+      } finally {
+        current = null;
+      }
+      afterRun(coroutine, clock() - start);
+      if (coroutine.pending) {
+        coroutine.pending = false;
+        if (!continuation.isDone()) {
+          coroutine.queued = true;
+          add(coroutine);
+        }
+      }
+    }
+  }
+}
@@ -1,135 +1,274 @@
 package fr.umlv.loom.example;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.System.Logger.Level;
 import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Objects;
 import java.util.concurrent.Executors;
-import java.util.regex.Pattern;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.util.stream.Collectors.joining;
 
 // A HTTP server that serve static files and answer to 3 services
 //   GET /tasks returns a list of tasks as a json object
 //   POST /tasks take the content as a JSON text and add it as a new task
 //   DELETE /tasks/id delete a task by its id
+// The JSON of each task is generated once when the task is added and the JSON of the list is cached,
+// a GET sends the cached bytes, a POST appends the new task to the cached list and a DELETE rebuilds it
+// copying the JSON of each remaining task once, the JSON is parsed and generated with the streaming API of Jackson.
+// TCP_NODELAY is enabled (sun.net.httpserver.nodelay) otherwise each response takes at least 40 ms.
+// The requests are logged at the level DEBUG of the logger "fr.umlv.loom.example._14_http_server"
+// which is off by default.
 
 // $JAVA_HOME/bin/java -cp target/loom-1.0-SNAPSHOT.jar  fr.umlv.loom.example._14_http_server
 public interface _14_http_server {
+  System.Logger LOGGER = System.getLogger(_14_http_server.class.getName());
+  JsonFactory JSON_FACTORY = new JsonFactory();
+
   record Task(int id, String content) {
-    public String toJSON() {
-      return """
-          {
-            "id": %d,
-            "content": "%s"
-          }
-          """.formatted(id, content);
+    public Task {
+      Objects.requireNonNull(content);
     }
-  }
 
-  private static void getTasks(HttpExchange exchange, List<Task> tasks) throws IOException {
-    System.err.println("thread " + Thread.currentThread());
-    var uri = exchange.getRequestURI();
-    System.out.println("GET query " + uri);
-
-    try(exchange) {
-      var json = tasks.stream()
-          .map(Task::toJSON)
-          .collect(joining(", ", "[", "]"));
-      exchange.getResponseHeaders().set("Content-Type", "application/json");
-      exchange.sendResponseHeaders(200, json.length());
-      try (var writer = new OutputStreamWriter(exchange.getResponseBody(), UTF_8)) {
-        writer.write(json);
+    public byte[] toJSON() {
+      var output = new ByteArrayOutputStream();
+      try(var generator = JSON_FACTORY.createGenerator(output)) {
+        generator.writeStartObject();
+        generator.writeNumberField("id", id);
+        generator.writeStringField("content", content);
+        generator.writeEndObject();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
       }
+      return output.toByteArray();
     }
   }
 
-  Pattern REGEX = Pattern.compile("""
-       [^\\:]+:"(.*)"\
-       """);
-
-  private static void postTasks(HttpExchange exchange, List<Task> tasks) throws IOException {
-    System.err.println("thread " + Thread.currentThread());
-    var uri = exchange.getRequestURI();
-    System.out.println("POST query " + uri);
-
-    try (exchange) {
-      String content;
-      try (var input = new InputStreamReader(exchange.getRequestBody(), UTF_8);
-           var reader = new BufferedReader(input)) {
-        var line = reader.readLine();
-        var matcher = REGEX.matcher(line);
-        matcher.find();
-        content = matcher.group(1);
+  // the tasks and the JSON of the list of tasks, a GET does not take the lock
+  final class TaskRepository {
+    private static final byte[] EMPTY = "[]".getBytes(UTF_8);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Integer, byte[]> jsons = new LinkedHashMap<>();  // JSON of each task by id
+    private int nextId;
+    private volatile byte[] snapshot = EMPTY;
+
+    // returns the JSON of the new task, must not be modified
+    public byte[] add(String content) {
+      lock.lock();
+      try {
+        var id = nextId++;
+        var json = new Task(id, content).toJSON();
+        jsons.put(id, json);
+        snapshot = append(snapshot, json);
+        return json;
+      } finally {
+        lock.unlock();
       }
-      System.out.println("content " + content);
-      var task = new Task(tasks.size(), content);
-      tasks.add(task);
-      var json = task.toJSON();
-      exchange.getResponseHeaders().set("Content-Type", "application/json");
-      exchange.sendResponseHeaders(200, json.length());
-      try (var writer = new OutputStreamWriter(exchange.getResponseBody(), UTF_8)) {
-        writer.write(json);
+    }
+
+    public boolean remove(int id) {
+      lock.lock();
+      try {
+        if (jsons.remove(id) == null) {
+          return false;
+        }
+        snapshot = join(jsons.values());
+        return true;
+      } finally {
+        lock.unlock();
       }
     }
+
+    // [a, b, c], each JSON is copied once
+    private static byte[] join(Collection<byte[]> jsons) {
+      if (jsons.isEmpty()) {
+        return EMPTY;
+      }
+      var length = 1 + jsons.size();  // the brackets and the commas
+      for(var json: jsons) {
+        length += json.length;
+      }
+      var result = new byte[length];
+      result[0] = '[';
+      var index = 1;
+      for(var json: jsons) {
+        if (index != 1) {
+          result[index++] = ',';
+        }
+        System.arraycopy(json, 0, result, index, json.length);
+        index += json.length;
+      }
+      result[index] = ']';
+      return result;
+    }
+
+    // [a, b] + c -> [a, b, c]
+    private static byte[] append(byte[] snapshot, byte[] json) {
+      var length = snapshot.length;
+      var separator = length == EMPTY.length? 0: 1;
+      var result = Arrays.copyOf(snapshot, length + separator + json.length);
+      if (separator == 1) {
+        result[length - 1] = ',';
+      }
+      System.arraycopy(json, 0, result, length - 1 + separator, json.length);
+      result[result.length - 1] = ']';
+      return result;
+    }
+
+    // the JSON of the list of tasks, must not be modified
+    public byte[] snapshot() {
+      return snapshot;
+    }
+  }
+
+  private static void log(HttpExchange exchange) {
+    if (LOGGER.isLoggable(Level.DEBUG)) {
+      LOGGER.log(Level.DEBUG, exchange.getRequestMethod() + " " + exchange.getRequestURI() + " " + Thread.currentThread());
+    }
+  }
+
+  private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(status, body.length);  // the length in bytes, not in chars
+    try(var output = exchange.getResponseBody()) {
+      output.write(body);
+    }
+  }
+
+  private static void sendStatus(HttpExchange exchange, int status) throws IOException {
+    exchange.sendResponseHeaders(status, -1);  // no body
   }
 
-  private static void deleteTasks(HttpExchange exchange, List<Task> tasks) throws IOException {
-    System.err.println("thread " + Thread.currentThread());
-    var uri = exchange.getRequestURI();
-    System.out.println("DELETE query " + uri);
+  private static void getTasks(HttpExchange exchange, TaskRepository tasks) throws IOException {
+    send(exchange, 200, "application/json", tasks.snapshot());
+  }
 
-    try (exchange) {
-      var path = Path.of(uri.toString());
-      var id = Integer.parseInt(path.getFileName().toString());
-      System.out.println("id " + id);
-      tasks.removeIf(task -> task.id == id);
-      exchange.sendResponseHeaders(200, 0);
+  // {"content": "..."}, the other fields are ignored
+  private static String parseContent(InputStream input) throws IOException {
+    try(var parser = JSON_FACTORY.createParser(input)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new JsonParseException(parser, "a task should be an object");
+      }
+      String content = null;
+      while(parser.nextToken() == JsonToken.FIELD_NAME) {
+        var name = parser.currentName();
+        var token = parser.nextToken();
+        if (name.equals("content") && token == JsonToken.VALUE_STRING) {
+          content = parser.getText();
+        } else {
+          parser.skipChildren();
+        }
+      }
+      if (content == null) {
+        throw new JsonParseException(parser, "no content");
+      }
+      return content;
     }
   }
 
-  private static void getStaticContent(HttpExchange exchange) throws IOException {
-    System.err.println("thread " + Thread.currentThread());
-    var uri = exchange.getRequestURI();
-    var path = Path.of(".", uri.toString());
-    System.out.println("GET query " + uri + " to " + path);
+  private static void postTasks(HttpExchange exchange, TaskRepository tasks) throws IOException {
+    String content;
+    try(var input = exchange.getRequestBody()) {
+      content = parseContent(input);
+    } catch (JsonProcessingException e) {
+      sendStatus(exchange, 400);
+      return;
+    }
+    send(exchange, 200, "application/json", tasks.add(content));
+  }
 
-    try(exchange) {
-      exchange.sendResponseHeaders(200, Files.size(path));
-      Files.copy(path, exchange.getResponseBody());
-    } catch(IOException e) {
-      exchange.sendResponseHeaders(404, 0);
+  private static void deleteTasks(HttpExchange exchange, TaskRepository tasks) throws IOException {
+    var path = exchange.getRequestURI().getPath();
+    int id;
+    try {
+      id = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+    } catch (NumberFormatException e) {
+      sendStatus(exchange, 400);
+      return;
     }
+    sendStatus(exchange, tasks.remove(id)? 204: 404);
   }
 
-  static void main(String[] args) throws IOException {
-    var executor = Executors.newVirtualThreadPerTaskExecutor();
-    var localAddress = new InetSocketAddress(8080);
-    System.out.println("server at http://localhost:" + localAddress.getPort() + "/todo.html");
+  private static String contentType(Path path) {
+    var name = path.getFileName().toString();
+    if (name.endsWith(".html")) {
+      return "text/html; charset=utf-8";
+    }
+    if (name.endsWith(".js")) {
+      return "text/javascript; charset=utf-8";
+    }
+    if (name.endsWith(".css")) {
+      return "text/css; charset=utf-8";
+    }
+    return "application/octet-stream";
+  }
 
-    var tasks = new CopyOnWriteArrayList<Task>();
+  private static void getStaticContent(HttpExchange exchange, Path root) throws IOException {
+    var path = root.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+    if (!path.startsWith(root) || !Files.isRegularFile(path)) {
+      sendStatus(exchange, 404);
+      return;
+    }
+    exchange.getResponseHeaders().set("Content-Type", contentType(path));
+    exchange.sendResponseHeaders(200, Files.size(path));
+    try(var output = exchange.getResponseBody()) {
+      Files.copy(path, output);
+    }
+  }
 
+  static HttpServer start(InetSocketAddress localAddress, TaskRepository tasks) throws IOException {
+    // the JDK server writes the headers and the body of a response in two writes, with Nagle's algorithm
+    // the body waits for the delayed ACK of the client (40 ms), must be set before the first server is created
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+    var root = Path.of(".").toAbsolutePath().normalize();
     var server = HttpServer.create();
-    server.setExecutor(executor);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
     server.bind(localAddress, 0);
-    server.createContext("/", exchange -> getStaticContent(exchange));
+    server.createContext("/", exchange -> {
+      try(exchange) {
+        log(exchange);
+        getStaticContent(exchange, root);
+      }
+    });
     server.createContext("/tasks", exchange -> {
-      switch (exchange.getRequestMethod()) {
-        case "GET" -> getTasks(exchange, tasks);
-        case "POST" -> postTasks(exchange, tasks);
-        case "DELETE" -> deleteTasks(exchange, tasks);
-        default -> throw new IllegalStateException("unknown");
+      try(exchange) {
+        log(exchange);
+        switch (exchange.getRequestMethod()) {
+          case "GET" -> getTasks(exchange, tasks);
+          case "POST" -> postTasks(exchange, tasks);
+          case "DELETE" -> deleteTasks(exchange, tasks);
+          default -> {
+            exchange.getResponseHeaders().set("Allow", "GET, POST, DELETE");
+            sendStatus(exchange, 405);
+          }
+        }
       }
     });
     server.start();
+    return server;
+  }
+
+  static void main(String[] args) throws IOException {
+    var localAddress = new InetSocketAddress(8080);
+    start(localAddress, new TaskRepository());
+    System.out.println("server at http://localhost:" + localAddress.getPort() + "/todo.html");
   }
 }
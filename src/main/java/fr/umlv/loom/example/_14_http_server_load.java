@@ -0,0 +1,278 @@
+package fr.umlv.loom.example;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonToken;
+import fr.umlv.loom.example._14_http_server.TaskRepository;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// A load test of _14_http_server, each client is a virtual thread with a keep-alive connection
+// that sends a request as soon as it receives the previous response, a GET /tasks with the probability getPercent,
+// otherwise a POST /tasks followed by a DELETE /tasks/id of the new task, so the number of tasks stays stable.
+// Prints the number of requests per second and the latencies of the GET and of the POST/DELETE,
+// a response with a Content-Length that is not the length of the body or that is not a JSON text is an error.
+// The server starts with 100 tasks in the same JVM, or the server at url is used.
+
+// $JAVA_HOME/bin/java -cp target/loom-1.0-SNAPSHOT.jar  fr.umlv.loom.example._14_http_server_load [clients [seconds [getPercent [url]]]]
+public interface _14_http_server_load {
+  JsonFactory JSON_FACTORY = new JsonFactory();
+
+  // latencies in nanoseconds of a client
+  final class Samples {
+    private long[] values = new long[1024];
+    private int size;
+
+    void add(long value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size << 1);
+      }
+      values[size++] = value;
+    }
+
+    static long[] sorted(ArrayList<Samples> samples) {
+      return samples.stream().flatMapToLong(s -> Arrays.stream(s.values, 0, s.size)).sorted().toArray();
+    }
+  }
+
+  // a HTTP/1.1 keep-alive connection, lighter than java.net.http.HttpClient so the client does not
+  // take all the CPU of the machine
+  final class Connection implements AutoCloseable {
+    private final Socket socket;
+    private final BufferedInputStream input;
+    private final OutputStream output;
+    private final String host;
+
+    Connection(URI uri) throws IOException {
+      socket = new Socket(uri.getHost(), uri.getPort());
+      socket.setTcpNoDelay(true);
+      input = new BufferedInputStream(socket.getInputStream());
+      output = socket.getOutputStream();
+      host = uri.getHost() + ":" + uri.getPort();
+    }
+
+    record Response(int status, byte[] body) {}
+
+    Response send(String method, String path, byte[] body) throws IOException {
+      var request = method + " " + path + " HTTP/1.1\r\nHost: " + host + "\r\n" +
+          (body == null? "": "Content-Type: application/json\r\nContent-Length: " + body.length + "\r\n") +
+          "\r\n";
+      output.write(request.getBytes(ISO_8859_1));
+      if (body != null) {
+        output.write(body);
+      }
+      output.flush();
+      return readResponse();
+    }
+
+    private String readLine() throws IOException {
+      var builder = new StringBuilder();
+      int c;
+      while((c = input.read()) != '\n') {
+        if (c == -1) {
+          throw new EOFException("connection closed");
+        }
+        if (c != '\r') {
+          builder.append((char) c);
+        }
+      }
+      return builder.toString();
+    }
+
+    private Response readResponse() throws IOException {
+      var statusLine = readLine();
+      var status = Integer.parseInt(statusLine.split(" ")[1]);
+      var contentLength = -1;
+      var chunked = false;
+      String line;
+      while(!(line = readLine()).isEmpty()) {
+        var colon = line.indexOf(':');
+        var name = line.substring(0, colon).strip();
+        var value = line.substring(colon + 1).strip();
+        if (name.equalsIgnoreCase("Content-Length")) {
+          contentLength = Integer.parseInt(value);
+        } else if (name.equalsIgnoreCase("Transfer-Encoding") && value.equalsIgnoreCase("chunked")) {
+          chunked = true;
+        }
+      }
+      if (chunked) {
+        var body = new ByteArrayOutputStream();
+        int size;
+        while((size = Integer.parseInt(readLine().strip(), 16)) != 0) {
+          body.write(input.readNBytes(size));
+          readLine();
+        }
+        readLine();
+        return new Response(status, body.toByteArray());
+      }
+      if (contentLength == -1) {
+        return new Response(status, new byte[0]);
+      }
+      var body = input.readNBytes(contentLength);
+      if (body.length != contentLength) {
+        throw new EOFException("body shorter than Content-Length");
+      }
+      return new Response(status, body);
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+
+  private static int parseId(byte[] json) throws IOException {
+    try(var parser = JSON_FACTORY.createParser(json)) {
+      while(parser.nextToken() != null) {
+        if (parser.currentToken() == JsonToken.FIELD_NAME && parser.currentName().equals("id")) {
+          parser.nextToken();
+          return parser.getIntValue();
+        }
+      }
+    }
+    throw new IOException("no id in " + new String(json, UTF_8));
+  }
+
+  // checks that the response is a JSON text, so the Content-Length was right
+  private static void checkJSON(byte[] json) throws IOException {
+    try(var parser = JSON_FACTORY.createParser(json)) {
+      while(parser.nextToken() != null) {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private static String percentiles(long[] sorted) {
+    if (sorted.length == 0) {
+      return "none";
+    }
+    return "p50 %.2f ms, p99 %.2f ms, p999 %.2f ms".formatted(
+        percentile(sorted, 0.5) / 1e6, percentile(sorted, 0.99) / 1e6, percentile(sorted, 0.999) / 1e6);
+  }
+
+  private static long percentile(long[] sorted, double p) {
+    return sorted[Math.max(0, (int) Math.ceil(p * sorted.length) - 1)];
+  }
+
+  static void main(String[] args) throws IOException, InterruptedException {
+    var clients = args.length > 0? Integer.parseInt(args[0]): 64;
+    var seconds = args.length > 1? Integer.parseInt(args[1]): 10;
+    var getPercent = args.length > 2? Integer.parseInt(args[2]): 90;
+
+    URI uri;
+    Runnable stop;
+    if (args.length > 3) {
+      uri = URI.create(args[3]);
+      stop = () -> {};
+    } else {
+      var tasks = new TaskRepository();
+      for(var i = 0; i < 100; i++) {
+        tasks.add("task " + i);
+      }
+      var server = _14_http_server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), tasks);
+      uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/tasks");
+      stop = () -> server.stop(0);
+    }
+
+    var warmup = 2_000_000_000L;
+    var start = System.nanoTime();
+    var measureStart = start + warmup;
+    var end = measureStart + seconds * 1_000_000_000L;
+    var requests = new LongAdder();
+    var errors = new LongAdder();
+    var getSamples = new ArrayList<Samples>();
+    var postDeleteSamples = new ArrayList<Samples>();
+    var path = uri.getPath();
+    try {
+      var threads = new ArrayList<Thread>();
+      for(var i = 0; i < clients; i++) {
+        var gets = new Samples();
+        var postDeletes = new Samples();
+        getSamples.add(gets);
+        postDeleteSamples.add(postDeletes);
+        threads.add(Thread.ofVirtual().start(() -> {
+          var random = ThreadLocalRandom.current();
+          Connection connection = null;
+          try {
+            for(;;) {
+              var before = System.nanoTime();
+              if (before >= end) {
+                return;
+              }
+              if (connection == null) {
+                connection = new Connection(uri);
+              }
+              var measured = before >= measureStart;
+              try {
+                if (random.nextInt(100) < getPercent) {
+                  var response = connection.send("GET", path, null);
+                  checkJSON(response.body);
+                  if (response.status != 200) {
+                    errors.increment();
+                  }
+                  if (measured) {
+                    gets.add(System.nanoTime() - before);
+                    requests.increment();
+                  }
+                } else {
+                  var content = "{\"content\": \"tâche " + before + "\"}";  // not ASCII
+                  var response = connection.send("POST", path, content.getBytes(UTF_8));
+                  if (response.status != 200) {
+                    errors.increment();
+                    continue;
+                  }
+                  var deleteResponse = connection.send("DELETE", path + "/" + parseId(response.body), null);
+                  if (deleteResponse.status / 100 != 2) {
+                    errors.increment();
+                  }
+                  if (measured) {
+                    postDeletes.add(System.nanoTime() - before);
+                    requests.add(2);
+                  }
+                }
+              } catch (IOException e) {  // the connection can not be reused
+                errors.increment();
+                connection.close();
+                connection = null;
+              }
+            }
+          } catch (IOException e) {
+            errors.increment();
+          } finally {
+            if (connection != null) {
+              try {
+                connection.close();
+              } catch (IOException e) {
+                // ignore
+              }
+            }
+          }
+        }));
+      }
+      for(var thread: threads) {
+        thread.join();
+      }
+    } finally {
+      stop.run();
+    }
+
+    System.out.println("clients " + clients + ", " + seconds + " s, " + getPercent + "% GET, " + uri);
+    System.out.println("requests/s " + requests.sum() / seconds + ", errors " + errors.sum());
+    System.out.println("GET         " + percentiles(Samples.sorted(getSamples)));
+    System.out.println("POST+DELETE " + percentiles(Samples.sorted(postDeleteSamples)));
+  }
+}
@@ -0,0 +1,239 @@
+package fr.umlv.loom.executor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A named pool of carrier threads for virtual threads.
+ * <p>
+ * The carriers are the threads of a {@link ForkJoinPool} in async mode (like the default scheduler),
+ * named {@code name-carrier-N}, and optionally pinned to a set of CPUs (Linux only, best effort).
+ * Several pools allow to isolate the latency critical virtual threads from the batch ones in the same VM.
+ * <pre>
+ *   try(var pool = UnsafeExecutors.carrierPool("interactive")
+ *         .parallelism(4)
+ *         .cpuSetConfig(Path.of("carriers.properties"))  // interactive.cpus = 0-3
+ *         .build()) {
+ *     var thread = pool.threadBuilder().start(() -&gt; ...);
+ *     ...
+ *     System.out.println(pool.stats());
+ *   }
+ * </pre>
+ */
+public final class CarrierPool implements Executor, AutoCloseable {
+  /**
+   * A snapshot of the counters of a pool.
+   *
+   * @param name the name of the pool.
+   * @param parallelism the number of carriers of the pool.
+   * @param carriers the number of carriers started.
+   * @param activeCarriers the number of carriers currently running a virtual thread.
+   * @param pinnedCarriers the number of carriers pinned to the CPU set.
+   * @param queuedTasks the number of virtual threads waiting in the queues of the carriers.
+   * @param queuedSubmissions the number of virtual threads waiting in the submission queues.
+   * @param steals the number of virtual threads stolen from the queue of another carrier.
+   * @param executed the number of times a virtual thread was scheduled on the pool.
+   */
+  public record Stats(String name, int parallelism, int carriers, int activeCarriers, int pinnedCarriers,
+                      long queuedTasks, long queuedSubmissions, long steals, long executed) {
+    /**
+     * Returns the number of virtual threads waiting to run.
+     * @return the number of virtual threads waiting to run.
+     */
+    public long queueDepth() {
+      return queuedTasks + queuedSubmissions;
+    }
+  }
+
+  /**
+   * A builder of {@link CarrierPool}.
+   */
+  public static final class Builder {
+    private final String name;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private BitSet cpuSet;
+
+    Builder(String name) {
+      this.name = Objects.requireNonNull(name, "name is null");
+    }
+
+    /**
+     * Sets the number of carriers, by default the number of available processors.
+     * @param parallelism the number of carriers.
+     * @return this builder.
+     * @throws IllegalArgumentException if parallelism is not positive.
+     */
+    public Builder parallelism(int parallelism) {
+      if (parallelism < 1) {
+        throw new IllegalArgumentException("parallelism < 1");
+      }
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Pins the carriers to a set of CPUs.
+     * @param cpuSet a list of CPUs or ranges of CPUs, by example {@code "0-3,8"}.
+     * @return this builder.
+     * @throws IllegalArgumentException if the CPU set is not valid.
+     */
+    public Builder cpuSet(String cpuSet) {
+      this.cpuSet = parseCpuSet(cpuSet);
+      return this;
+    }
+
+    /**
+     * Reads the CPU set of the carriers from a properties file.
+     * The key is the name of the pool followed by {@code .cpus}, by example {@code interactive.cpus = 0-3},
+     * if the key is not present, the carriers are not pinned.
+     * @param path the path of the properties file.
+     * @return this builder.
+     * @throws IOException if the file can not be read.
+     * @throws IllegalArgumentException if the CPU set is not valid.
+     */
+    public Builder cpuSetConfig(Path path) throws IOException {
+      Objects.requireNonNull(path, "path is null");
+      var properties = new Properties();
+      try(Reader reader = Files.newBufferedReader(path)) {
+        properties.load(reader);
+      }
+      var cpuSet = properties.getProperty(name + ".cpus");
+      this.cpuSet = cpuSet == null? null: parseCpuSet(cpuSet);
+      return this;
+    }
+
+    /**
+     * Creates a new carrier pool.
+     * @return a new carrier pool.
+     */
+    public CarrierPool build() {
+      return new CarrierPool(name, parallelism, cpuSet == null? null: (BitSet) cpuSet.clone());
+    }
+  }
+
+  private final class Carrier extends ForkJoinWorkerThread {
+    private Carrier(ForkJoinPool pool, int index) {
+      super(null, pool, true);
+      setName(name + "-carrier-" + index);
+      setDaemon(true);
+    }
+
+    @Override
+    protected void onStart() {
+      super.onStart();
+      if (cpuSet != null && CpuAffinity.pinCurrentThread(cpuSet)) {
+        pinned.incrementAndGet();
+      }
+    }
+  }
+
+  private final String name;
+  private final BitSet cpuSet;  // null if not pinned
+  private final ForkJoinPool pool;
+  private final AtomicInteger counter = new AtomicInteger();
+  private final AtomicInteger pinned = new AtomicInteger();
+  private final LongAdder executed = new LongAdder();
+
+  private CarrierPool(String name, int parallelism, BitSet cpuSet) {
+    this.name = name;
+    this.cpuSet = cpuSet;
+    this.pool = new ForkJoinPool(parallelism, pool -> new Carrier(pool, counter.getAndIncrement()),
+        null, true, 0, parallelism, 1, __ -> true, 30, TimeUnit.SECONDS);
+  }
+
+  static Builder builder(String name) {
+    return new Builder(name);
+  }
+
+  static BitSet parseCpuSet(String cpuSet) {
+    Objects.requireNonNull(cpuSet, "cpuSet is null");
+    var bitSet = new BitSet();
+    for(var token: cpuSet.split(",")) {
+      token = token.strip();
+      var index = token.indexOf('-');
+      try {
+        var from = Integer.parseInt(index == -1? token: token.substring(0, index).strip());
+        var to = index == -1? from: Integer.parseInt(token.substring(index + 1).strip());
+        if (from < 0 || to < from) {
+          throw new IllegalArgumentException("invalid CPU range " + token);
+        }
+        bitSet.set(from, to + 1);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("invalid CPU set " + cpuSet, e);
+      }
+    }
+    return bitSet;
+  }
+
+  /**
+   * Returns the name of the pool.
+   * @return the name of the pool.
+   */
+  public String name() {
+    return name;
+  }
+
+  /**
+   * Returns true if the carriers can be pinned on this platform.
+   * @return true if the carriers can be pinned on this platform.
+   */
+  public static boolean isPinningSupported() {
+    return CpuAffinity.isSupported();
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    executed.increment();
+    pool.execute(command);
+  }
+
+  /**
+   * Returns a builder of virtual threads that run on the carriers of this pool.
+   * @return a builder of virtual threads that run on the carriers of this pool.
+   */
+  public Thread.Builder.OfVirtual threadBuilder() {
+    return UnsafeExecutors.configureBuilderExecutor(Thread.ofVirtual(), this);
+  }
+
+  /**
+   * Returns an executor that starts a virtual thread running on the carriers of this pool for each task.
+   * @return an executor that starts a virtual thread running on the carriers of this pool for each task.
+   */
+  public Executor virtualThreadExecutor() {
+    return UnsafeExecutors.virtualThreadExecutor(this);
+  }
+
+  /**
+   * Returns a snapshot of the counters of the pool.
+   * @return a snapshot of the counters of the pool.
+   */
+  public Stats stats() {
+    return new Stats(name, pool.getParallelism(), pool.getPoolSize(), pool.getActiveThreadCount(), pinned.get(),
+        pool.getQueuedTaskCount(), pool.getQueuedSubmissionCount(), pool.getStealCount(), executed.sum());
+  }
+
+  /**
+   * Shutdowns the pool and waits until all the scheduled virtual threads are run.
+   * The virtual threads that are parked are not scheduled anymore.
+   */
+  @Override
+  public void close() {
+    pool.close();
+  }
+
+  @Override
+  public String toString() {
+    return "CarrierPool " + name + " " + pool;
+  }
+}
@@ -0,0 +1,56 @@
+package fr.umlv.loom.executor;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.invoke.MethodHandle;
+import java.util.BitSet;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+// pins the current thread to a set of CPUs using sched_setaffinity (Linux only),
+// this class is only initialized if a carrier pool is configured with a CPU set
+final class CpuAffinity {
+  private static final int CPU_SET_SIZE = 128;  // sizeof(cpu_set_t)
+
+  private static final MethodHandle SCHED_SETAFFINITY;
+  static {
+    MethodHandle schedSetAffinity;
+    try {
+      var linker = Linker.nativeLinker();
+      schedSetAffinity = linker.defaultLookup().find("sched_setaffinity")
+          .map(address -> linker.downcallHandle(address, FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_LONG, ADDRESS)))
+          .orElse(null);
+    } catch (RuntimeException | LinkageError e) {
+      schedSetAffinity = null;  // no native access
+    }
+    SCHED_SETAFFINITY = schedSetAffinity;
+  }
+
+  private CpuAffinity() {
+    throw new AssertionError();
+  }
+
+  static boolean isSupported() {
+    return SCHED_SETAFFINITY != null;
+  }
+
+  // returns true if the current thread is now pinned
+  static boolean pinCurrentThread(BitSet cpus) {
+    if (SCHED_SETAFFINITY == null || cpus.isEmpty()) {
+      return false;
+    }
+    var words = cpus.toLongArray();  // little endian words, like a cpu_set_t
+    try(var arena = Arena.ofConfined()) {
+      var mask = arena.allocate(Math.max(CPU_SET_SIZE, 8L * words.length), 8);
+      for(var i = 0; i < words.length; i++) {
+        mask.setAtIndex(JAVA_LONG, i, words[i]);
+      }
+      return (int) SCHED_SETAFFINITY.invokeExact(0, mask.byteSize(), mask) == 0;
+    } catch (Throwable e) {
+      return false;
+    }
+  }
+}
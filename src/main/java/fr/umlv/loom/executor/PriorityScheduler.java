@@ -0,0 +1,217 @@
+package fr.umlv.loom.executor;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A scheduler of virtual threads that runs the virtual threads with a higher priority first.
+ * <p>
+ * Each virtual thread is created with a priority, from 0 (the lowest) to {@code levels - 1} (the highest),
+ * each time the virtual thread is unblocked, it is queued with that priority, so an interactive virtual
+ * thread goes ahead of a batch virtual thread at each blocking point.
+ * To avoid starvation, a waiting virtual thread gains one level of priority each {@code aging} duration.
+ * <pre>
+ *   try(var scheduler = new PriorityScheduler(4, 2, Duration.ofMillis(10))) {
+ *     scheduler.threadBuilder(1).start(interactiveHandler);
+ *     scheduler.threadBuilder(0).start(bulkExport);
+ *     ...
+ *   }
+ * </pre>
+ */
+public final class PriorityScheduler implements AutoCloseable {
+  // a scheduled continuation of a virtual thread
+  private record Task(Runnable runnable, long enqueueTime) {}
+
+  private final ConcurrentLinkedQueue<Task>[] queues;
+  private final LongAdder[] executed;
+  private final Executor[] executors;
+  private final long agingNanos;
+  private final Semaphore permits = new Semaphore(0);  // one permit by queued task
+  private final Thread[] carriers;
+  private volatile boolean closed;
+
+  /**
+   * Creates a scheduler and starts its carrier threads.
+   * @param parallelism the number of carrier threads.
+   * @param levels the number of priorities.
+   * @param aging the duration after which a waiting virtual thread gains a level of priority.
+   * @throws IllegalArgumentException if parallelism or levels is not positive or if aging is not positive.
+   */
+  @SuppressWarnings("unchecked")
+  public PriorityScheduler(int parallelism, int levels, Duration aging) {
+    Objects.requireNonNull(aging, "aging is null");
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism < 1");
+    }
+    if (levels < 1) {
+      throw new IllegalArgumentException("levels < 1");
+    }
+    if (aging.isNegative() || aging.isZero()) {
+      throw new IllegalArgumentException("aging should be positive");
+    }
+    this.agingNanos = aging.toNanos();
+    queues = (ConcurrentLinkedQueue<Task>[]) new ConcurrentLinkedQueue<?>[levels];
+    executed = new LongAdder[levels];
+    executors = new Executor[levels];
+    for(var i = 0; i < levels; i++) {
+      var queue = queues[i] = new ConcurrentLinkedQueue<>();
+      executed[i] = new LongAdder();
+      executors[i] = runnable -> schedule(queue, runnable);
+    }
+    var factory = Thread.ofPlatform().daemon().name("priority-carrier-", 0).factory();
+    carriers = new Thread[parallelism];
+    for(var i = 0; i < parallelism; i++) {
+      var carrier = carriers[i] = factory.newThread(this::loop);
+      carrier.start();
+    }
+  }
+
+  private void schedule(ConcurrentLinkedQueue<Task> queue, Runnable runnable) {
+    Objects.requireNonNull(runnable);
+    if (closed) {
+      throw new RejectedExecutionException("scheduler closed");
+    }
+    var task = new Task(runnable, System.nanoTime());
+    queue.offer(task);
+    permits.release();
+    // close() may have been called since the check and the carriers may have seen no task,
+    // if the task is still queued, it will never run, otherwise a carrier took it before stopping
+    if (closed && queue.remove(task)) {
+      throw new RejectedExecutionException("scheduler closed");
+    }
+  }
+
+  private void loop() {
+    for(;;) {
+      permits.acquireUninterruptibly();
+      var level = nextLevel();
+      if (level == -1) {
+        return;  // no task and closed
+      }
+      var task = queues[level].poll();
+      if (task == null) {
+        permits.release();  // another carrier took it, but a task is still queued somewhere
+        continue;
+      }
+      executed[level].increment();
+      task.runnable.run();
+    }
+  }
+
+  // the level of the task with the highest priority once aged, -1 if there is no task and the scheduler is closed
+  private int nextLevel() {
+    for(;;) {
+      var closed = this.closed;  // read before the queues, see schedule()
+      var now = System.nanoTime();
+      var bestLevel = -1;
+      var bestPriority = Long.MIN_VALUE;
+      for(var level = queues.length; --level >= 0;) {
+        var task = queues[level].peek();
+        if (task == null) {
+          continue;
+        }
+        var priority = level + (now - task.enqueueTime) / agingNanos;
+        if (priority > bestPriority) {
+          bestPriority = priority;
+          bestLevel = level;
+        }
+      }
+      if (bestLevel != -1 || closed) {
+        return bestLevel;
+      }
+      Thread.onSpinWait();  // the task is being queued
+    }
+  }
+
+  /**
+   * Returns the number of priorities.
+   * @return the number of priorities.
+   */
+  public int levels() {
+    return queues.length;
+  }
+
+  /**
+   * Returns the executor of a priority, to be used with {@link UnsafeExecutors#configureBuilderExecutor}.
+   * @param priority a priority between 0 and {@code levels - 1}.
+   * @return the executor of the priority.
+   * @throws IllegalArgumentException if the priority is not valid.
+   */
+  public Executor executor(int priority) {
+    checkPriority(priority);
+    return executors[priority];
+  }
+
+  /**
+   * Returns a builder of virtual threads with a priority.
+   * @param priority a priority between 0 and {@code levels - 1}.
+   * @return a builder of virtual threads with a priority.
+   * @throws IllegalArgumentException if the priority is not valid.
+   */
+  public Thread.Builder.OfVirtual threadBuilder(int priority) {
+    return UnsafeExecutors.configureBuilderExecutor(Thread.ofVirtual(), executor(priority));
+  }
+
+  /**
+   * Returns the number of virtual threads waiting with a priority.
+   * @param priority a priority between 0 and {@code levels - 1}.
+   * @return the number of virtual threads waiting with a priority.
+   * @throws IllegalArgumentException if the priority is not valid.
+   */
+  public int queued(int priority) {
+    checkPriority(priority);
+    return queues[priority].size();
+  }
+
+  /**
+   * Returns the number of times a virtual thread with a priority was run.
+   * @param priority a priority between 0 and {@code levels - 1}.
+   * @return the number of times a virtual thread with a priority was run.
+   * @throws IllegalArgumentException if the priority is not valid.
+   */
+  public long executed(int priority) {
+    checkPriority(priority);
+    return executed[priority].sum();
+  }
+
+  private void checkPriority(int priority) {
+    if (priority < 0 || priority >= queues.length) {
+      throw new IllegalArgumentException("invalid priority " + priority);
+    }
+  }
+
+  /**
+   * Stops the carrier threads once all the queued virtual threads are run.
+   * The virtual threads that are parked can not be scheduled anymore.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    permits.release(carriers.length);
+    var interrupted = false;
+    for(var carrier: carriers) {
+      if (carrier == Thread.currentThread()) {
+        continue;
+      }
+      for(;;) {
+        try {
+          carrier.join();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -1,48 +1,176 @@
 package fr.umlv.loom.executor;
 
-import java.lang.Thread.UncaughtExceptionHandler;
+import java.lang.System.Logger.Level;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
+import java.lang.reflect.InaccessibleObjectException;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.lang.invoke.MethodHandles.insertArguments;
 import static java.lang.invoke.MethodType.methodType;
 
 public class UnsafeExecutors {
-  private static class BTB {
-    private String name;
-    private long counter;
-    private int characteristics;
-    private UncaughtExceptionHandler uhe;
-  }
-  private static class VTB extends BTB {
-    private Executor executor;
+  /**
+   * How the executor of a virtual thread builder is set, chosen once by a probe of the JDK.
+   * The mode can be forced with the system property {@code fr.umlv.loom.executor.mode}.
+   *
+   * @see #mode()
+   */
+  public enum Mode {
+    /**
+     * The field of the builder is set by reflection,
+     * requires {@code --add-opens java.base/java.lang=ALL-UNNAMED}.
+     */
+    REFLECTION,
+    /**
+     * The field of the builder is set with {@code sun.misc.Unsafe} at the offset of the real field,
+     * the offset is verified at startup.
+     */
+    UNSAFE,
+    /**
+     * The executor can not be set, the virtual threads run on the default scheduler,
+     * which can be configured with the system properties {@code jdk.virtualThreadScheduler.*}.
+     * The executors passed to {@link #configureBuilderExecutor(Thread.Builder, Executor)}
+     * and {@link #virtualThreadExecutor(Executor)} are ignored, a warning is logged the first time.
+     * A {@code fr.umlv.loom.continuation.Continuation} can only be created if {@code jdk.internal.vm}
+     * is exported, because it requires its virtual thread to run on the caller of {@code run()}.
+     */
+    DEFAULT_SCHEDULER
   }
 
-  private static final MethodHandle SET_EXECUTOR;
+  private static final String MODE_PROPERTY = "fr.umlv.loom.executor.mode";
+
+  private record Probe(Mode mode, MethodHandle setExecutor) {}
+
+  private static final Class<?> VIRTUAL_BUILDER_CLASS = Thread.ofVirtual().getClass();
+  private static final AtomicBoolean EXECUTOR_IGNORED_WARNED = new AtomicBoolean();
+  private static final Mode MODE;
+  private static final MethodHandle SET_EXECUTOR;  // (Object, Object)void, null if DEFAULT_SCHEDULER
   static {
+    var probe = probe();
+    MODE = probe.mode;
+    SET_EXECUTOR = probe.setExecutor;
+  }
+
+  private static Probe probe() {
+    var forced = System.getProperty(MODE_PROPERTY);
+    Mode forcedMode;
+    try {
+      forcedMode = forced == null? null: Mode.valueOf(forced.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      warn("unknown mode " + forced + ", valid modes are " + Arrays.toString(Mode.values()));
+      forcedMode = null;
+    }
+    if (forcedMode == Mode.DEFAULT_SCHEDULER) {
+      return new Probe(Mode.DEFAULT_SCHEDULER, null);
+    }
+    var executorField = findExecutorField();
+    if (executorField == null) {
+      warn(VIRTUAL_BUILDER_CLASS.getName() + " has no field of type Executor, the default scheduler is used");
+      return new Probe(Mode.DEFAULT_SCHEDULER, null);
+    }
+    if (forcedMode == null || forcedMode == Mode.REFLECTION) {
+      var setExecutor = reflectionSetter(executorField);
+      if (setExecutor != null) {
+        return new Probe(Mode.REFLECTION, setExecutor);
+      }
+    }
+    if (forcedMode == null || forcedMode == Mode.UNSAFE) {
+      var setExecutor = unsafeSetter(executorField);
+      if (setExecutor != null) {
+        return new Probe(Mode.UNSAFE, setExecutor);
+      }
+    }
+    warn("the field " + executorField + " can not be set, the default scheduler is used");
+    return new Probe(Mode.DEFAULT_SCHEDULER, null);
+  }
+
+  private static void warn(String message) {
+    System.getLogger(UnsafeExecutors.class.getName()).log(Level.WARNING, message);
+  }
+
+  // the field is named "scheduler" in JDK 21 but was named "executor" before, so use the type
+  private static Field findExecutorField() {
+    var fields = Arrays.stream(VIRTUAL_BUILDER_CLASS.getDeclaredFields())
+        .filter(field -> field.getType() == Executor.class && !Modifier.isStatic(field.getModifiers()))
+        .toList();
+    return fields.size() == 1? fields.get(0): null;
+  }
+
+  private static MethodHandle reflectionSetter(Field executorField) {
+    try {
+      executorField.setAccessible(true);
+      return MethodHandles.lookup().unreflectSetter(executorField)
+          .asType(methodType(void.class, Object.class, Object.class));
+    } catch (InaccessibleObjectException | IllegalAccessException e) {
+      return null;  // java.lang is not open
+    }
+  }
+
+  private static MethodHandle unsafeSetter(Field executorField) {
+    MethodHandle putObject;
     try {
       var unsafeClass = Class.forName("sun.misc.Unsafe");
       var unsafeField = unsafeClass.getDeclaredField("theUnsafe");
       unsafeField.setAccessible(true);
       var unsafe = unsafeField.get(null);
       var objectFieldOffset = unsafeClass.getMethod("objectFieldOffset", Field.class);
-      var executorField = VTB.class.getDeclaredField("executor");
-      executorField.setAccessible(true);
       var executorOffset = (long) objectFieldOffset.invoke(unsafe, executorField);
-      var putObject = MethodHandles.lookup()
-          .findVirtual(unsafeClass, "putObject", methodType(void.class, Object.class, long.class, Object.class));
-      var setExecutor = insertArguments(insertArguments(putObject, 2, executorOffset), 0, unsafe);
-      SET_EXECUTOR = setExecutor;
-    } catch (ClassNotFoundException | NoSuchFieldException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-      throw new AssertionError(e);
+      putObject = insertArguments(insertArguments(
+          MethodHandles.lookup().findVirtual(unsafeClass, "putObject", methodType(void.class, Object.class, long.class, Object.class)),
+          2, executorOffset), 0, unsafe);
+    } catch (ClassNotFoundException | NoSuchFieldException | NoSuchMethodException | IllegalAccessException |
+             InvocationTargetException | RuntimeException e) {
+      return null;
     }
+
+    // verify that the offset is the one of the field, reading back at the same offset proves nothing,
+    // so a virtual thread is started from a builder that is thrown away and must be scheduled by the probe
+    try {
+      var scheduled = new boolean[1];
+      Executor probe = task -> {
+        scheduled[0] = true;
+        Thread.ofPlatform().daemon().start(task);
+      };
+      var builder = Thread.ofVirtual();
+      putObject.invoke(builder, probe);
+      // not a lambda, its body is a method of this class so it would wait for the end of the static init
+      var thread = builder.start(Thread::onSpinWait);
+      if (!thread.join(Duration.ofSeconds(1))) {
+        return null;
+      }
+      return scheduled[0]? putObject: null;  // join() happens-after the execute() of the probe
+    } catch (Throwable e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns how the executor of a virtual thread builder is set.
+   * @return how the executor of a virtual thread builder is set.
+   */
+  public static Mode mode() {
+    return MODE;
   }
 
   private static void setExecutor(Object builder, Object executor) {
+    if (builder.getClass() != VIRTUAL_BUILDER_CLASS) {
+      throw new IllegalArgumentException("not a virtual thread builder " + builder.getClass().getName());
+    }
+    if (SET_EXECUTOR == null) {  // DEFAULT_SCHEDULER
+      if (!EXECUTOR_IGNORED_WARNED.get() && EXECUTOR_IGNORED_WARNED.compareAndSet(false, true)) {
+        warn("the executor " + executor + " is ignored, the virtual threads run on the default scheduler");
+      }
+      return;
+    }
     try {
       SET_EXECUTOR.invokeExact(builder, executor);
     } catch (Throwable e) {
@@ -65,6 +193,17 @@ public class UnsafeExecutors {
     }
   }
 
+  /**
+   * Sets the executor that schedules the virtual threads created by a builder.
+   * If the {@link #mode() mode} is {@link Mode#DEFAULT_SCHEDULER}, the executor is ignored
+   * and a warning is logged the first time.
+   *
+   * @param builder a virtual thread builder.
+   * @param executor the executor or null to keep the default scheduler.
+   * @return the builder.
+   * @param <B> the type of the builder.
+   * @throws IllegalArgumentException if the builder is not a virtual thread builder.
+   */
   public static <B extends Thread.Builder> B configureBuilderExecutor(B builder, Executor executor) {
     if (executor != null) {
       setExecutor(builder, executor);
@@ -72,8 +211,20 @@ public class UnsafeExecutors {
     return builder;
   }
 
+  /**
+   * Returns an executor that runs each task in a new virtual thread scheduled by an executor.
+   * If the {@link #mode() mode} is {@link Mode#DEFAULT_SCHEDULER}, the virtual threads run
+   * on the default scheduler and a warning is logged the first time.
+   *
+   * @param executor the executor that schedules the virtual threads.
+   * @return an executor that runs each task in a new virtual thread.
+   */
   public static Executor virtualThreadExecutor(Executor executor) {
     Objects.requireNonNull(executor);
     return new VirtualThreadExecutor(executor);
   }
+
+  public static CarrierPool.Builder carrierPool(String name) {
+    return CarrierPool.builder(name);
+  }
 }
@@ -0,0 +1,256 @@
+package fr.umlv.loom.executor;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A work stealing scheduler of virtual threads.
+ * <p>
+ * Each carrier thread has its own deque, the virtual threads rescheduled by a carrier
+ * (by example, after a {@link Thread#yield()}) are pushed on the deque of that carrier and run in LIFO order
+ * while their stack is still in the cache. To avoid starvation, after {@code LIFO_BUDGET} consecutive LIFO runs,
+ * a carrier takes the oldest virtual thread of its deque.
+ * A carrier with no work steals the oldest virtual thread of the deque of a random other carrier.
+ * <p>
+ * A virtual thread woken by a thread which is not a carrier (by example the I/O poller or a virtual thread)
+ * is pushed on the deque of the carrier that ran it last, to favor the affinity.
+ * <pre>
+ *   try(var scheduler = new WorkStealingScheduler(4)) {
+ *     var executor = UnsafeExecutors.virtualThreadExecutor(scheduler);
+ *     ...
+ *   }
+ * </pre>
+ */
+public final class WorkStealingScheduler implements Executor, AutoCloseable {
+  private static final int LIFO_BUDGET = 8;
+  private static final int AFFINITY_SIZE = 4096;  // size of the table of the last carriers, power of 2
+
+  private final class Carrier extends Thread {
+    private final int index;
+    private final ConcurrentLinkedDeque<Runnable> deque = new ConcurrentLinkedDeque<>();
+    private volatile boolean parked;
+    private int lifoRuns;
+
+    private Carrier(int index) {
+      super(null, null, "work-stealing-carrier-" + index, 0, false);
+      this.index = index;
+      setDaemon(true);
+    }
+
+    private WorkStealingScheduler scheduler() {
+      return WorkStealingScheduler.this;
+    }
+
+    @Override
+    public void run() {
+      for(;;) {
+        var task = nextTask();
+        if (task == null) {
+          parked = true;  // volatile write, then re-scan to not miss a push
+          var closed = WorkStealingScheduler.this.closed;  // read before the deques, see execute()
+          task = nextTask();
+          if (task == null) {
+            if (closed) {
+              parked = false;
+              return;
+            }
+            LockSupport.park(this);
+            parked = false;
+            continue;
+          }
+          parked = false;
+        }
+        affinity[slot(task)] = index + 1;
+        executed.increment();
+        task.run();
+      }
+    }
+
+    private Runnable nextTask() {
+      Runnable task;
+      if (lifoRuns < LIFO_BUDGET) {
+        task = deque.pollFirst();
+        if (task != null) {
+          lifoRuns++;
+          return task;
+        }
+      } else {
+        lifoRuns = 0;
+        task = deque.pollLast();
+        if (task != null) {
+          return task;
+        }
+      }
+      lifoRuns = 0;
+      return steal();
+    }
+
+    private Runnable steal() {
+      var carriers = WorkStealingScheduler.this.carriers;
+      var length = carriers.length;
+      var start = ThreadLocalRandom.current().nextInt(length);
+      for(var i = 0; i < length; i++) {
+        var victim = carriers[(start + i) % length];
+        if (victim == this) {
+          continue;
+        }
+        var task = victim.deque.pollLast();
+        if (task != null) {
+          steals.increment();
+          return task;
+        }
+      }
+      return null;
+    }
+  }
+
+  private final Carrier[] carriers;
+  private final int[] affinity = new int[AFFINITY_SIZE];  // index + 1 of the last carrier, racy but only a hint
+  private final LongAdder executed = new LongAdder();
+  private final LongAdder steals = new LongAdder();
+  private final LongAdder affinityHits = new LongAdder();
+  private volatile boolean closed;
+
+  /**
+   * Creates a scheduler and starts its carrier threads.
+   * @param parallelism the number of carrier threads.
+   * @throws IllegalArgumentException if parallelism is not positive.
+   */
+  public WorkStealingScheduler(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism < 1");
+    }
+    var carriers = new Carrier[parallelism];
+    for(var i = 0; i < parallelism; i++) {
+      carriers[i] = new Carrier(i);
+    }
+    this.carriers = carriers;
+    for(var carrier: carriers) {
+      carrier.start();
+    }
+  }
+
+  private static int slot(Runnable task) {
+    return System.identityHashCode(task) & (AFFINITY_SIZE - 1);
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    Objects.requireNonNull(task);
+    if (closed) {
+      throw new RejectedExecutionException("scheduler closed");
+    }
+    Carrier carrier;
+    if (Thread.currentThread() instanceof Carrier current && current.scheduler() == this) {
+      carrier = current;
+      carrier.deque.offerFirst(task);
+    } else {
+      var last = affinity[slot(task)];
+      if (last != 0) {
+        carrier = carriers[last - 1];
+        affinityHits.increment();
+      } else {
+        carrier = carriers[ThreadLocalRandom.current().nextInt(carriers.length)];
+      }
+      carrier.deque.offerFirst(task);
+    }
+    // close() may have been called after the check above and the carriers may have already stopped,
+    // if the task is still in the deque, no carrier will run it, if it's not, a carrier has taken it
+    if (closed && carrier.deque.remove(task)) {
+      throw new RejectedExecutionException("scheduler closed");
+    }
+    signal(carrier);
+  }
+
+  // wakes up the carrier that owns the deque, or if it's running, another idle carrier that may steal the task,
+  // parked is the only publication point, a carrier that has set it re-scans the deques before parking
+  private void signal(Carrier carrier) {
+    if (carrier.parked) {
+      LockSupport.unpark(carrier);
+      return;
+    }
+    for(var other: carriers) {
+      if (other.parked) {
+        LockSupport.unpark(other);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of carrier threads.
+   * @return the number of carrier threads.
+   */
+  public int parallelism() {
+    return carriers.length;
+  }
+
+  /**
+   * Returns the number of times a virtual thread was run.
+   * @return the number of times a virtual thread was run.
+   */
+  public long executed() {
+    return executed.sum();
+  }
+
+  /**
+   * Returns the number of virtual threads stolen from the deque of another carrier.
+   * @return the number of virtual threads stolen from the deque of another carrier.
+   */
+  public long steals() {
+    return steals.sum();
+  }
+
+  /**
+   * Returns the number of virtual threads woken from outside a carrier and pushed to their last carrier.
+   * @return the number of virtual threads woken from outside a carrier and pushed to their last carrier.
+   */
+  public long affinityHits() {
+    return affinityHits.sum();
+  }
+
+  /**
+   * Returns a builder of virtual threads that run on this scheduler.
+   * @return a builder of virtual threads that run on this scheduler.
+   */
+  public Thread.Builder.OfVirtual threadBuilder() {
+    return UnsafeExecutors.configureBuilderExecutor(Thread.ofVirtual(), this);
+  }
+
+  /**
+   * Stops the carrier threads once all the queued virtual threads are run.
+   * The virtual threads that are parked can not be scheduled anymore.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    var interrupted = false;
+    for(var carrier: carriers) {
+      LockSupport.unpark(carrier);
+    }
+    for(var carrier: carriers) {
+      if (carrier == Thread.currentThread()) {
+        continue;
+      }
+      for(;;) {
+        try {
+          carrier.join();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package fr.umlv.loom.proxy;
+
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+
+// Accepts the clients of a server socket, an error of accept() that is not due to the server socket
+// being closed (too many open files, a connection aborted before being accepted, etc) is temporary,
+// it is logged and accept() is retried after a back off that doubles up to MAX_BACK_OFF
+// and is reset by the next accepted client.
+final class Acceptor {
+  private static final long MIN_BACK_OFF = 10;    // in ms
+  private static final long MAX_BACK_OFF = 1_000;
+
+  private final ServerSocketChannel server;
+  private long backOff = MIN_BACK_OFF;
+
+  Acceptor(ServerSocketChannel server) {
+    this.server = Objects.requireNonNull(server);
+  }
+
+  // throws ClosedChannelException if the server socket is closed or the current thread is interrupted,
+  // in the latter case, like for any interruptible channel, the server socket is closed
+  // and the interrupt status is set
+  SocketChannel accept() throws ClosedChannelException {
+    for(;;) {
+      try {
+        var client = server.accept();
+        backOff = MIN_BACK_OFF;
+        return client;
+      } catch (ClosedChannelException e) {
+        throw e;
+      } catch (IOException e) {
+        Forwarder.warning("accept failed, retry in " + backOff + " ms " + e);
+      }
+      try {
+        Thread.sleep(backOff);
+      } catch (InterruptedException e) {
+        try {
+          server.close();
+        } catch (IOException closeException) {
+          // the server socket is closed anyway
+        }
+        Thread.currentThread().interrupt();
+        throw new ClosedByInterruptException();
+      }
+      backOff = Math.min(backOff << 1, MAX_BACK_OFF);
+    }
+  }
+}
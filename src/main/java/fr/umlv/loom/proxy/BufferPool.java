@@ -0,0 +1,114 @@
+package fr.umlv.loom.proxy;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// A pool of direct byte buffers, the capacities are powers of 2 between minCapacity and maxCapacity.
+// A read or a write on a socket with a heap buffer copies the bytes into a temporary direct buffer,
+// with a direct buffer the kernel reads and writes the bytes in place.
+// Direct buffers are costly to allocate and only freed by the GC, so they are pooled,
+// at most maxIdle buffers of each capacity are kept.
+public final class BufferPool {
+  private final int minShift;
+  private final ConcurrentLinkedQueue<ByteBuffer>[] queues;
+  private final AtomicInteger[] idleCounts;
+  private final int maxIdle;
+  private final AtomicLong allocatedBytes = new AtomicLong();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  @SuppressWarnings("unchecked")
+  public BufferPool(int minCapacity, int maxCapacity, int maxIdle) {
+    if (minCapacity < 1 || Integer.bitCount(minCapacity) != 1) {
+      throw new IllegalArgumentException("minCapacity should be a power of 2 " + minCapacity);
+    }
+    if (maxCapacity < minCapacity || Integer.bitCount(maxCapacity) != 1) {
+      throw new IllegalArgumentException("maxCapacity should be a power of 2 >= minCapacity " + maxCapacity);
+    }
+    if (maxIdle < 0) {
+      throw new IllegalArgumentException("maxIdle < 0");
+    }
+    this.minShift = Integer.numberOfTrailingZeros(minCapacity);
+    var classes = Integer.numberOfTrailingZeros(maxCapacity) - minShift + 1;
+    this.queues = (ConcurrentLinkedQueue<ByteBuffer>[]) new ConcurrentLinkedQueue<?>[classes];
+    this.idleCounts = new AtomicInteger[classes];
+    for(var i = 0; i < classes; i++) {
+      queues[i] = new ConcurrentLinkedQueue<>();
+      idleCounts[i] = new AtomicInteger();
+    }
+    this.maxIdle = maxIdle;
+  }
+
+  public int minCapacity() {
+    return 1 << minShift;
+  }
+
+  public int maxCapacity() {
+    return 1 << (minShift + queues.length - 1);
+  }
+
+  // the capacity of the buffer is the power of 2 >= capacity, clamped between minCapacity and maxCapacity
+  public ByteBuffer acquire(int capacity) {
+    var index = index(capacity);
+    var buffer = queues[index].poll();
+    if (buffer != null) {
+      idleCounts[index].decrementAndGet();
+      hits.increment();
+      return buffer.clear();
+    }
+    misses.increment();
+    var size = 1 << (minShift + index);
+    allocatedBytes.addAndGet(size);
+    return ByteBuffer.allocateDirect(size);
+  }
+
+  public void release(ByteBuffer buffer) {
+    Objects.requireNonNull(buffer);
+    var capacity = buffer.capacity();
+    if (!buffer.isDirect() || Integer.bitCount(capacity) != 1 || capacity < minCapacity() || capacity > maxCapacity()) {
+      throw new IllegalArgumentException("not a buffer of this pool " + buffer);
+    }
+    var index = Integer.numberOfTrailingZeros(capacity) - minShift;
+    if (idleCounts[index].incrementAndGet() > maxIdle) {
+      idleCounts[index].decrementAndGet();
+      allocatedBytes.addAndGet(-capacity);  // let the GC free it
+      return;
+    }
+    queues[index].offer(buffer);
+  }
+
+  private int index(int capacity) {
+    if (capacity <= minCapacity()) {
+      return 0;
+    }
+    if (capacity >= maxCapacity()) {
+      return queues.length - 1;
+    }
+    return 32 - Integer.numberOfLeadingZeros(capacity - 1) - minShift;
+  }
+
+  // the bytes of the buffers in use or idle in the pool
+  public long allocatedBytes() {
+    return allocatedBytes.get();
+  }
+
+  public int idle() {
+    var idle = 0;
+    for(var idleCount: idleCounts) {
+      idle += idleCount.get();
+    }
+    return idle;
+  }
+
+  public long hits() {
+    return hits.sum();
+  }
+
+  public long misses() {
+    return misses.sum();
+  }
+}
@@ -0,0 +1,387 @@
+package fr.umlv.loom.proxy;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+// A pool of connections to remote hosts.
+// acquire() returns an idle connection to the host if there is one that passes the health check,
+// otherwise opens a new connection if the host has less than maxPerHost connections,
+// otherwise waits until a connection is released or the acquire timeout expires.
+// The waiting uses a ReentrantLock and a Condition (not synchronized/wait) so a waiting virtual thread
+// unmounts from its carrier instead of pinning it, the connect and the health check are done outside the lock.
+// release() puts back the connection as idle, up to maxIdlePerHost, or closes it if it is already closed.
+// Only a caller that knows where a request/response ends can reuse a connection, a proxy of raw byte streams
+// does not, upstream() adapts the pool for the proxies as a per-host cap with waiting, without reuse.
+// A background virtual thread closes the connections idle for more than idleTimeout.
+// The default health check verifies that the remote has not closed the connection and sent nothing,
+// with a non-blocking read.
+public final class ConnectionPool implements AutoCloseable {
+  public static final class Builder {
+    private int maxPerHost = 64;
+    private int maxIdlePerHost = 16;
+    private Duration idleTimeout = Duration.ofSeconds(30);
+    private Duration acquireTimeout = Duration.ofSeconds(10);
+    private Predicate<? super SocketChannel> healthCheck = ConnectionPool::isAlive;
+
+    private Builder() {}
+
+    // the maximum number of connections, idle or not, to a host
+    public Builder maxPerHost(int maxPerHost) {
+      if (maxPerHost < 1) {
+        throw new IllegalArgumentException("maxPerHost < 1");
+      }
+      this.maxPerHost = maxPerHost;
+      return this;
+    }
+
+    public Builder maxIdlePerHost(int maxIdlePerHost) {
+      if (maxIdlePerHost < 0) {
+        throw new IllegalArgumentException("maxIdlePerHost < 0");
+      }
+      this.maxIdlePerHost = maxIdlePerHost;
+      return this;
+    }
+
+    public Builder idleTimeout(Duration idleTimeout) {
+      Objects.requireNonNull(idleTimeout, "idleTimeout is null");
+      if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+        throw new IllegalArgumentException("idleTimeout should be positive");
+      }
+      this.idleTimeout = idleTimeout;
+      return this;
+    }
+
+    public Builder acquireTimeout(Duration acquireTimeout) {
+      Objects.requireNonNull(acquireTimeout, "acquireTimeout is null");
+      if (acquireTimeout.isNegative()) {
+        throw new IllegalArgumentException("acquireTimeout is negative");
+      }
+      this.acquireTimeout = acquireTimeout;
+      return this;
+    }
+
+    // called before an idle connection is reused, the connection is closed if the check fails
+    public Builder healthCheck(Predicate<? super SocketChannel> healthCheck) {
+      this.healthCheck = Objects.requireNonNull(healthCheck, "healthCheck is null");
+      return this;
+    }
+
+    public ConnectionPool build() {
+      return new ConnectionPool(this);
+    }
+  }
+
+  private record Idle(SocketChannel channel, long since) {}
+
+  private static final class Host {
+    private final SocketAddress address;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ArrayDeque<Idle> idle = new ArrayDeque<>();  // the most recently released first
+    private int open;  // idle, leased or connecting
+
+    private Host(SocketAddress address) {
+      this.address = address;
+    }
+  }
+
+  private final int maxPerHost;
+  private final int maxIdlePerHost;
+  private final long idleTimeoutNanos;
+  private final long acquireTimeoutNanos;
+  private final Predicate<? super SocketChannel> healthCheck;
+  private final ConcurrentHashMap<SocketAddress, Host> hosts = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<SocketChannel, Host> leases = new ConcurrentHashMap<>();
+  private final Thread evictor;
+  private final LongAdder created = new LongAdder();
+  private final LongAdder reused = new LongAdder();
+  private final LongAdder evicted = new LongAdder();
+  private final LongAdder failedChecks = new LongAdder();
+  private final LongAdder waits = new LongAdder();
+  private volatile boolean closed;
+
+  private ConnectionPool(Builder builder) {
+    this.maxPerHost = builder.maxPerHost;
+    this.maxIdlePerHost = builder.maxIdlePerHost;
+    this.idleTimeoutNanos = builder.idleTimeout.toNanos();
+    this.acquireTimeoutNanos = builder.acquireTimeout.toNanos();
+    this.healthCheck = builder.healthCheck;
+    this.evictor = Thread.ofVirtual().name("connection-pool-evictor").start(this::evictLoop);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  // true if the remote has not closed the connection and has not sent unexpected bytes
+  public static boolean isAlive(SocketChannel channel) {
+    if (!channel.isOpen() || !channel.isConnected()) {
+      return false;
+    }
+    try {
+      channel.configureBlocking(false);
+      try {
+        return channel.read(ByteBuffer.allocate(1)) == 0;
+      } finally {
+        channel.configureBlocking(true);
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  public SocketChannel acquire(SocketAddress address) throws IOException, InterruptedException {
+    Objects.requireNonNull(address, "address is null");
+    var host = hosts.computeIfAbsent(address, Host::new);
+    var deadline = System.nanoTime() + acquireTimeoutNanos;
+    for(;;) {
+      SocketChannel candidate;
+      host.lock.lock();
+      try {
+        candidate = nextIdleOrReserve(host, deadline);
+      } finally {
+        host.lock.unlock();
+      }
+      if (candidate == null) {  // a slot is reserved
+        SocketChannel channel;
+        try {
+          channel = SocketChannel.open(address);
+        } catch (IOException e) {
+          discard(host);
+          throw e;
+        }
+        created.increment();
+        leases.put(channel, host);
+        return channel;
+      }
+      boolean alive;
+      try {
+        alive = healthCheck.test(candidate);
+      } catch (RuntimeException | Error e) {  // the slot of the candidate must be freed
+        closeQuietly(candidate);
+        discard(host);
+        throw e;
+      }
+      if (alive) {
+        reused.increment();
+        leases.put(candidate, host);
+        return candidate;
+      }
+      failedChecks.increment();
+      closeQuietly(candidate);
+      discard(host);
+    }
+  }
+
+  // returns an idle connection or null if a slot for a new connection is reserved, must be called with the lock
+  private SocketChannel nextIdleOrReserve(Host host, long deadline) throws IOException, InterruptedException {
+    var waited = false;
+    for(;;) {
+      if (closed) {
+        throw new IllegalStateException("pool closed");
+      }
+      var idle = host.idle.pollFirst();
+      if (idle != null) {
+        return idle.channel;
+      }
+      if (host.open < maxPerHost) {
+        host.open++;
+        return null;
+      }
+      var remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        throw new IOException("timeout, " + maxPerHost + " connections to " + host.address + " already in use");
+      }
+      if (!waited) {
+        waited = true;
+        waits.increment();
+      }
+      host.available.awaitNanos(remaining);
+    }
+  }
+
+  public void release(SocketChannel channel) {
+    Objects.requireNonNull(channel, "channel is null");
+    var host = leases.remove(channel);
+    if (host == null) {
+      throw new IllegalArgumentException("not a connection acquired from this pool " + channel);
+    }
+    if (channel.isOpen()) {
+      host.lock.lock();
+      try {
+        // close() sets closed before evicting the idle connections under the lock,
+        // so closed must be checked with the lock held or the connection may never be closed
+        if (!closed && host.idle.size() < maxIdlePerHost) {
+          host.idle.addFirst(new Idle(channel, System.nanoTime()));
+          host.available.signal();
+          return;
+        }
+      } finally {
+        host.lock.unlock();
+      }
+    }
+    closeQuietly(channel);
+    discard(host);
+  }
+
+  // frees the slot of a connection that is closed
+  private static void discard(Host host) {
+    host.lock.lock();
+    try {
+      host.open--;
+      host.available.signal();
+    } finally {
+      host.lock.unlock();
+    }
+  }
+
+  private static void closeQuietly(SocketChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  // an Upstream that acquires its connections from this pool, so at most maxPerHost clients are proxied
+  // to the address at the same time and the others wait, a released connection is closed, never reused
+  public Upstream upstream(SocketAddress address) {
+    Objects.requireNonNull(address, "address is null");
+    return new Upstream() {
+      @Override
+      public SocketChannel connect() throws IOException {
+        try {
+          return acquire(address);
+        } catch (IllegalStateException e) {
+          if (closed) {
+            throw new IOException("upstream closed", e);
+          }
+          throw e;  // thrown by the health check
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("interrupted while waiting for a connection to " + address);
+        }
+      }
+
+      @Override
+      public void release(SocketChannel channel) {
+        closeQuietly(channel);
+        ConnectionPool.this.release(channel);  // frees the slot
+      }
+    };
+  }
+
+  private void evictLoop() {
+    var period = Math.max(TimeUnit.MILLISECONDS.toNanos(10), idleTimeoutNanos / 2);
+    while(!closed) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(period);
+      } catch (InterruptedException e) {
+        return;
+      }
+      evict(System.nanoTime() - idleTimeoutNanos, false);
+    }
+  }
+
+  // closes the connections idle since before the limit, or all the idle connections
+  private void evict(long limit, boolean all) {
+    for(var host: hosts.values()) {
+      var expired = new ArrayList<SocketChannel>();
+      host.lock.lock();
+      try {
+        Idle idle;
+        while((idle = host.idle.peekLast()) != null && (all || idle.since - limit <= 0)) {
+          host.idle.pollLast();
+          host.open--;
+          expired.add(idle.channel);
+        }
+        if (!expired.isEmpty()) {
+          host.available.signalAll();
+        }
+      } finally {
+        host.lock.unlock();
+      }
+      evicted.add(expired.size());
+      expired.forEach(ConnectionPool::closeQuietly);
+    }
+  }
+
+  public int open(SocketAddress address) {
+    var host = hosts.get(address);
+    if (host == null) {
+      return 0;
+    }
+    host.lock.lock();
+    try {
+      return host.open;
+    } finally {
+      host.lock.unlock();
+    }
+  }
+
+  public int idle(SocketAddress address) {
+    var host = hosts.get(address);
+    if (host == null) {
+      return 0;
+    }
+    host.lock.lock();
+    try {
+      return host.idle.size();
+    } finally {
+      host.lock.unlock();
+    }
+  }
+
+  public long created() {
+    return created.sum();
+  }
+
+  public long reused() {
+    return reused.sum();
+  }
+
+  public long evicted() {
+    return evicted.sum();
+  }
+
+  public long failedChecks() {
+    return failedChecks.sum();
+  }
+
+  // the number of acquire() that had to wait for a connection
+  public long waits() {
+    return waits.sum();
+  }
+
+  // closes the idle connections, the leased connections are closed when released
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    evictor.interrupt();
+    evict(0, true);
+    for(var host: hosts.values()) {
+      host.lock.lock();
+      try {
+        host.available.signalAll();  // the waiting threads see closed
+      } finally {
+        host.lock.unlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package fr.umlv.loom.proxy;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A loopback echo server that stands in for the remote Host when measuring the proxies,
+// one virtual thread per connection.
+final class EchoServer implements AutoCloseable {
+  private final ServerSocketChannel server;
+  private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+  private final int bufferSize;
+
+  private EchoServer(ServerSocketChannel server, int bufferSize) {
+    this.server = server;
+    this.bufferSize = bufferSize;
+  }
+
+  static EchoServer start(int bufferSize) throws IOException {
+    var server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+    var echoServer = new EchoServer(server, bufferSize);
+    Thread.ofVirtual().name("echo-accept").start(echoServer::acceptLoop);
+    return echoServer;
+  }
+
+  SocketAddress address() throws IOException {
+    return server.getLocalAddress();
+  }
+
+  int connections() {
+    return connections.size();
+  }
+
+  private void acceptLoop() {
+    try {
+      for(;;) {
+        var channel = server.accept();
+        connections.add(channel);
+        Thread.ofVirtual().start(() -> echo(channel));
+      }
+    } catch (IOException e) {
+      // closed
+    }
+  }
+
+  private void echo(SocketChannel channel) {
+    var buffer = ByteBuffer.allocate(bufferSize);
+    try(channel) {
+      while(channel.read(buffer) != -1) {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        buffer.clear();
+      }
+    } catch (IOException e) {
+      // closed
+    } finally {
+      connections.remove(channel);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.close();
+    for(var channel: connections) {
+      channel.close();
+    }
+  }
+}
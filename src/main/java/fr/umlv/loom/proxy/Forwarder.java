@@ -0,0 +1,181 @@
+package fr.umlv.loom.proxy;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+
+// Forwards the bytes read from a socket to another socket until the end of stream.
+// The mode COPY is the original loop, a heap buffer of 8192 bytes per direction.
+// The mode POOLED uses the direct buffers of a BufferPool, so the bytes are not copied
+// to a temporary direct buffer by the JDK, and adapts the size of the buffer to the throughput:
+// the buffer doubles when reads fill it and halves when reads use less than a quarter of it,
+// so an idle or interactive connection holds a small buffer and a bulk transfer a large one.
+// The JDK has no zero-copy transfer between two sockets (FileChannel.transferTo/transferFrom
+// only works if one side is a file), so the pooled direct buffers are the closest equivalent.
+// The logs are emitted at the level DEBUG of the logger "fr.umlv.loom.proxy" which is off by default.
+public final class Forwarder {
+  public enum Mode {
+    COPY, POOLED;
+
+    // the mode is configured by the system property fr.umlv.loom.proxy.mode, POOLED by default
+    public static Mode fromSystemProperty() {
+      var mode = System.getProperty(MODE_PROPERTY);
+      if (mode == null) {
+        return POOLED;
+      }
+      try {
+        return valueOf(mode.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("unknown " + MODE_PROPERTY + " " + mode, e);
+      }
+    }
+  }
+
+  private static final String MODE_PROPERTY = "fr.umlv.loom.proxy.mode";
+  private static final Logger LOGGER = System.getLogger("fr.umlv.loom.proxy");
+
+  private static final int COPY_CAPACITY = 8192;
+  private static final int GROW_THRESHOLD = 2;     // consecutive full reads before doubling
+  private static final int SHRINK_THRESHOLD = 16;  // consecutive small reads before halving
+
+  private final Mode mode;
+  private final BufferPool pool;  // null if COPY
+
+  private Forwarder(Mode mode, BufferPool pool) {
+    this.mode = mode;
+    this.pool = pool;
+  }
+
+  public static Forwarder copy() {
+    return new Forwarder(Mode.COPY, null);
+  }
+
+  public static Forwarder pooled(BufferPool pool) {
+    Objects.requireNonNull(pool);
+    return new Forwarder(Mode.POOLED, pool);
+  }
+
+  public static Forwarder of(Mode mode, BufferPool pool) {
+    return switch (mode) {
+      case COPY -> copy();
+      case POOLED -> pooled(pool);
+    };
+  }
+
+  public Mode mode() {
+    return mode;
+  }
+
+  static boolean isDebugEnabled() {
+    return LOGGER.isLoggable(Level.DEBUG);
+  }
+
+  static void debug(String message) {
+    LOGGER.log(Level.DEBUG, message);
+  }
+
+  static void warning(String message) {
+    LOGGER.log(Level.WARNING, message);
+  }
+
+  // returns the number of bytes forwarded
+  public long forward(SocketChannel in, SocketChannel out) throws IOException {
+    return forward(in, out, __ -> {});
+  }
+
+  // counter is called with the number of bytes after each write, returns the number of bytes forwarded
+  public long forward(SocketChannel in, SocketChannel out, LongConsumer counter) throws IOException {
+    Objects.requireNonNull(in);
+    Objects.requireNonNull(out);
+    Objects.requireNonNull(counter);
+    return switch (mode) {
+      case COPY -> copy(in, out, counter);
+      case POOLED -> pooledCopy(in, out, counter);
+    };
+  }
+
+  private static long copy(SocketChannel in, SocketChannel out, LongConsumer counter) throws IOException {
+    var debug = isDebugEnabled();
+    var buffer = ByteBuffer.allocate(COPY_CAPACITY);
+    var total = 0L;
+    for(;;) {
+      int read = in.read(buffer);
+      if (debug) {
+        debug("read " + read + " from " + Thread.currentThread());
+      }
+      if (read == -1) {
+        return total;
+      }
+      total += read;
+      buffer.flip();
+      do {
+        out.write(buffer);
+      } while(buffer.hasRemaining());
+      counter.accept(read);
+      buffer.clear();
+    }
+  }
+
+  private long pooledCopy(SocketChannel in, SocketChannel out, LongConsumer counter) throws IOException {
+    var debug = isDebugEnabled();
+    var buffer = pool.acquire(pool.minCapacity());
+    var total = 0L;
+    var fullReads = 0;
+    var smallReads = 0;
+    try {
+      for(;;) {
+        int read = in.read(buffer);
+        if (debug) {
+          debug("read " + read + " from " + Thread.currentThread());
+        }
+        if (read == -1) {
+          return total;
+        }
+        total += read;
+        buffer.flip();
+        do {
+          out.write(buffer);
+        } while(buffer.hasRemaining());
+        counter.accept(read);
+
+        var capacity = buffer.capacity();
+        if (read == capacity) {
+          smallReads = 0;
+          if (++fullReads >= GROW_THRESHOLD && capacity < pool.maxCapacity()) {
+            fullReads = 0;
+            buffer = swap(buffer, capacity << 1, debug);
+            continue;
+          }
+        } else if (read < capacity >> 2) {
+          fullReads = 0;
+          if (++smallReads >= SHRINK_THRESHOLD && capacity > pool.minCapacity()) {
+            smallReads = 0;
+            buffer = swap(buffer, capacity >> 1, debug);
+            continue;
+          }
+        } else {
+          fullReads = 0;
+          smallReads = 0;
+        }
+        buffer.clear();
+      }
+    } finally {
+      pool.release(buffer);
+    }
+  }
+
+  private ByteBuffer swap(ByteBuffer buffer, int capacity, boolean debug) {
+    if (debug) {
+      debug("resize buffer " + buffer.capacity() + " -> " + capacity + " from " + Thread.currentThread());
+    }
+    // acquire first, if acquire() fails, the finally of pooledCopy() releases the buffer only once
+    var newBuffer = pool.acquire(capacity);
+    pool.release(buffer);
+    return newBuffer;
+  }
+}
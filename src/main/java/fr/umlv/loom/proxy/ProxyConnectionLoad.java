@@ -0,0 +1,132 @@
+package fr.umlv.loom.proxy;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Opens N concurrent connections to a loopback echo server, first directly then through
+// a TCPVirtualThreadProxy, and prints the memory per connection of the proxy,
+// (proxied - direct) / N, so the memory of the clients and of the echo server is not counted.
+// Each connection is opened by the main thread, does a round trip of one byte and stays open.
+// Every proxied connection uses 4 file descriptors in this process, so 100k connections need
+// ulimit -n 400000 and a net.ipv4.ip_local_port_range wide enough for the proxy -> echo connections,
+// the clients are spread over several loopback addresses (127.0.0.x) to have enough ephemeral ports.
+//   java --enable-preview -cp target/classes fr.umlv.loom.proxy.ProxyConnectionLoad [connections [warm]]
+public class ProxyConnectionLoad {
+  private static final int CONNECTIONS_PER_SOURCE = 20_000;
+
+  private record Memory(long heap, long rss, int platformThreads) {
+    Memory minus(Memory memory) {
+      return new Memory(heap - memory.heap, rss - memory.rss, platformThreads - memory.platformThreads);
+    }
+  }
+
+  private static Memory measure() throws InterruptedException {
+    for(var i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    var runtime = Runtime.getRuntime();
+    var heap = runtime.totalMemory() - runtime.freeMemory();
+    var threads = ManagementFactory.getThreadMXBean().getThreadCount();
+    return new Memory(heap, rss(), threads);
+  }
+
+  // the resident set size in bytes, -1 if not on Linux
+  private static long rss() {
+    try {
+      for(var line: Files.readAllLines(Path.of("/proc/self/status"))) {
+        if (line.startsWith("VmRSS:")) {
+          return 1024 * Long.parseLong(line.substring(6).replace("kB", "").strip());
+        }
+      }
+    } catch (IOException e) {
+      // not on Linux
+    }
+    return -1;
+  }
+
+  private static List<SocketChannel> open(SocketAddress address, int connections) throws IOException {
+    var port = ((InetSocketAddress) address).getPort();
+    var buffer = ByteBuffer.allocate(1);
+    var channels = new ArrayList<SocketChannel>(connections);
+    for(var i = 0; i < connections; i++) {
+      var channel = SocketChannel.open();
+      channels.add(channel);
+      var sourceIndex = i / CONNECTIONS_PER_SOURCE;
+      if (sourceIndex != 0) {  // connect() without bind() picks the port better, so only bind if necessary
+        var source = InetAddress.getByAddress(new byte[] { 127, 0, 0, (byte) (1 + sourceIndex) });
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        channel.bind(new InetSocketAddress(source, 0));
+      }
+      channel.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      channel.write(buffer.clear().put((byte) i).flip());
+      if (channel.read(buffer.clear()) != 1) {
+        throw new IOException("no echo");
+      }
+    }
+    return channels;
+  }
+
+  private static void close(List<SocketChannel> channels) throws IOException {
+    for(var channel: channels) {
+      channel.close();
+    }
+  }
+
+  private static String perConnection(long bytes, int connections) {
+    return bytes < 0? "n/a": (bytes / connections) + " B";
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    var connections = args.length > 0? Integer.parseInt(args[0]): 1_000;
+    var warm = args.length > 1? Integer.parseInt(args[1]): 0;
+
+    try(var echo = EchoServer.start(1024)) {
+      var direct = open(echo.address(), connections);
+      var directMemory = measure();
+      close(direct);
+
+      var pool = new BufferPool(4096, 65536, 1024);
+      var forwarder = Forwarder.of(Forwarder.Mode.fromSystemProperty(), pool);
+      try(var server = ServerSocketChannel.open();
+          var upstream = warm == 0? Upstream.onDemand(echo.address()): Upstream.warm(echo.address(), warm)) {
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+        var proxy = Thread.ofPlatform().name("proxy").start(() -> {
+          try {
+            TCPVirtualThreadProxy.serve(server, upstream, forwarder, Thread.ofVirtual());
+          } catch (IOException | InterruptedException e) {
+            throw new AssertionError(e);
+          }
+        });
+
+        var start = System.nanoTime();
+        var proxied = open(server.getLocalAddress(), connections);
+        var elapsed = System.nanoTime() - start;
+        var proxiedMemory = measure();
+        var delta = proxiedMemory.minus(directMemory);
+
+        System.out.println("mode " + forwarder.mode() + ", connections " + connections + ", warm " + warm +
+            ", opened in " + elapsed / 1_000_000 + " ms");
+        System.out.println("per connection: heap " + perConnection(delta.heap, connections) +
+            ", rss " + perConnection(delta.rss, connections) +
+            ", platform threads +" + delta.platformThreads +
+            ", pooled direct buffers " + perConnection(pool.allocatedBytes(), connections));
+
+        close(proxied);
+        server.close();
+        proxy.join();
+      }
+    }
+  }
+}
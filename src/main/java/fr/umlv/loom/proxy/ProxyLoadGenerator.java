@@ -0,0 +1,236 @@
+package fr.umlv.loom.proxy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+// Drives TCPPlatformThreadProxy and TCPVirtualThreadProxy with a rising number of connections
+// and payload sizes and writes one CSV line per step.
+// Each proxy runs in its own JVM and forwards to a loopback EchoServer that runs in this JVM,
+// each client runs in a virtual thread of this JVM, sends its payload, reads it back and records the latency
+// of the round trip. The RSS and the number of threads (as seen by the OS, so including the JVM threads)
+// of the proxy are read from /proc/pid/status at the end of each step, the column carriers is 0 for the platform proxy.
+//   java --enable-preview -cp target/classes fr.umlv.loom.proxy.ProxyLoadGenerator \
+//     out=proxy.csv proxies=platform,virtual carriers=1,2 connections=10,100,1000 payloads=64,4096,65536 \
+//     warmup=1 duration=5
+public class ProxyLoadGenerator {
+  private static final Pattern PORT = Pattern.compile(":(\\d+) ");
+  private static final String HEADER = "proxy,carriers,connections,payload,duration_s,round_trips,errors," +
+      "throughput_rps,throughput_mbps,p50_us,p99_us,p999_us,max_us,proxy_rss_kb,proxy_threads";
+
+  // latencies in nanoseconds of one client
+  private static final class Samples {
+    private long[] values = new long[1024];
+    private int size;
+
+    private void add(long value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size << 1);
+      }
+      values[size++] = value;
+    }
+  }
+
+  private record Step(String proxy, int carriers, int connections, int payload) {}
+
+  private record ProcessStatus(long rssKb, long threads) {
+    static ProcessStatus of(long pid) {
+      var rss = -1L;
+      var threads = -1L;
+      try {
+        for(var line: Files.readAllLines(Path.of("/proc/" + pid + "/status"))) {
+          if (line.startsWith("VmRSS:")) {
+            rss = Long.parseLong(line.substring(6).replace("kB", "").strip());
+          } else if (line.startsWith("Threads:")) {
+            threads = Long.parseLong(line.substring(8).strip());
+          }
+        }
+      } catch (IOException e) {
+        // not on Linux
+      }
+      return new ProcessStatus(rss, threads);
+    }
+  }
+
+  private static Process startProxy(Step step, int echoPort) throws IOException {
+    var mainClass = switch (step.proxy) {
+      case "platform" -> TCPPlatformThreadProxy.class;
+      case "virtual" -> TCPVirtualThreadProxy.class;
+      default -> throw new IllegalArgumentException("unknown proxy " + step.proxy);
+    };
+    var java = ProcessHandle.current().info().command().orElse("java");
+    var command = List.of(java, "--enable-preview", "--enable-native-access=ALL-UNNAMED",
+        "-cp", System.getProperty("java.class.path"),
+        "-Dfr.umlv.loom.proxy.carriers=" + step.carriers,
+        mainClass.getName(), "0", "127.0.0.1", "" + echoPort);
+    return new ProcessBuilder(command)
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+  }
+
+  // the proxy prints "server bound to address:port ..." once it accepts connections
+  private static int proxyPort(Process process) throws IOException {
+    var reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    String line;
+    while((line = reader.readLine()) != null) {
+      if (line.startsWith("server bound to")) {
+        var matcher = PORT.matcher(line);
+        if (matcher.find()) {
+          return Integer.parseInt(matcher.group(1));
+        }
+      }
+    }
+    throw new IOException("proxy exited before accepting connections");
+  }
+
+  private static void roundTrip(SocketChannel channel, ByteBuffer payload, ByteBuffer response) throws IOException {
+    payload.clear();
+    while(payload.hasRemaining()) {
+      channel.write(payload);
+    }
+    response.clear();
+    while(response.hasRemaining()) {
+      if (channel.read(response) == -1) {
+        throw new IOException("connection closed by the proxy");
+      }
+    }
+  }
+
+  private static String run(Step step, EchoServer echo, long warmupNanos, long durationNanos)
+      throws IOException, InterruptedException {
+    var echoPort = ((InetSocketAddress) echo.address()).getPort();
+    var process = startProxy(step, echoPort);
+    try {
+      var proxy = new InetSocketAddress(InetAddress.getLoopbackAddress(), proxyPort(process));
+      var samples = new Samples[step.connections];
+      var errors = new LongAdder();
+      var start = System.nanoTime();
+      var measureStart = start + warmupNanos;
+      var end = measureStart + durationNanos;
+      var clients = new ArrayList<Thread>();
+      for(var i = 0; i < step.connections; i++) {
+        var clientSamples = samples[i] = new Samples();
+        clients.add(Thread.ofVirtual().start(() -> {
+          var payload = ByteBuffer.allocateDirect(step.payload);
+          var response = ByteBuffer.allocateDirect(step.payload);
+          try(var channel = SocketChannel.open(proxy)) {
+            for(;;) {
+              var before = System.nanoTime();
+              if (before >= end) {
+                return;
+              }
+              roundTrip(channel, payload, response);
+              if (before >= measureStart) {
+                clientSamples.add(System.nanoTime() - before);
+              }
+            }
+          } catch (IOException e) {
+            errors.increment();
+          }
+        }));
+      }
+      Thread.sleep(Math.max(0, (end - System.nanoTime()) / 1_000_000 - 100));
+      var status = ProcessStatus.of(process.pid());  // while all the connections are open
+      for(var client: clients) {
+        client.join();
+      }
+
+      var latencies = Arrays.stream(samples).flatMapToLong(s -> Arrays.stream(s.values, 0, s.size)).sorted().toArray();
+      var seconds = durationNanos / 1e9;
+      var roundTrips = latencies.length;
+      return String.join(",",
+          step.proxy, "" + step.carriers, "" + step.connections, "" + step.payload,
+          String.format(Locale.ROOT, "%.1f", seconds), "" + roundTrips, "" + errors.sum(),
+          String.format(Locale.ROOT, "%.0f", roundTrips / seconds),
+          String.format(Locale.ROOT, "%.2f", roundTrips * (double) step.payload / seconds / (1024 * 1024)),
+          micros(percentile(latencies, 0.5)), micros(percentile(latencies, 0.99)),
+          micros(percentile(latencies, 0.999)), micros(latencies.length == 0? -1: latencies[latencies.length - 1]),
+          "" + status.rssKb, "" + status.threads);
+    } finally {
+      process.destroy();
+      process.waitFor();
+    }
+  }
+
+  private static long percentile(long[] sorted, double p) {
+    if (sorted.length == 0) {
+      return -1;
+    }
+    var index = (int) Math.ceil(p * sorted.length) - 1;
+    return sorted[Math.max(0, index)];
+  }
+
+  private static String micros(long nanos) {
+    return nanos < 0? "": String.format(Locale.ROOT, "%.1f", nanos / 1_000.0);
+  }
+
+  private static Map<String, String> parse(String[] args) {
+    var options = new HashMap<>(Map.of(
+        "out", "proxy.csv",
+        "proxies", "platform,virtual",
+        "carriers", "1",
+        "connections", "10,100,1000",
+        "payloads", "64,4096,65536",
+        "warmup", "1",
+        "duration", "5"));
+    for(var arg: args) {
+      var index = arg.indexOf('=');
+      if (index == -1 || !options.containsKey(arg.substring(0, index))) {
+        throw new IllegalArgumentException("unknown option " + arg + ", options are " + options.keySet());
+      }
+      options.put(arg.substring(0, index), arg.substring(index + 1));
+    }
+    return options;
+  }
+
+  private static int[] ints(String value) {
+    return Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    var options = parse(args);
+    var out = Path.of(options.get("out"));
+    var proxies = options.get("proxies").split(",");
+    var carriers = ints(options.get("carriers"));
+    var connections = ints(options.get("connections"));
+    var payloads = ints(options.get("payloads"));
+    var warmupNanos = (long) (Double.parseDouble(options.get("warmup")) * 1e9);
+    var durationNanos = (long) (Double.parseDouble(options.get("duration")) * 1e9);
+
+    try(var writer = new PrintWriter(Files.newBufferedWriter(out));
+        var echo = EchoServer.start(65536)) {
+      writer.println(HEADER);
+      System.out.println(HEADER);
+      for(var proxy: proxies) {
+        // the platform proxy has no carriers, only one step
+        var proxyCarriers = proxy.equals("platform")? new int[] { 0 }: carriers;
+        for(var carrier: proxyCarriers) {
+          for(var connection: connections) {
+            for(var payload: payloads) {
+              var line = run(new Step(proxy, carrier, connection, payload), echo, warmupNanos, durationNanos);
+              writer.println(line);
+              writer.flush();
+              System.out.println(line);
+            }
+          }
+        }
+      }
+    }
+    System.out.println("results written to " + out);
+  }
+}
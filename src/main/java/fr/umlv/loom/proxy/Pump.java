@@ -0,0 +1,123 @@
+package fr.umlv.loom.proxy;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+// Pumps the bytes of a connection in both directions, client -> remote (bytes in)
+// and remote -> client (bytes out).
+// When a direction reaches the end of stream, the output of the other side is shut down
+// (shutdownOutput) and the other direction continues, so a response still in flight is not cut off,
+// the pump ends when both directions have reached the end of stream.
+// If a direction fails, both sockets are closed so the other direction fails too.
+// The thread that calls run() pumps client -> remote and forks a thread for remote -> client,
+// so a connection uses two threads. Both directions use the same Forwarder, so the same BufferPool,
+// and a direction that ends gives back its buffer right away.
+// The counters can be read by any thread while the pump is running.
+public final class Pump {
+  // a scope that records the failure of the forked direction
+  private final class PumpScope extends StructuredTaskScope<Void> {
+    private PumpScope(ThreadFactory factory) {
+      super("pump", factory);
+    }
+
+    @Override
+    protected void handleComplete(Subtask<? extends Void> subtask) {
+      if (subtask.state() == Subtask.State.FAILED) {
+        fail(subtask.exception());
+      }
+    }
+  }
+
+  private final SocketChannel client;
+  private final SocketChannel remote;
+  private final Forwarder forwarder;
+  private final String name;
+  private volatile long bytesIn;   // only written by the thread that calls run()
+  private volatile long bytesOut;  // only written by the forked thread
+  private volatile boolean done;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();  // the first failure
+
+  public Pump(SocketChannel client, SocketChannel remote, Forwarder forwarder) {
+    this.client = Objects.requireNonNull(client);
+    this.remote = Objects.requireNonNull(remote);
+    this.forwarder = Objects.requireNonNull(forwarder);
+    this.name = address(client) + " <-> " + address(remote);
+  }
+
+  private static String address(SocketChannel channel) {
+    try {
+      return String.valueOf(channel.getRemoteAddress());
+    } catch (IOException e) {
+      return "?";
+    }
+  }
+
+  // the number of bytes sent from the client to the remote
+  public long bytesIn() {
+    return bytesIn;
+  }
+
+  // the number of bytes sent from the remote to the client
+  public long bytesOut() {
+    return bytesOut;
+  }
+
+  public boolean isDone() {
+    return done;
+  }
+
+  // pumps until both directions reach the end of stream, does not close the sockets
+  public void run(ThreadFactory factory) throws IOException, InterruptedException {
+    Objects.requireNonNull(factory);
+    try(var scope = new PumpScope(factory)) {
+      scope.fork(() -> {
+        pipe(remote, client, n -> bytesOut += n);
+        return null;
+      });
+      try {
+        pipe(client, remote, n -> bytesIn += n);
+      } catch (IOException e) {
+        fail(e);
+        scope.shutdown();
+      }
+      scope.join();
+      var failure = this.failure.get();
+      if (failure != null) {
+        throw failure instanceof IOException ioException? ioException: new IOException(failure);
+      }
+    } finally {
+      done = true;
+    }
+  }
+
+  private void pipe(SocketChannel in, SocketChannel out, LongConsumer counter) throws IOException {
+    forwarder.forward(in, out, counter);
+    out.shutdownOutput();  // propagates the end of stream
+  }
+
+  // closes both sockets on the first failure, so the other direction fails too
+  private void fail(Throwable throwable) {
+    if (failure.compareAndSet(null, throwable)) {
+      closeQuietly(client);
+      closeQuietly(remote);
+    }
+  }
+
+  private static void closeQuietly(SocketChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Pump " + name + " in " + bytesIn + " out " + bytesOut + (done? " done": "");
+  }
+}
@@ -1,60 +1,70 @@
 package fr.umlv.loom.proxy;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.Executors;
+import java.util.Objects;
+import java.util.function.Consumer;
 
+// The same proxy as TCPVirtualThreadProxy with two platform threads per connection,
+// the thread started by the accept loop opens the connection to the remote and pumps client -> remote
+// and the Pump starts a second thread for remote -> client, so a slow remote never blocks the accept loop.
+//   java --enable-preview -cp target/classes fr.umlv.loom.proxy.TCPPlatformThreadProxy [port [host remotePort]]
 public class TCPPlatformThreadProxy {
-  private static Runnable runnable(SocketChannel socket1, SocketChannel socket2) {
-    return () -> {
-      var buffer = ByteBuffer.allocate(8192);
-      
-      System.out.println("start " + Thread.currentThread());
-      try(socket1; socket2) {
-        for(;;) {
-          int read = socket1.read(buffer);
-          System.out.println("read " + read + " from " + Thread.currentThread());
-          if (read == -1) {
-            //socket1.close();
-            //socket2.close();
-            return;
-          }
-          buffer.flip();
-
-          do {
-            socket2.write(buffer);
-            System.out.println("write from " + Thread.currentThread());
-            
-          } while(buffer.hasRemaining());
-          
-          buffer.clear();
+  private static void handle(SocketChannel client, Upstream upstream, Forwarder forwarder,
+                             Consumer<? super Pump> onConnection) {
+    try(client) {
+      var remote = upstream.connect();
+      var pump = new Pump(client, remote, forwarder);
+      try {
+        onConnection.accept(pump);
+        pump.run(Thread.ofPlatform().factory());
+      } finally {
+        upstream.release(remote);  // closes the remote
+        if (Forwarder.isDebugEnabled()) {
+          Forwarder.debug(pump.toString());
         }
-      } catch (@SuppressWarnings("unused") IOException e) {
-        throw new UncheckedIOException(e);
       }
-    };
+    } catch (IOException | InterruptedException e) {
+      if (Forwarder.isDebugEnabled()) {
+        Forwarder.debug("connection failed " + e);
+      }
+    }
+  }
+
+  public static void serve(ServerSocketChannel server, Upstream upstream, Forwarder forwarder) throws IOException {
+    serve(server, upstream, forwarder, __ -> {});
+  }
+
+  // accepts the clients until the server socket is closed or the current thread is interrupted
+  public static void serve(ServerSocketChannel server, Upstream upstream, Forwarder forwarder,
+                           Consumer<? super Pump> onConnection) throws IOException {
+    Objects.requireNonNull(onConnection);
+    var acceptor = new Acceptor(server);
+    try {
+      for(;;) {
+        var client = acceptor.accept();
+        Thread.ofPlatform().start(() -> handle(client, upstream, forwarder, onConnection));
+      }
+    } catch (ClosedChannelException e) {
+      // the server socket is closed or the thread is interrupted
+    }
   }
-  
-  @SuppressWarnings("resource")
+
   public static void main(String[] args) throws IOException {
-    var server = ServerSocketChannel.open();
-    server.bind(new InetSocketAddress(7777));
-    System.out.println("server bound to " + server.getLocalAddress());
-    
-    var remote = SocketChannel.open();
-    remote.connect(new InetSocketAddress(InetAddress.getByName(Host.NAME), Host.PORT));
-    //remote.configureBlocking(false);
-    
-    System.out.println("accepting ...");
-    var client = server.accept();
-    //client.configureBlocking(false);
+    var port = args.length > 0? Integer.parseInt(args[0]): 7777;
+    var host = args.length > 2? args[1]: Host.NAME;
+    var remotePort = args.length > 2? Integer.parseInt(args[2]): Host.PORT;
 
-    Thread.ofPlatform().start(runnable(client, remote));
-    Thread.ofPlatform().start(runnable(remote, client));
+    var remote = new InetSocketAddress(InetAddress.getByName(host), remotePort);
+    var forwarder = Forwarder.of(Forwarder.Mode.fromSystemProperty(), new BufferPool(4096, 65536, 1024));
+    try(var server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress(port), 4096);
+      System.out.println("server bound to " + server.getLocalAddress() + " proxy to " + remote);
+      serve(server, Upstream.onDemand(remote), forwarder);
+    }
   }
 }
@@ -3,61 +3,99 @@ package fr.umlv.loom.proxy;
 import fr.umlv.loom.executor.UnsafeExecutors;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.Executors;
+import java.util.Objects;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 
+// Each accepted client runs in its own virtual thread that opens a connection to the remote
+// and runs a Pump, the virtual thread pumps client -> remote and the Pump forks a second virtual thread
+// for remote -> client, the end of stream of a direction is propagated with a half-close,
+// the sockets are closed once both directions are done or one fails.
+// All the connections are forked in the scope of the accept loop, closing the server socket
+// or interrupting the thread that calls serve() shuts down all the connections,
+// any other error of accept() is temporary and does not stop the proxy (see Acceptor).
+// onConnection is called with the Pump of each connection, to observe its bytes in/out.
+// The virtual threads run on a CarrierPool, the number of carriers is configured by the system property
+// fr.umlv.loom.proxy.carriers, 1 by default.
+//   java --enable-preview -cp target/classes fr.umlv.loom.proxy.TCPVirtualThreadProxy [port [host remotePort [warm]]]
 public class TCPVirtualThreadProxy {
-  private static Runnable runnable(SocketChannel socket1, SocketChannel socket2) {
-    return () -> {
-      var buffer = ByteBuffer.allocate(8192);
-      
-      System.out.println("start " + Thread.currentThread());
-      try(socket1; socket2) {
-        for(;;) {
-          int read = socket1.read(buffer);
-          System.out.println("read " + read + " from " + Thread.currentThread());
-          if (read == -1) {
-            //socket1.close();
-            //socket2.close();
-            return;
-          }
-          buffer.flip();
+  private static void handle(SocketChannel client, Upstream upstream, Forwarder forwarder,
+                             Consumer<? super Pump> onConnection, ThreadFactory factory) {
+    try(client) {
+      var remote = upstream.connect();
+      var pump = new Pump(client, remote, forwarder);
+      try {
+        onConnection.accept(pump);
+        pump.run(factory);
+      } finally {
+        upstream.release(remote);  // closes the remote
+        if (Forwarder.isDebugEnabled()) {
+          Forwarder.debug(pump.toString());
+        }
+      }
+    } catch (IOException e) {
+      if (Forwarder.isDebugEnabled()) {
+        Forwarder.debug("connection failed " + e);
+      }
+    } catch (InterruptedException e) {
+      // the proxy is shut down
+    }
+  }
 
-          do {
-            socket2.write(buffer);
-            System.out.println("write from " + Thread.currentThread());
-            
-          } while(buffer.hasRemaining());
-          
-          buffer.clear();
+  public static void serve(ServerSocketChannel server, Upstream upstream, Forwarder forwarder,
+                           Thread.Builder.OfVirtual builder) throws IOException, InterruptedException {
+    serve(server, upstream, forwarder, builder, __ -> {});
+  }
+
+  // accepts the clients until the server socket is closed or the current thread is interrupted
+  public static void serve(ServerSocketChannel server, Upstream upstream, Forwarder forwarder,
+                           Thread.Builder.OfVirtual builder, Consumer<? super Pump> onConnection)
+      throws IOException, InterruptedException {
+    Objects.requireNonNull(onConnection);
+    var factory = builder.factory();
+    var acceptor = new Acceptor(server);
+    try(var connections = new StructuredTaskScope<Void>("proxy", factory)) {
+      try {
+        for(;;) {
+          var client = acceptor.accept();
+          connections.fork(() -> {
+            handle(client, upstream, forwarder, onConnection, factory);
+            return null;
+          });
         }
-      } catch (IOException e) {
-        throw new UncheckedIOException(e);
+      } catch (ClosedChannelException e) {
+        // the server socket is closed or the thread is interrupted
+      } finally {
+        connections.shutdown();  // interrupts all the connections
+        connections.join();      // returns immediately once shut down
       }
-    };
+    }
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
   }
-  
-  @SuppressWarnings("resource")
+
   public static void main(String[] args) throws IOException, InterruptedException {
-    var server = ServerSocketChannel.open();
-    server.bind(new InetSocketAddress(7777));
-    System.out.println("server bound to " + server.getLocalAddress());
-    
-    var remote = SocketChannel.open();
-    remote.connect(new InetSocketAddress(InetAddress.getByName(Host.NAME), Host.PORT));
-    //remote.configureBlocking(false);
-    
-    System.out.println("accepting ...");
-    var client = server.accept();
-    //client.configureBlocking(false);
+    var port = args.length > 0? Integer.parseInt(args[0]): 7777;
+    var host = args.length > 2? args[1]: Host.NAME;
+    var remotePort = args.length > 2? Integer.parseInt(args[2]): Host.PORT;
+    var warm = args.length > 3? Integer.parseInt(args[3]): 0;
 
-    var executor = UnsafeExecutors.virtualThreadExecutor(Executors.newSingleThreadExecutor());
-    executor.execute(runnable(client, remote));
-    executor.execute(runnable(remote, client));
+    var remote = new InetSocketAddress(InetAddress.getByName(host), remotePort);
+    var forwarder = Forwarder.of(Forwarder.Mode.fromSystemProperty(), new BufferPool(4096, 65536, 1024));
+    var carriers = Integer.getInteger("fr.umlv.loom.proxy.carriers", 1);
+    try(var carrierPool = UnsafeExecutors.carrierPool("proxy").parallelism(carriers).build();
+        var server = ServerSocketChannel.open();
+        var upstream = warm == 0? Upstream.onDemand(remote): Upstream.warm(remote, warm)) {
+      server.bind(new InetSocketAddress(port), 4096);
+      System.out.println("server bound to " + server.getLocalAddress() + " proxy to " + remote);
+      serve(server, upstream, forwarder, carrierPool.threadBuilder());
+    }
   }
 }
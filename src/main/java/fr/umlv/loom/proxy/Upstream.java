@@ -0,0 +1,140 @@
+package fr.umlv.loom.proxy;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// How the proxy gets a connection to the remote host for each client.
+// onDemand() opens a new connection per client.
+// warm() keeps up to size connections already opened by a background virtual thread,
+// a client takes one if there is one and opens a new connection otherwise, so it never waits for the refill.
+// A warm connection is not checked before use, a remote that closes idle connections
+// makes the first read or write of the client fail.
+// ConnectionPool.upstream() acquires the connections from a pool, to limit the number of connections to the remote.
+// A byte stream has no boundary where the remote could be reused by another client,
+// so release() always closes the connection.
+public interface Upstream extends AutoCloseable {
+  // throws an IOException if the connection fails or if the upstream is closed,
+  // so the proxy drops the client like any other failed connection
+  SocketChannel connect() throws IOException;
+
+  // closes a connection returned by connect() once the client is done with it
+  default void release(SocketChannel channel) throws IOException {
+    channel.close();
+  }
+
+  @Override
+  default void close() {
+    // empty
+  }
+
+  static Upstream onDemand(SocketAddress remote) {
+    Objects.requireNonNull(remote);
+    return () -> SocketChannel.open(remote);
+  }
+
+  static Warm warm(SocketAddress remote, int size) {
+    Objects.requireNonNull(remote);
+    if (size < 1) {
+      throw new IllegalArgumentException("size < 1");
+    }
+    return new Warm(remote, size);
+  }
+
+  final class Warm implements Upstream {
+    private final SocketAddress remote;
+    private final ArrayBlockingQueue<SocketChannel> queue;
+    private final Thread refill;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile boolean closed;
+
+    private Warm(SocketAddress remote, int size) {
+      this.remote = remote;
+      this.queue = new ArrayBlockingQueue<>(size);
+      this.refill = Thread.ofVirtual().name("upstream-refill").start(this::refill);
+    }
+
+    private void refill() {
+      while(!closed) {
+        SocketChannel channel;
+        try {
+          channel = SocketChannel.open(remote);
+        } catch (IOException e) {
+          if (Forwarder.isDebugEnabled()) {
+            Forwarder.debug("warm connection to " + remote + " failed " + e);
+          }
+          try {
+            Thread.sleep(100);  // do not spin if the remote is down
+          } catch (InterruptedException __) {
+            return;
+          }
+          continue;
+        }
+        try {
+          queue.put(channel);
+        } catch (InterruptedException e) {
+          closeQuietly(channel);
+          return;
+        }
+        if (closed) {  // close() may have drained the queue before the put
+          drain();
+        }
+      }
+    }
+
+    @Override
+    public SocketChannel connect() throws IOException {
+      if (closed) {
+        throw new IOException("upstream closed");
+      }
+      var channel = queue.poll();
+      if (channel != null) {
+        hits.increment();
+        return channel;
+      }
+      misses.increment();
+      return SocketChannel.open(remote);
+    }
+
+    public int warmConnections() {
+      return queue.size();
+    }
+
+    public long hits() {
+      return hits.sum();
+    }
+
+    public long misses() {
+      return misses.sum();
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      refill.interrupt();
+      drain();
+    }
+
+    private void drain() {
+      SocketChannel channel;
+      while((channel = queue.poll()) != null) {
+        closeQuietly(channel);
+      }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+}
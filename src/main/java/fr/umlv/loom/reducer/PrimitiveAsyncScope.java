@@ -0,0 +1,218 @@
+package fr.umlv.loom.reducer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+// Common code of the scopes specialized for primitive values, each subtask accumulates its value
+// in one of the mutable cells without boxing, the cells are merged when the result is requested.
+// The subclasses only contain the code that depends on the primitive type, the reducers and fork().
+// The exceptions of the failed subtasks are not reduced, the first one is available using exception(),
+// the others are added as suppressed exceptions.
+abstract sealed class PrimitiveAsyncScope<A, V> implements AutoCloseable
+    permits StructuredIntAsyncScope, StructuredLongAsyncScope, StructuredDoubleAsyncScope {
+
+  // a stripe of the reduction protected by a try-lock
+  static final class Cell<A> {
+    private volatile boolean locked;
+    A value;  // guarded by locked
+  }
+
+  private static final VarHandle LOCKED, FAILURE;
+  static {
+    var lookup = MethodHandles.lookup();
+    try {
+      LOCKED = lookup.findVarHandle(Cell.class, "locked", boolean.class);
+      FAILURE = lookup.findVarHandle(PrimitiveAsyncScope.class, "failure", Throwable.class);
+    } catch (NoSuchFieldException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final int CELL_COUNT;
+  static {
+    var processors = Runtime.getRuntime().availableProcessors();
+    CELL_COUNT = 1 << (32 - Integer.numberOfLeadingZeros(2 * processors - 1));  // power of 2 >= 2 * processors
+  }
+
+  private final StructuredTaskScope<Void> taskScope;
+  private final Cell<A>[] cells;
+  private final Supplier<? extends A> supplier;
+  private final BinaryOperator<A> merger;
+  private final Function<? super A, ? extends V> finisher;
+  private volatile Throwable failure;
+
+  @SuppressWarnings("unchecked")
+  PrimitiveAsyncScope(Supplier<? extends A> supplier, BinaryOperator<A> merger, Function<? super A, ? extends V> finisher) {
+    this.supplier = supplier;
+    this.merger = merger;
+    this.finisher = finisher;
+    var cells = (Cell<A>[]) new Cell<?>[CELL_COUNT];
+    for(var i = 0; i < cells.length; i++) {
+      cells[i] = new Cell<>();
+    }
+    this.cells = cells;
+    this.taskScope = new StructuredTaskScope<>() {
+      @Override
+      protected void handleComplete(Subtask<? extends Void> subtask) {
+        if (subtask.state() == Subtask.State.FAILED) {
+          recordFailure(subtask.exception());
+        }
+      }
+    };
+  }
+
+  // the merger of a summary statistics, IntSummaryStatistics::combine for example
+  static <S> BinaryOperator<S> combining(BiConsumer<? super S, ? super S> combiner) {
+    return (s1, s2) -> {
+      combiner.accept(s1, s2);
+      return s1;
+    };
+  }
+
+  // the histograms, the bucket i counts the values less or equals to bounds[i] and greater than bounds[i - 1],
+  // the last bucket counts the values greater than the last bound.
+  // The bounds must be strictly increasing, they are not sorted, checkBounds() returns a copy of the bounds
+  // or throws an IllegalArgumentException.
+
+  static int[] checkBounds(int[] bounds) {
+    var copy = bounds.clone();
+    checkBounds(copy.length, i -> copy[i - 1] < copy[i]);
+    return copy;
+  }
+
+  static long[] checkBounds(long[] bounds) {
+    var copy = bounds.clone();
+    checkBounds(copy.length, i -> copy[i - 1] < copy[i]);
+    return copy;
+  }
+
+  static double[] checkBounds(double[] bounds) {
+    var copy = bounds.clone();
+    checkBounds(copy.length, i -> copy[i - 1] < copy[i]);  // false if one of them is NaN
+    return copy;
+  }
+
+  // isIncreasing(i) returns true if bounds[i - 1] < bounds[i]
+  private static void checkBounds(int length, IntPredicate isIncreasing) {
+    for(var i = 1; i < length; i++) {
+      if (!isIncreasing.test(i)) {
+        throw new IllegalArgumentException("bounds are not strictly increasing");
+      }
+    }
+  }
+
+  static Supplier<long[]> counts(int boundCount) {
+    return () -> new long[boundCount + 1];
+  }
+
+  // increments the bucket of a value from the result of Arrays.binarySearch() on the bounds
+  static void increment(long[] counts, int index) {
+    counts[index >= 0? index: -index - 1]++;
+  }
+
+  static long[] mergeCounts(long[] counts1, long[] counts2) {
+    for(var i = 0; i < counts1.length; i++) {
+      counts1[i] += counts2[i];
+    }
+    return counts1;
+  }
+
+  private void recordFailure(Throwable throwable) {
+    if (!FAILURE.compareAndSet(this, null, throwable)) {
+      failure.addSuppressed(throwable);  // volatile read
+    }
+  }
+
+  final void forkTask(Callable<Void> task) {
+    taskScope.fork(task);
+  }
+
+  // returns a locked cell, the cell must be unlocked with unlock()
+  final Cell<A> lock() {
+    var cells = this.cells;
+    var mask = cells.length - 1;
+    var probe = (int) ((Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L) >>> 32);
+    for(var i = 0;; i++) {
+      var cell = cells[(probe + i) & mask];
+      if (!cell.locked && LOCKED.compareAndSet(cell, false, true)) {
+        if (cell.value == null) {
+          cell.value = supplier.get();
+        }
+        return cell;
+      }
+      if ((i & mask) == mask) {  // all cells are locked
+        Thread.onSpinWait();
+      }
+    }
+  }
+
+  static void unlock(Cell<?> cell) {
+    cell.locked = false;  // volatile write
+  }
+
+  private V finish() {
+    // if the scope is shutdown, join() does not wait for the subtasks that are still accumulating,
+    // so the cells are locked while they are merged
+    var cells = this.cells;
+    for(var cell: cells) {
+      while(!LOCKED.compareAndSet(cell, false, true)) {
+        Thread.onSpinWait();
+      }
+    }
+    A value = null;
+    try {
+      for(var cell: cells) {
+        var cellValue = cell.value;
+        if (cellValue != null) {
+          value = value == null? cellValue: merger.apply(value, cellValue);
+          cell.value = null;
+        }
+      }
+      if (value == null) {
+        value = supplier.get();
+      }
+      cells[0].value = value;  // the merger may mutate the values, so keep only the merged value
+    } finally {
+      for(var cell: cells) {
+        unlock(cell);
+      }
+    }
+    return finisher.apply(value);
+  }
+
+  public final V result() throws InterruptedException {
+    taskScope.join();
+    return finish();
+  }
+
+  public final V result(Instant deadline) throws InterruptedException, TimeoutException {
+    requireNonNull(deadline);
+    taskScope.joinUntil(deadline);
+    return finish();
+  }
+
+  public final Optional<Throwable> exception() {
+    return Optional.ofNullable(failure);
+  }
+
+  public final void shutdown() {
+    taskScope.shutdown();
+  }
+
+  @Override
+  public final void close() {
+    taskScope.close();
+  }
+}
@@ -3,6 +3,7 @@ package fr.umlv.loom.reducer;
 import fr.umlv.loom.reducer.StructuredAsyncScope.Reducer;
 import fr.umlv.loom.reducer.StructuredAsyncScope.Result;
 import fr.umlv.loom.reducer.StructuredAsyncScope.Result.State;
+import fr.umlv.loom.structured.ScopeMetrics;
 
 import java.io.IOException;
 import java.util.List;
@@ -79,11 +80,26 @@ public class StructAsyncScopeDemo {
     }
   }
 
+  public static void metrics() throws InterruptedException {
+    var metrics = new ScopeMetrics("max");
+    try(var scope = StructuredAsyncScope.of(Reducer.max(Integer::compareTo), metrics)) {
+      scope.fork(() -> 3);
+      scope.fork(() -> {
+        throw new IOException();
+      });
+      scope.fork(() -> 42);
+
+      scope.result();
+    }
+    System.out.println(metrics);  // ScopeMetrics(max, forked=3, succeeded=2, failed=1, cancelled=0, ...)
+  }
+
   public static void main(String[] args) throws InterruptedException {
     toList();
     max();
     first();
     firstDropExceptions();
     shutdownOnFailure();
+    metrics();
   }
 }
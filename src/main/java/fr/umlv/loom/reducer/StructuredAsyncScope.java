@@ -1,16 +1,22 @@
 package fr.umlv.loom.reducer;
 
 import fr.umlv.loom.reducer.StructuredAsyncScope.Result.State;
+import fr.umlv.loom.structured.ScopeListener;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.concurrent.StructuredTaskScope;
 import java.util.concurrent.TimeoutException;
+import java.util.function.BinaryOperator;
 import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
 import static java.util.Objects.requireNonNull;
 
@@ -20,14 +26,28 @@ public final class StructuredAsyncScope<T, A, V> extends StructuredTaskScope<T>
     A apply(A oldValue, Result<T> result, Runnable shouldShutdown);
   }
 
-  public record Reducer<T, A, V>(Combiner<T, A> combiner, Function<? super A, ? extends V> finisher) {
+  // if the merger is not null, the reducer is associative and commutative, the results are accumulated
+  // in several cells (the combiner can mutate the value) which are merged when the result is requested
+  public record Reducer<T, A, V>(Combiner<T, A> combiner, BinaryOperator<A> merger, Function<? super A, ? extends V> finisher) {
     public Reducer {
       requireNonNull(combiner);
       requireNonNull(finisher);
     }
 
+    public Reducer(Combiner<T, A> combiner, Function<? super A, ? extends V> finisher) {
+      this(combiner, null, finisher);
+    }
+
+    public static <T, A, V> Reducer<T, A, V> commutative(Combiner<T, A> combiner, BinaryOperator<A> merger, Function<? super A, ? extends V> finisher) {
+      return new Reducer<>(combiner, requireNonNull(merger), finisher);
+    }
+
+    public boolean isCommutative() {
+      return merger != null;
+    }
+
     public Reducer<T, A, V> dropExceptions() {
-      return new Reducer<>((oldValue, result, shouldShutdown) -> combiner.apply(oldValue, new Result<>(result.state, result.element, null), shouldShutdown), finisher);
+      return new Reducer<>((oldValue, result, shouldShutdown) -> combiner.apply(oldValue, new Result<>(result.state, result.element, null), shouldShutdown), merger, finisher);
     }
 
     public static <T> Reducer<T, ?, List<Result<T>>> toList() {
@@ -62,6 +82,17 @@ public final class StructuredAsyncScope<T, A, V> extends StructuredTaskScope<T>
       return throwable;
     }
 
+    // avoid to allocate a new result if one of the results is equivalent
+    private static <T> Result<T> newResult(Result<T> result, Result<T> other, State state, T element, Throwable suppressed) {
+      if (result.state == state && result.element == element && result.suppressed == suppressed) {
+        return result;
+      }
+      if (other.state == state && other.element == element && other.suppressed == suppressed) {
+        return other;
+      }
+      return new Result<>(state, element, suppressed);
+    }
+
     private static <T> Result<T> maxMergeResult(Result<T> result, Result<T> other, Comparator<? super T> comparator) {
       if (result == null) {
         return other;
@@ -72,17 +103,81 @@ public final class StructuredAsyncScope<T, A, V> extends StructuredTaskScope<T>
           var e = result.element;
           var o = other.element;
           var newElement = comparator.compare(e, o) >= 0 ? e : o;
-          return new Result<>(State.SUCCEED, newElement, newException);
+          return newResult(result, other, State.SUCCEED, newElement, newException);
         }
-        return new Result<>(State.SUCCEED, result.element, newException);
+        return newResult(result, other, State.SUCCEED, result.element, newException);
       }
-      return new Result<>(other.state, other.element, newException);
+      return newResult(result, other, other.state, other.element, newException);
     }
 
     public static <T> Reducer<T, ?, Optional<Result<T>>> max(Comparator<? super T> comparator) {
+      requireNonNull(comparator);
       return new Reducer<T, Result<T>, Optional<Result<T>>>((r1, r2, shutdown) -> maxMergeResult(r1, r2, comparator), Optional::ofNullable);
     }
 
+    public static <T> Reducer<T, ?, Optional<Result<T>>> min(Comparator<? super T> comparator) {
+      return max(comparator.reversed());
+    }
+
+    // like max() but accumulated in striped cells, so among equal elements the one kept is not deterministic
+    // and the exceptions are suppressed by the exception of each cell, not all by the first exception
+    public static <T> Reducer<T, ?, Optional<Result<T>>> unorderedMax(Comparator<? super T> comparator) {
+      requireNonNull(comparator);
+      return Reducer.<T, Result<T>, Optional<Result<T>>>commutative((r1, r2, shutdown) -> maxMergeResult(r1, r2, comparator), (r1, r2) -> maxMergeResult(r1, r2, comparator), Optional::ofNullable);
+    }
+
+    public static <T> Reducer<T, ?, Optional<Result<T>>> unorderedMin(Comparator<? super T> comparator) {
+      return unorderedMax(comparator.reversed());
+    }
+
+    private static final class LongBox {
+      private long value;
+
+      private static LongBox add(LongBox box, long value) {
+        var newBox = box == null? new LongBox(): box;
+        newBox.value += value;
+        return newBox;
+      }
+
+      private static LongBox merge(LongBox box1, LongBox box2) {
+        box1.value += box2.value;
+        return box1;
+      }
+
+      private static long finish(LongBox box) {
+        return box == null? 0: box.value;
+      }
+    }
+
+    // failed results are ignored
+    public static <T> Reducer<T, ?, Long> sum(ToLongFunction<? super T> mapper) {
+      requireNonNull(mapper);
+      return Reducer.<T, LongBox, Long>commutative(
+          (box, result, shutdown) -> result.state == State.SUCCEED? LongBox.add(box, mapper.applyAsLong(result.element)): box,
+          LongBox::merge, LongBox::finish);
+    }
+
+    // failed results are ignored
+    public static <T> Reducer<T, ?, Long> count() {
+      return Reducer.<T, LongBox, Long>commutative(
+          (box, result, shutdown) -> result.state == State.SUCCEED? LongBox.add(box, 1): box,
+          LongBox::merge, LongBox::finish);
+    }
+
+    public static <T> Reducer<T, ?, List<Result<T>>> toUnorderedList() {
+      return Reducer.<T, ArrayList<Result<T>>, List<Result<T>>>commutative(
+          (list, result, shutdown) -> {
+            var newList = list == null? new ArrayList<Result<T>>(): list;
+            newList.add(result);
+            return newList;
+          },
+          (list1, list2) -> {
+            list1.addAll(list2);
+            return list1;
+          },
+          list -> list == null? List.of(): Collections.unmodifiableList(list));
+    }
+
     private static <T> Result<T> firstMergeResult(Result<T> result, Result<T> other, Runnable shutdown) {
       if (result == null) {
         if (other.state == State.SUCCEED) {
@@ -92,12 +187,12 @@ public final class StructuredAsyncScope<T, A, V> extends StructuredTaskScope<T>
       }
       var newException = mergeException(result.suppressed, other.suppressed);
       if (result.state == State.SUCCEED) {
-        return new Result<>(State.SUCCEED, result.element, newException);
+        return newResult(result, other, State.SUCCEED, result.element, newException);
       }
       if (other.state == State.SUCCEED) {
         shutdown.run();
       }
-      return new Result<>(other.state, other.element, newException);
+      return newResult(result, other, other.state, other.element, newException);
     }
 
     public static <T> Reducer<T, ?, Optional<Result<T>>> first() {
@@ -110,7 +205,7 @@ public final class StructuredAsyncScope<T, A, V> extends StructuredTaskScope<T>
           shouldShutdown.run();
         }
         return combiner.apply(oldValue, result, shouldShutdown);
-      }, finisher);
+      }, merger, finisher);
     }
 
     public static <T> Reducer<T, ?, Optional<Throwable>> firstException() {
@@ -136,26 +231,132 @@ public final class StructuredAsyncScope<T, A, V> extends StructuredTaskScope<T>
     }
   }
 
-  private static final VarHandle VALUE_HANDLE;
+  // the value of the finisher over the results reduced before the deadline,
+  // included + dropped is the number of forked subtasks
+  public record Partial<V>(V value, long included, long dropped) {
+    public Partial {
+      if (included < 0 || dropped < 0) {
+        throw new IllegalArgumentException("included < 0 || dropped < 0");
+      }
+    }
+
+    public boolean isComplete() {
+      return dropped == 0;
+    }
+  }
+
+  // a completed subtask waiting to be reduced
+  private static final class Completion<T> {
+    private Result<T> result;
+    private Completion<T> next;
+
+    private Completion(Result<T> result) {
+      this.result = result;
+    }
+  }
+
+  // the shutdown flag of the thread currently reducing, so it is reused
+  private static final class ShutdownFlag implements Runnable {
+    private boolean shutdown;
+
+    @Override
+    public void run() {
+      shutdown = true;
+    }
+  }
+
+  // a stripe of a commutative reduction, like a cell of a LongAdder but protected by a try-lock
+  private static final class Cell<A> {
+    private volatile boolean locked;
+    private A value;  // guarded by locked
+    private long count;  // guarded by locked
+    private final ShutdownFlag shutdownFlag = new ShutdownFlag();  // guarded by locked
+  }
+
+  private static final VarHandle TAIL, REDUCING, NEXT, LOCKED, FORK_COUNT;
   static {
+    var lookup = MethodHandles.lookup();
     try {
-      VALUE_HANDLE = MethodHandles.lookup().findVarHandle(StructuredAsyncScope.class, "value", Object.class);
+      TAIL = lookup.findVarHandle(StructuredAsyncScope.class, "tail", Completion.class);
+      REDUCING = lookup.findVarHandle(StructuredAsyncScope.class, "reducing", boolean.class);
+      NEXT = lookup.findVarHandle(Completion.class, "next", Completion.class);
+      LOCKED = lookup.findVarHandle(Cell.class, "locked", boolean.class);
+      FORK_COUNT = lookup.findVarHandle(StructuredAsyncScope.class, "forkCount", long.class);
     } catch (NoSuchFieldException | IllegalAccessException e) {
       throw new AssertionError(e);
     }
   }
 
+  private static final int CELL_COUNT;
+  static {
+    var processors = Runtime.getRuntime().availableProcessors();
+    CELL_COUNT = 1 << (32 - Integer.numberOfLeadingZeros(2 * processors - 1));  // power of 2 >= 2 * processors
+  }
+
+  // Completed subtasks are pushed into a wait-free queue and only one thread at a time,
+  // the one that owns the reducing flag, calls the combiner on all the queued results,
+  // so the combiner is never called twice for the same result and nothing is allocated on contention.
   private volatile A value;
+  private Completion<T> head = new Completion<>(null);  // guarded by reducing
+  private volatile Completion<T> tail = head;
+  private volatile boolean reducing;
+  private final ShutdownFlag shutdownFlag = new ShutdownFlag();  // guarded by reducing
+  private long reducedCount;  // guarded by reducing
+  private volatile long forkCount;
+  private volatile boolean sealed;  // true if the results not yet reduced are dropped
+  private final Cell<A>[] cells;  // null if the reducer is not commutative
   private final Reducer<T, A, V> reducer;
+  private final ScopeListener listener;
+  private boolean closed;
 
   public StructuredAsyncScope(Reducer<T, A, V> reducer) {
+    this(reducer, ScopeListener.NONE);
+  }
+
+  public StructuredAsyncScope(Reducer<T, A, V> reducer, ScopeListener listener) {
     this.reducer = requireNonNull(reducer);
+    this.listener = requireNonNull(listener);
+    this.cells = reducer.isCommutative()? newCells(): null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <A> Cell<A>[] newCells() {
+    var cells = (Cell<A>[]) new Cell<?>[CELL_COUNT];
+    for(var i = 0; i < cells.length; i++) {
+      cells[i] = new Cell<>();
+    }
+    return cells;
   }
 
   public static <T, V> StructuredAsyncScope<T, ?, V> of(Reducer<T, ?, V> reducer) {
     return new StructuredAsyncScope<>(reducer);
   }
 
+  public static <T, V> StructuredAsyncScope<T, ?, V> of(Reducer<T, ?, V> reducer, ScopeListener listener) {
+    return new StructuredAsyncScope<>(reducer, listener);
+  }
+
+  @Override
+  public <U extends T> Subtask<U> fork(Callable<? extends U> task) {
+    var listener = this.listener;
+    if (listener == ScopeListener.NONE) {
+      var subtask = super.<U>fork(task);
+      FORK_COUNT.getAndAdd(this, 1L);
+      return subtask;
+    }
+    var subtask = super.<U>fork(() -> {
+      var start = System.nanoTime();
+      try {
+        return task.call();
+      } finally {
+        listener.onRun(System.nanoTime() - start);
+      }
+    });
+    FORK_COUNT.getAndAdd(this, 1L);
+    listener.onFork();
+    return subtask;
+  }
+
   @Override
   protected void handleComplete(Subtask<? extends T> subtask) {
     Result<T> result = switch (subtask.state()) {
@@ -163,32 +364,234 @@ public final class StructuredAsyncScope<T, A, V> extends StructuredTaskScope<T>
       case SUCCESS -> result = new Result<T>(State.SUCCEED, subtask.get(), null);
       case FAILED -> result = new Result<T>(State.FAILED, null, subtask.exception());
     };
-    var shouldShutdown = new Runnable() {
-      private boolean shutdown;
-      @Override
-      public void run() {
-        shutdown = true;
+    if (listener != ScopeListener.NONE) {
+      switch (result.state) {
+        case SUCCEED -> listener.onSuccess();
+        case FAILED -> {
+          if (!(result.suppressed instanceof InterruptedException)) {  // an interrupted subtask is cancelled
+            listener.onFailure(result.suppressed);
+          }
+        }
       }
-    };
+    }
+    if (cells != null) {
+      accumulate(result);
+      return;
+    }
+    var completion = new Completion<>(result);
+    @SuppressWarnings("unchecked")
+    var previous = (Completion<T>) TAIL.getAndSet(this, completion);
+    NEXT.setVolatile(previous, completion);
+    reduce();
+  }
+
+  // if the combiner throws, the exception is propagated to the completing subtask
+  // but the completions queued after the one that failed are still reduced
+  private void reduce() {
+    Throwable failure = null;
     for(;;) {
-      var oldValue = value;  // volatile read
-      var newValue = reducer.combiner.apply(oldValue, result, shouldShutdown);
-      if (VALUE_HANDLE.compareAndSet(this, oldValue, newValue)) {  // volatile read/write
-        if (shouldShutdown.shutdown) {
+      try {
+        reduceQueued();
+        break;
+      } catch (RuntimeException | Error e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      if (failure instanceof Error error) {
+        throw error;
+      }
+      throw (RuntimeException) failure;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void reduceQueued() {
+    Completion<T> last;
+    do {
+      if (!REDUCING.compareAndSet(this, false, true)) {
+        return;  // the thread that is reducing will see the completion
+      }
+      var value = this.value;
+      var head = this.head;
+      try {
+        Completion<T> next;
+        while((next = (Completion<T>) NEXT.getVolatile(head)) != null) {
+          head.next = null;  // help the GC
+          head = next;
+          this.head = head;  // before calling the combiner, the queue must stay reachable if it throws
+          var result = next.result;
+          next.result = null;
+          shutdownFlag.shutdown = false;
+          value = reducer.combiner.apply(value, result, shutdownFlag);
+          reducedCount++;
+          if (shutdownFlag.shutdown) {
+            this.value = value;  // volatile write
+            shutdown();
+          }
+        }
+        last = head;
+      } finally {
+        this.value = value;  // volatile write
+        reducing = false;  // volatile write
+      }
+    } while(NEXT.getVolatile(last) != null);  // a completion may have been added after the last read
+  }
+
+  private void accumulate(Result<T> result) {
+    var cells = this.cells;
+    var mask = cells.length - 1;
+    var probe = (int) ((Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L) >>> 32);
+    for(var i = 0;; i++) {
+      if (sealed) {
+        return;  // the owner is reading a partial result, this result is dropped
+      }
+      var cell = cells[(probe + i) & mask];
+      if (!cell.locked && LOCKED.compareAndSet(cell, false, true)) {
+        var shutdownFlag = cell.shutdownFlag;
+        shutdownFlag.shutdown = false;
+        try {
+          cell.value = reducer.combiner.apply(cell.value, result, shutdownFlag);
+          cell.count++;
+        } finally {
+          cell.locked = false;  // volatile write
+        }
+        if (shutdownFlag.shutdown) {
           shutdown();
         }
         return;
       }
+      if ((i & mask) == mask) {  // all cells are locked
+        Thread.onSpinWait();
+      }
+    }
+  }
+
+  private A value() {
+    var cells = this.cells;
+    if (cells == null) {
+      return value;  // volatile read
+    }
+    // if the scope is shutdown, join() does not wait for the subtasks that are still accumulating,
+    // so the cells are locked while they are merged (a sealed scope already owns all the cells)
+    var sealed = this.sealed;
+    if (!sealed) {
+      lockCells(cells);
+    }
+    try {
+      A value = null;
+      for(var cell: cells) {
+        var cellValue = cell.value;
+        if (cellValue != null) {
+          value = value == null? cellValue: reducer.merger.apply(value, cellValue);
+          cell.value = null;
+        }
+      }
+      cells[0].value = value;  // the merger may mutate the values, so keep only the merged value
+      return value;
+    } finally {
+      if (!sealed) {
+        unlockCells(cells);
+      }
+    }
+  }
+
+  private static void lockCells(Cell<?>[] cells) {
+    for(var cell: cells) {
+      while(!LOCKED.compareAndSet(cell, false, true)) {
+        Thread.onSpinWait();
+      }
+    }
+  }
+
+  private static void unlockCells(Cell<?>[] cells) {
+    for(var cell: cells) {
+      cell.locked = false;  // volatile write
     }
   }
 
   public V result() throws InterruptedException {
-    join();
-    return reducer.finisher.apply(value);  // volatile read
+    var start = System.nanoTime();
+    try {
+      join();
+    } finally {
+      listener.onJoin(System.nanoTime() - start);
+    }
+    sealIfShutdown();
+    return reducer.finisher.apply(value());
   }
 
   public V result(Instant deadline) throws InterruptedException, TimeoutException {
-    joinUntil(deadline);
-    return reducer.finisher.apply(value);  // volatile read
+    var start = System.nanoTime();
+    try {
+      joinUntil(deadline);
+    } finally {
+      listener.onJoin(System.nanoTime() - start);
+    }
+    sealIfShutdown();
+    return reducer.finisher.apply(value());
+  }
+
+  public Partial<V> partialResult(Instant deadline) throws InterruptedException {
+    requireNonNull(deadline);
+    var start = System.nanoTime();
+    try {
+      joinUntil(deadline);
+    } catch (TimeoutException e) {
+      shutdown();
+    } finally {
+      listener.onJoin(System.nanoTime() - start);
+    }
+    sealIfShutdown();
+    var included = reducedCount();
+    var value = reducer.finisher.apply(value());
+    return new Partial<>(value, included, forkCount - included);
+  }
+
+  // shutdown() does not wait for the subtasks that are completing, so to get a consistent snapshot
+  // of the value and of the number of reduced results, the owner takes the reducing flag (or all the cells)
+  // and never gives it back, the subtasks completing after that are not reduced.
+  // If the scope is not shutdown, join() has waited for all the subtasks, there is nothing to seal.
+  private void sealIfShutdown() {
+    if (isShutdown() && !sealed) {
+      seal();
+    }
+  }
+
+  private void seal() {
+    sealed = true;  // volatile write
+    var cells = this.cells;
+    if (cells == null) {
+      while(!REDUCING.compareAndSet(this, false, true)) {
+        Thread.onSpinWait();
+      }
+      return;
+    }
+    lockCells(cells);
+  }
+
+  private long reducedCount() {
+    var cells = this.cells;
+    if (cells == null) {
+      return reducedCount;  // the last reduction happens-before join() or seal()
+    }
+    var count = 0L;
+    for(var cell: cells) {
+      count += cell.count;
+    }
+    return count;
+  }
+
+  @Override
+  public void close() {
+    super.close();
+    if (!closed) {
+      closed = true;
+      listener.onClose();
+    }
   }
 }
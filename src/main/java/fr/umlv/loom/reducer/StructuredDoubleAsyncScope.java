@@ -0,0 +1,97 @@
+package fr.umlv.loom.reducer;
+
+import java.util.Arrays;
+import java.util.OptionalDouble;
+import java.util.DoubleSummaryStatistics;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+public final class StructuredDoubleAsyncScope<A, V> extends PrimitiveAsyncScope<A, V> {
+  @FunctionalInterface
+  public interface DoubleInvokable<E extends Exception> {
+    double invoke() throws E, InterruptedException;
+  }
+
+  // like a Collector, the accumulator and the merger can mutate the value
+  public record DoubleReducer<A, V>(Supplier<? extends A> supplier, ObjDoubleConsumer<A> accumulator, BinaryOperator<A> merger, Function<? super A, ? extends V> finisher) {
+    public DoubleReducer {
+      requireNonNull(supplier);
+      requireNonNull(accumulator);
+      requireNonNull(merger);
+      requireNonNull(finisher);
+    }
+
+    public static DoubleReducer<?, DoubleSummaryStatistics> summaryStatistics() {
+      return statistics(s -> {  // a copy, the value of the cell may be accumulated into after result()
+        var copy = new DoubleSummaryStatistics();
+        copy.combine(s);
+        return copy;
+      });
+    }
+
+    private static <V> DoubleReducer<?, V> statistics(Function<? super DoubleSummaryStatistics, ? extends V> finisher) {
+      return new DoubleReducer<DoubleSummaryStatistics, V>(DoubleSummaryStatistics::new, DoubleSummaryStatistics::accept,
+          combining(DoubleSummaryStatistics::combine), finisher);
+    }
+
+    public static DoubleReducer<?, Double> sum() {
+      return statistics(DoubleSummaryStatistics::getSum);
+    }
+
+    public static DoubleReducer<?, Long> count() {
+      return statistics(DoubleSummaryStatistics::getCount);
+    }
+
+    public static DoubleReducer<?, OptionalDouble> min() {
+      return statistics(s -> s.getCount() == 0? OptionalDouble.empty(): OptionalDouble.of(s.getMin()));
+    }
+
+    public static DoubleReducer<?, OptionalDouble> max() {
+      return statistics(s -> s.getCount() == 0? OptionalDouble.empty(): OptionalDouble.of(s.getMax()));
+    }
+
+    public static DoubleReducer<?, OptionalDouble> average() {
+      return statistics(s -> s.getCount() == 0? OptionalDouble.empty(): OptionalDouble.of(s.getAverage()));
+    }
+
+    // the bounds must be strictly increasing, see PrimitiveAsyncScope for the definition of the buckets
+    public static DoubleReducer<?, long[]> histogram(double... bounds) {
+      return histogramOf(checkBounds(bounds));
+    }
+
+    private static DoubleReducer<long[], long[]> histogramOf(double[] bounds) {
+      return new DoubleReducer<>(counts(bounds.length),
+          (counts, value) -> increment(counts, Arrays.binarySearch(bounds, value)),
+          PrimitiveAsyncScope::mergeCounts, long[]::clone);
+    }
+  }
+
+  private final ObjDoubleConsumer<A> accumulator;
+
+  public StructuredDoubleAsyncScope(DoubleReducer<A, V> reducer) {
+    super(reducer.supplier, reducer.merger, reducer.finisher);
+    this.accumulator = reducer.accumulator;
+  }
+
+  public static <V> StructuredDoubleAsyncScope<?, V> of(DoubleReducer<?, V> reducer) {
+    return new StructuredDoubleAsyncScope<>(reducer);
+  }
+
+  public void fork(DoubleInvokable<?> invokable) {
+    requireNonNull(invokable);
+    forkTask(() -> {
+      var value = invokable.invoke();
+      var cell = lock();
+      try {
+        accumulator.accept(cell.value, value);
+      } finally {
+        unlock(cell);
+      }
+      return null;
+    });
+  }
+}
@@ -0,0 +1,98 @@
+package fr.umlv.loom.reducer;
+
+import java.util.Arrays;
+import java.util.OptionalInt;
+import java.util.OptionalDouble;
+import java.util.IntSummaryStatistics;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+public final class StructuredIntAsyncScope<A, V> extends PrimitiveAsyncScope<A, V> {
+  @FunctionalInterface
+  public interface IntInvokable<E extends Exception> {
+    int invoke() throws E, InterruptedException;
+  }
+
+  // like a Collector, the accumulator and the merger can mutate the value
+  public record IntReducer<A, V>(Supplier<? extends A> supplier, ObjIntConsumer<A> accumulator, BinaryOperator<A> merger, Function<? super A, ? extends V> finisher) {
+    public IntReducer {
+      requireNonNull(supplier);
+      requireNonNull(accumulator);
+      requireNonNull(merger);
+      requireNonNull(finisher);
+    }
+
+    public static IntReducer<?, IntSummaryStatistics> summaryStatistics() {
+      return statistics(s -> {  // a copy, the value of the cell may be accumulated into after result()
+        var copy = new IntSummaryStatistics();
+        copy.combine(s);
+        return copy;
+      });
+    }
+
+    private static <V> IntReducer<?, V> statistics(Function<? super IntSummaryStatistics, ? extends V> finisher) {
+      return new IntReducer<IntSummaryStatistics, V>(IntSummaryStatistics::new, IntSummaryStatistics::accept,
+          combining(IntSummaryStatistics::combine), finisher);
+    }
+
+    public static IntReducer<?, Long> sum() {
+      return statistics(IntSummaryStatistics::getSum);
+    }
+
+    public static IntReducer<?, Long> count() {
+      return statistics(IntSummaryStatistics::getCount);
+    }
+
+    public static IntReducer<?, OptionalInt> min() {
+      return statistics(s -> s.getCount() == 0? OptionalInt.empty(): OptionalInt.of(s.getMin()));
+    }
+
+    public static IntReducer<?, OptionalInt> max() {
+      return statistics(s -> s.getCount() == 0? OptionalInt.empty(): OptionalInt.of(s.getMax()));
+    }
+
+    public static IntReducer<?, OptionalDouble> average() {
+      return statistics(s -> s.getCount() == 0? OptionalDouble.empty(): OptionalDouble.of(s.getAverage()));
+    }
+
+    // the bounds must be strictly increasing, see PrimitiveAsyncScope for the definition of the buckets
+    public static IntReducer<?, long[]> histogram(int... bounds) {
+      return histogramOf(checkBounds(bounds));
+    }
+
+    private static IntReducer<long[], long[]> histogramOf(int[] bounds) {
+      return new IntReducer<>(counts(bounds.length),
+          (counts, value) -> increment(counts, Arrays.binarySearch(bounds, value)),
+          PrimitiveAsyncScope::mergeCounts, long[]::clone);
+    }
+  }
+
+  private final ObjIntConsumer<A> accumulator;
+
+  public StructuredIntAsyncScope(IntReducer<A, V> reducer) {
+    super(reducer.supplier, reducer.merger, reducer.finisher);
+    this.accumulator = reducer.accumulator;
+  }
+
+  public static <V> StructuredIntAsyncScope<?, V> of(IntReducer<?, V> reducer) {
+    return new StructuredIntAsyncScope<>(reducer);
+  }
+
+  public void fork(IntInvokable<?> invokable) {
+    requireNonNull(invokable);
+    forkTask(() -> {
+      var value = invokable.invoke();
+      var cell = lock();
+      try {
+        accumulator.accept(cell.value, value);
+      } finally {
+        unlock(cell);
+      }
+      return null;
+    });
+  }
+}
@@ -0,0 +1,98 @@
+package fr.umlv.loom.reducer;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+import java.util.OptionalDouble;
+import java.util.LongSummaryStatistics;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+public final class StructuredLongAsyncScope<A, V> extends PrimitiveAsyncScope<A, V> {
+  @FunctionalInterface
+  public interface LongInvokable<E extends Exception> {
+    long invoke() throws E, InterruptedException;
+  }
+
+  // like a Collector, the accumulator and the merger can mutate the value
+  public record LongReducer<A, V>(Supplier<? extends A> supplier, ObjLongConsumer<A> accumulator, BinaryOperator<A> merger, Function<? super A, ? extends V> finisher) {
+    public LongReducer {
+      requireNonNull(supplier);
+      requireNonNull(accumulator);
+      requireNonNull(merger);
+      requireNonNull(finisher);
+    }
+
+    public static LongReducer<?, LongSummaryStatistics> summaryStatistics() {
+      return statistics(s -> {  // a copy, the value of the cell may be accumulated into after result()
+        var copy = new LongSummaryStatistics();
+        copy.combine(s);
+        return copy;
+      });
+    }
+
+    private static <V> LongReducer<?, V> statistics(Function<? super LongSummaryStatistics, ? extends V> finisher) {
+      return new LongReducer<LongSummaryStatistics, V>(LongSummaryStatistics::new, LongSummaryStatistics::accept,
+          combining(LongSummaryStatistics::combine), finisher);
+    }
+
+    public static LongReducer<?, Long> sum() {
+      return statistics(LongSummaryStatistics::getSum);
+    }
+
+    public static LongReducer<?, Long> count() {
+      return statistics(LongSummaryStatistics::getCount);
+    }
+
+    public static LongReducer<?, OptionalLong> min() {
+      return statistics(s -> s.getCount() == 0? OptionalLong.empty(): OptionalLong.of(s.getMin()));
+    }
+
+    public static LongReducer<?, OptionalLong> max() {
+      return statistics(s -> s.getCount() == 0? OptionalLong.empty(): OptionalLong.of(s.getMax()));
+    }
+
+    public static LongReducer<?, OptionalDouble> average() {
+      return statistics(s -> s.getCount() == 0? OptionalDouble.empty(): OptionalDouble.of(s.getAverage()));
+    }
+
+    // the bounds must be strictly increasing, see PrimitiveAsyncScope for the definition of the buckets
+    public static LongReducer<?, long[]> histogram(long... bounds) {
+      return histogramOf(checkBounds(bounds));
+    }
+
+    private static LongReducer<long[], long[]> histogramOf(long[] bounds) {
+      return new LongReducer<>(counts(bounds.length),
+          (counts, value) -> increment(counts, Arrays.binarySearch(bounds, value)),
+          PrimitiveAsyncScope::mergeCounts, long[]::clone);
+    }
+  }
+
+  private final ObjLongConsumer<A> accumulator;
+
+  public StructuredLongAsyncScope(LongReducer<A, V> reducer) {
+    super(reducer.supplier, reducer.merger, reducer.finisher);
+    this.accumulator = reducer.accumulator;
+  }
+
+  public static <V> StructuredLongAsyncScope<?, V> of(LongReducer<?, V> reducer) {
+    return new StructuredLongAsyncScope<>(reducer);
+  }
+
+  public void fork(LongInvokable<?> invokable) {
+    requireNonNull(invokable);
+    forkTask(() -> {
+      var value = invokable.invoke();
+      var cell = lock();
+      try {
+        accumulator.accept(cell.value, value);
+      } finally {
+        unlock(cell);
+      }
+      return null;
+    });
+  }
+}
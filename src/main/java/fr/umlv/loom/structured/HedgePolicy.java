@@ -0,0 +1,194 @@
+package fr.umlv.loom.structured;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides when a {@link StructuredScopeHedging} forks a backup invokable.
+ * <p>
+ * The latencies of the invokables are recorded per key (by example, per backend),
+ * the delay before a backup is either a fixed delay or a percentile of the recent latencies of the key.
+ * <p>
+ * The number of backups is bounded by a budget: each request adds {@code maxExtraLoad} to the budget
+ * and each backup costs 1, so with {@code maxExtraLoad = .05}, at most 5% of extra requests are sent
+ * (plus a small burst). A backup forked because all the invokables already failed is not counted.
+ * <p>
+ * A policy is thread safe and is usually shared by all the scopes that access the same backends.
+ * <pre>
+ *   var policy = HedgePolicy.&lt;String&gt;ofPercentile(.95, Duration.ofMillis(50), .05);
+ *   ...
+ *   try(var scope = new StructuredScopeHedging&lt;String, byte[], IOException&gt;(policy, "users")) {
+ *     scope.fork(() -&gt; replica1.get(id));
+ *     scope.fork(() -&gt; replica2.get(id));
+ *     return scope.joinAll();
+ *   }
+ * </pre>
+ *
+ * @param <K> type of the keys
+ */
+public final class HedgePolicy<K> {
+  private static final int WINDOW = 128;           // number of recent latencies kept per key
+  private static final int MIN_SAMPLES = 16;       // before that, the initial delay is used
+  private static final int REFRESH = 16;           // the percentile is recomputed every REFRESH samples
+  private static final long UNIT = 1_000_000;      // fixed point unit of the budget
+  private static final long MAX_BURST = 10;        // maximum number of backups in a burst
+
+  // a ring buffer of the recent latencies of a key
+  private static final class Latencies {
+    private final AtomicLongArray window = new AtomicLongArray(WINDOW);
+    private final AtomicLong count = new AtomicLong();
+    private volatile long percentileNanos;
+
+    void record(long nanos, double percentile) {
+      var index = count.getAndIncrement();
+      window.set((int) (index % WINDOW), nanos);
+      if ((index + 1) % REFRESH == 0) {
+        percentileNanos = percentile(percentile);
+      }
+    }
+
+    long percentile(double percentile) {
+      var size = (int) Math.min(count.get(), WINDOW);
+      var values = new long[size];
+      for(var i = 0; i < size; i++) {
+        values[i] = window.get(i);
+      }
+      Arrays.sort(values);
+      return size == 0? 0: values[Math.max(0, Math.min(size - 1, (int) Math.ceil(percentile * size) - 1))];
+    }
+  }
+
+  private final long delayNanos;
+  private final double percentile;  // NaN if the delay is fixed
+  private final long credit;
+  private final ConcurrentHashMap<K, Latencies> latencies = new ConcurrentHashMap<>();
+  private final AtomicLong budget = new AtomicLong();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder hedges = new LongAdder();
+
+  private HedgePolicy(long delayNanos, double percentile, double maxExtraLoad) {
+    if (delayNanos < 0) {
+      throw new IllegalArgumentException("delay < 0");
+    }
+    if (maxExtraLoad < 0 || maxExtraLoad > 1) {
+      throw new IllegalArgumentException("maxExtraLoad should be between 0 and 1");
+    }
+    this.delayNanos = delayNanos;
+    this.percentile = percentile;
+    this.credit = (long) (maxExtraLoad * UNIT);
+  }
+
+  /**
+   * Creates a policy that forks a backup after a fixed delay.
+   * @param delay the delay before a backup is forked.
+   * @param maxExtraLoad the maximum ratio of backups per request, between 0 and 1.
+   * @return a new policy.
+   * @param <K> type of the keys
+   * @throws IllegalArgumentException if the delay is negative or if maxExtraLoad is not between 0 and 1.
+   */
+  public static <K> HedgePolicy<K> ofDelay(Duration delay, double maxExtraLoad) {
+    Objects.requireNonNull(delay, "delay is null");
+    return new HedgePolicy<>(delay.toNanos(), Double.NaN, maxExtraLoad);
+  }
+
+  /**
+   * Creates a policy that forks a backup when the latency is greater than a percentile
+   * of the recent latencies of the key.
+   * @param percentile the percentile, between 0 and 1 (exclusive), by example {@code .95}.
+   * @param initialDelay the delay used while there are not enough recorded latencies for a key.
+   * @param maxExtraLoad the maximum ratio of backups per request, between 0 and 1.
+   * @return a new policy.
+   * @param <K> type of the keys
+   * @throws IllegalArgumentException if the percentile is not between 0 and 1,
+   *   if the initial delay is negative or if maxExtraLoad is not between 0 and 1.
+   */
+  public static <K> HedgePolicy<K> ofPercentile(double percentile, Duration initialDelay, double maxExtraLoad) {
+    Objects.requireNonNull(initialDelay, "initialDelay is null");
+    if (!(percentile > 0 && percentile < 1)) {
+      throw new IllegalArgumentException("percentile should be between 0 and 1");
+    }
+    return new HedgePolicy<>(initialDelay.toNanos(), percentile, maxExtraLoad);
+  }
+
+  /**
+   * Returns the delay before forking a backup for a key.
+   * @param key the key.
+   * @return the delay before forking a backup for a key.
+   */
+  public Duration hedgeDelay(K key) {
+    return Duration.ofNanos(hedgeDelayNanos(key));
+  }
+
+  long hedgeDelayNanos(K key) {
+    if (Double.isNaN(percentile)) {
+      return delayNanos;
+    }
+    var latencies = this.latencies.get(key);
+    if (latencies == null || latencies.count.get() < MIN_SAMPLES) {
+      return delayNanos;
+    }
+    var percentileNanos = latencies.percentileNanos;
+    return percentileNanos == 0? delayNanos: percentileNanos;  // may not be computed yet
+  }
+
+  /**
+   * Returns the percentile of the recent latencies of a key.
+   * @param key the key.
+   * @param percentile a value between 0 and 1.
+   * @return the percentile of the recent latencies of a key, 0 if no latency is recorded.
+   * @throws IllegalArgumentException if the percentile is not between 0 and 1.
+   */
+  public Duration latency(K key, double percentile) {
+    if (!(percentile >= 0 && percentile <= 1)) {
+      throw new IllegalArgumentException("percentile should be between 0 and 1");
+    }
+    var latencies = this.latencies.get(key);
+    return Duration.ofNanos(latencies == null? 0: latencies.percentile(percentile));
+  }
+
+  /**
+   * Returns the number of requests.
+   * @return the number of requests.
+   */
+  public long requests() {
+    return requests.sum();
+  }
+
+  /**
+   * Returns the number of backups forked because of the delay.
+   * @return the number of backups forked because of the delay.
+   */
+  public long hedges() {
+    return hedges.sum();
+  }
+
+  // called once per request, adds the credit of the request to the budget
+  void onRequest() {
+    requests.increment();
+    budget.accumulateAndGet(credit, (budget, credit) -> Math.min(budget + credit, MAX_BURST * UNIT));
+  }
+
+  // returns true if the budget allows one more backup
+  boolean tryAcquireHedge() {
+    for(;;) {
+      var budget = this.budget.get();
+      if (budget < UNIT) {
+        return false;
+      }
+      if (this.budget.compareAndSet(budget, budget - UNIT)) {
+        hedges.increment();
+        return true;
+      }
+    }
+  }
+
+  // the latency of a successful invokable
+  void record(K key, long nanos) {
+    latencies.computeIfAbsent(key, __ -> new Latencies()).record(nanos, Double.isNaN(percentile)? .5: percentile);
+  }
+}
@@ -0,0 +1,103 @@
+package fr.umlv.loom.structured;
+
+import fr.umlv.loom.structured.StructuredScopeAsStream.Result;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free multi-producers single-consumer queue of {@link Result results}.
+ * Any thread can {@link #send(Result) send} a result but only the owner thread can
+ * {@link #poll() poll} or {@link #take() take} them.
+ * <p>
+ * The queue is intrusive, a result is its own link, so sending a result does not allocate
+ * and a result can only be sent once.
+ * Producers never block, only the owner thread is parked if there is no result available.
+ *
+ * @param <T> type of the result value
+ * @param <E> type of the exception in case of failure
+ */
+final class ResultChannel<T, E extends Exception> {
+  private static final VarHandle TAIL, WAITING, NEXT;
+  static {
+    var lookup = MethodHandles.lookup();
+    try {
+      TAIL = lookup.findVarHandle(ResultChannel.class, "tail", Result.class);
+      WAITING = lookup.findVarHandle(ResultChannel.class, "waiting", boolean.class);
+      NEXT = lookup.findVarHandle(Result.class, "next", Result.class);
+    } catch (NoSuchFieldException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private final Thread owner;
+  private Result<T, E> head;  // only accessed by the owner
+  private volatile Result<T, E> tail;
+  private volatile boolean waiting;
+
+  /**
+   * Creates an empty channel.
+   * @param owner the only thread allowed to consume the results.
+   */
+  ResultChannel(Thread owner) {
+    this.owner = owner;
+    var stub = new Result<T, E>(Result.State.SUCCESS, null, null);
+    this.head = stub;
+    this.tail = stub;
+  }
+
+  /**
+   * Sends a result, this method can be called by any thread and never blocks.
+   * @param result a result that was never sent before.
+   */
+  @SuppressWarnings("unchecked")
+  void send(Result<T, E> result) {
+    var previous = (Result<T, E>) TAIL.getAndSet(this, result);
+    NEXT.setVolatile(previous, result);
+    if (waiting && WAITING.compareAndSet(this, true, false)) {  // volatile read
+      LockSupport.unpark(owner);
+    }
+  }
+
+  /**
+   * Returns the next result or null if no result is available.
+   * This method must be called by the owner thread.
+   * @return the next result or null.
+   */
+  @SuppressWarnings("unchecked")
+  Result<T, E> poll() {
+    var next = (Result<T, E>) NEXT.getVolatile(head);
+    if (next == null) {
+      return null;
+    }
+    head.next = null;  // help the GC, head is not the tail anymore
+    head = next;
+    return next;
+  }
+
+  /**
+   * Returns the next result, parks the owner thread until a result is available.
+   * This method must be called by the owner thread.
+   * @return the next result.
+   * @throws InterruptedException if the owner thread is interrupted.
+   */
+  Result<T, E> take() throws InterruptedException {
+    for(;;) {
+      var result = poll();
+      if (result != null) {
+        return result;
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      waiting = true;  // volatile write
+      result = poll();
+      if (result != null) {
+        waiting = false;
+        return result;
+      }
+      LockSupport.park(this);
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package fr.umlv.loom.structured;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event committed by {@link ScopeMetrics} when a scope is closed.
+ */
+@Name("fr.umlv.loom.Scope")
+@Label("Structured Scope")
+@Category({"Loom", "Structured Concurrency"})
+@Description("Statistics of a structured scope from its creation to its closing")
+@StackTrace(false)
+final class ScopeEvent extends jdk.jfr.Event {
+  @Label("Name")
+  String name;
+
+  @Label("Forked")
+  long forked;
+
+  @Label("Succeeded")
+  long succeeded;
+
+  @Label("Failed")
+  long failed;
+
+  @Label("Cancelled")
+  long cancelled;
+
+  @Label("Total Run Time")
+  @Timespan
+  long runTime;
+
+  @Label("Total Queue Wait Time")
+  @Timespan
+  long queueWaitTime;
+
+  @Label("Join Blocked Time")
+  @Timespan
+  long joinBlockedTime;
+}
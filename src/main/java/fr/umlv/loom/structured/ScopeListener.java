@@ -0,0 +1,62 @@
+package fr.umlv.loom.structured;
+
+/**
+ * A listener of the events of a structured scope, used to monitor a scope.
+ * <p>
+ * All the methods are optional, {@link #onFork()} and {@link #onJoin(long)} are called
+ * by the owner thread of the scope, the other methods may be called concurrently by the threads
+ * running the subtasks so an implementation has to be thread-safe.
+ * <p>
+ * A subtask that was forked but neither succeeded nor failed when the scope is
+ * {@link #onClose() closed} was cancelled. A subtask that ends with an {@link InterruptedException}
+ * is also considered as cancelled, neither {@link #onSuccess()} nor {@link #onFailure(Throwable)}
+ * is called for it.
+ *
+ * @see ScopeMetrics
+ */
+public interface ScopeListener {
+  /**
+   * A listener that does nothing.
+   */
+  ScopeListener NONE = new ScopeListener() {};
+
+  /**
+   * Called when a subtask is forked.
+   */
+  default void onFork() {}
+
+  /**
+   * Called when a subtask has finished to run, whatever the outcome.
+   * @param runNanos the running time of the subtask in nanoseconds.
+   */
+  default void onRun(long runNanos) {}
+
+  /**
+   * Called when the result of a subtask is a success.
+   */
+  default void onSuccess() {}
+
+  /**
+   * Called when the result of a subtask is a failure.
+   * @param failure the exception thrown by the subtask.
+   */
+  default void onFailure(Throwable failure) {}
+
+  /**
+   * Called when the result of a subtask is consumed by the owner of the scope.
+   * @param queueWaitNanos the time between the completion of the subtask and the consumption
+   *                       of its result in nanoseconds.
+   */
+  default void onConsume(long queueWaitNanos) {}
+
+  /**
+   * Called when the owner of the scope has finished to wait for the results.
+   * @param blockedNanos the time the owner thread was blocked waiting for the results in nanoseconds.
+   */
+  default void onJoin(long blockedNanos) {}
+
+  /**
+   * Called when the scope is closed, all subtasks are finished.
+   */
+  default void onClose() {}
+}
@@ -0,0 +1,241 @@
+package fr.umlv.loom.structured;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ScopeListener} that records the counters and the histograms of a scope.
+ * <p>
+ * When the scope is closed, if the event {@code fr.umlv.loom.Scope} is enabled,
+ * a JFR event is committed with the counters and the total times.
+ * <p>
+ * An instance of this class should be used by only one scope.
+ * <pre>
+ *   var metrics = new ScopeMetrics("search");
+ *   try(var scope = new StructuredScopeAsStream&lt;Integer, IOException&gt;(metrics)) {
+ *     ...
+ *   }
+ *   System.out.println(metrics.runTime().percentile(.99));
+ * </pre>
+ */
+public final class ScopeMetrics implements ScopeListener {
+  /**
+   * A lock-free histogram of durations in nanoseconds with buckets of power of 2.
+   */
+  public static final class Histogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram() {}
+
+    void record(long nanos) {
+      var value = Math.max(0, nanos);
+      buckets.getAndIncrement(64 - Long.numberOfLeadingZeros(value) - (value == 0? 0: 1));
+      count.increment();
+      sum.add(value);
+      max.accumulate(value);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return the number of recorded values.
+     */
+    public long count() {
+      return count.sum();
+    }
+
+    /**
+     * Returns the sum of the recorded values in nanoseconds.
+     * @return the sum of the recorded values in nanoseconds.
+     */
+    public long sum() {
+      return sum.sum();
+    }
+
+    /**
+     * Returns the maximum of the recorded values in nanoseconds.
+     * @return the maximum of the recorded values in nanoseconds, 0 if there is no value.
+     */
+    public long max() {
+      return max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values in nanoseconds.
+     * @return the mean of the recorded values in nanoseconds, 0 if there is no value.
+     */
+    public double mean() {
+      var count = count();
+      return count == 0? 0: (double) sum() / count;
+    }
+
+    /**
+     * Returns an upper bound of the percentile of the recorded values in nanoseconds.
+     * The result is precise up to a power of 2.
+     * @param percentile a value between 0 and 1.
+     * @return an upper bound of the percentile of the recorded values in nanoseconds.
+     * @throws IllegalArgumentException if the percentile is not between 0 and 1.
+     */
+    public long percentile(double percentile) {
+      if (percentile < 0 || percentile > 1) {
+        throw new IllegalArgumentException("percentile not between 0 and 1");
+      }
+      var total = 0L;
+      for(var i = 0; i < buckets.length(); i++) {
+        total += buckets.get(i);
+      }
+      var rank = (long) Math.ceil(percentile * total);
+      var seen = 0L;
+      for(var i = 0; i < buckets.length(); i++) {
+        seen += buckets.get(i);
+        if (seen >= rank && seen != 0) {
+          return Math.min(i == 63? Long.MAX_VALUE: (1L << (i + 1)) - 1, max());
+        }
+      }
+      return 0;
+    }
+
+    @Override
+    public String toString() {
+      return "Histogram(count=" + count() + ", mean=" + mean() + ", p50=" + percentile(.5) + ", p99=" + percentile(.99) + ", max=" + max() + ")";
+    }
+  }
+
+  private final String name;
+  private final ScopeEvent event = new ScopeEvent();
+  private final LongAdder forked = new LongAdder();
+  private final LongAdder succeeded = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final Histogram runTime = new Histogram();
+  private final Histogram queueWaitTime = new Histogram();
+  private final Histogram joinBlockedTime = new Histogram();
+
+  /**
+   * Creates a metrics recorder.
+   * @param name the name of the scope, used by the JFR event.
+   */
+  public ScopeMetrics(String name) {
+    this.name = name;
+    event.begin();
+  }
+
+  /**
+   * Returns the name of the scope.
+   * @return the name of the scope.
+   */
+  public String name() {
+    return name;
+  }
+
+  /**
+   * Returns the number of forked subtasks.
+   * @return the number of forked subtasks.
+   */
+  public long forked() {
+    return forked.sum();
+  }
+
+  /**
+   * Returns the number of subtasks that succeed.
+   * @return the number of subtasks that succeed.
+   */
+  public long succeeded() {
+    return succeeded.sum();
+  }
+
+  /**
+   * Returns the number of subtasks that failed.
+   * @return the number of subtasks that failed.
+   */
+  public long failed() {
+    return failed.sum();
+  }
+
+  /**
+   * Returns the number of subtasks that neither succeed nor failed,
+   * once the scope is closed, it's the number of cancelled subtasks.
+   * @return the number of subtasks that neither succeed nor failed.
+   */
+  public long cancelled() {
+    return forked() - succeeded() - failed();
+  }
+
+  /**
+   * Returns the histogram of the running time of the subtasks.
+   * @return the histogram of the running time of the subtasks.
+   */
+  public Histogram runTime() {
+    return runTime;
+  }
+
+  /**
+   * Returns the histogram of the time between the completion of a subtask and the consumption of its result.
+   * @return the histogram of the time between the completion of a subtask and the consumption of its result.
+   */
+  public Histogram queueWaitTime() {
+    return queueWaitTime;
+  }
+
+  /**
+   * Returns the histogram of the time the owner thread is blocked waiting for the results.
+   * @return the histogram of the time the owner thread is blocked waiting for the results.
+   */
+  public Histogram joinBlockedTime() {
+    return joinBlockedTime;
+  }
+
+  @Override
+  public void onFork() {
+    forked.increment();
+  }
+
+  @Override
+  public void onRun(long runNanos) {
+    runTime.record(runNanos);
+  }
+
+  @Override
+  public void onSuccess() {
+    succeeded.increment();
+  }
+
+  @Override
+  public void onFailure(Throwable failure) {
+    failed.increment();
+  }
+
+  @Override
+  public void onConsume(long queueWaitNanos) {
+    queueWaitTime.record(queueWaitNanos);
+  }
+
+  @Override
+  public void onJoin(long blockedNanos) {
+    joinBlockedTime.record(blockedNanos);
+  }
+
+  @Override
+  public void onClose() {
+    event.end();
+    if (event.shouldCommit()) {
+      event.name = name;
+      event.forked = forked();
+      event.succeeded = succeeded();
+      event.failed = failed();
+      event.cancelled = cancelled();
+      event.runTime = runTime.sum();
+      event.queueWaitTime = queueWaitTime.sum();
+      event.joinBlockedTime = joinBlockedTime.sum();
+      event.commit();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ScopeMetrics(" + name + ", forked=" + forked() + ", succeeded=" + succeeded() + ", failed=" + failed() + ", cancelled=" + cancelled()
+        + ", runTime=" + runTime + ", queueWaitTime=" + queueWaitTime + ", joinBlockedTime=" + joinBlockedTime + ")";
+  }
+}
@@ -2,10 +2,14 @@ package fr.umlv.loom.structured;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
 import java.util.Objects;
 import java.util.Spliterator;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -62,8 +66,10 @@ public final class StructuredScopeAsStream<T, E extends Exception> implements Au
     private final State state;
     private final T result;
     private final E failure;
+    Result<T, E> next;  // intrusive link used by ResultChannel
+    long completionNanos;  // used to compute the queue wait time if there is a listener
 
-    private Result(State state, T result, E failure) {
+    Result(State state, T result, E failure) {
       this.state = state;
       this.result = result;
       this.failure = failure;
@@ -183,6 +189,8 @@ public final class StructuredScopeAsStream<T, E extends Exception> implements Au
     /**
      * Returns a collector that collect the successful results using a downstream collector or
      * if all results have failed keep the first failure and adds the other failure as suppressed exceptions.
+     * This collector can be used on a parallel stream, the partial results are merged using
+     * the combiner of the downstream collector.
      *
      * @param downstream a downstream collector
      * @return a collector that collect the successful results using a downstream collector
@@ -196,7 +204,7 @@ public final class StructuredScopeAsStream<T, E extends Exception> implements Au
       Objects.requireNonNull(downstream, "downstream collector is null");
       var downstreamSupplier = downstream.supplier();
       var downstreamAccumulator = downstream.accumulator();
-      //var downstreamCombiner =  downstream.combiner();
+      var downstreamCombiner =  downstream.combiner();
       var downstreamFinisher = downstream.finisher();
       class Box {  // Collector API is mutable
         private Result<A,E> value;
@@ -237,7 +245,27 @@ public final class StructuredScopeAsStream<T, E extends Exception> implements Au
             }
           },
           (box1, box2) -> {
-            throw new IllegalStateException("this collector does not support parallel streams");
+            if (box1.value == null) {
+              return box2;
+            }
+            if (box2.value == null) {
+              return box1;
+            }
+            switch (box1.value.state) {
+              case SUCCESS -> {
+                switch (box2.value.state) {
+                  case SUCCESS -> box1.value = new Result<>(State.SUCCESS, downstreamCombiner.apply(box1.value.result, box2.value.result), null);
+                  case FAILED -> {}
+                }
+              }
+              case FAILED -> {
+                switch (box2.value.state) {
+                  case SUCCESS -> box1.value = box2.value;
+                  case FAILED -> box1.value.failure.addSuppressed(box2.value.failure);
+                }
+              }
+            }
+            return box1;
           },
           box -> {
             if (box.value == null) {  // not initialized
@@ -252,9 +280,60 @@ public final class StructuredScopeAsStream<T, E extends Exception> implements Au
     }
   }
 
+  /**
+   * A semaphore which number of permits can be changed at runtime.
+   * The limit is only changed by the owner thread.
+   * A permit is acquired by the owner thread and released by the task once finished,
+   * a task forked but cancelled by a shutdown before it starts never runs, so its permit
+   * is released by the owner thread once the scope is joined.
+   */
+  @SuppressWarnings("serial")
+  private static final class ConcurrencyLimiter extends Semaphore {
+    private int limit;
+    private long acquired;  // only accessed by the owner thread
+    private final AtomicLong released = new AtomicLong();
+
+    private ConcurrencyLimiter(int limit) {
+      super(limit);
+      this.limit = limit;
+    }
+
+    private void setLimit(int newLimit) {
+      var delta = newLimit - limit;
+      limit = newLimit;
+      if (delta > 0) {
+        release(delta);
+      } else {
+        reducePermits(-delta);
+      }
+    }
+
+    private void acquirePermit() throws InterruptedException {
+      acquire();
+      acquired++;
+    }
+
+    private void releasePermit() {
+      released.incrementAndGet();
+      release();
+    }
+
+    // must be called once the scope is shutdown and all the threads are finished
+    private void releaseUnstarted() {
+      var unstarted = acquired - released.get();
+      if (unstarted > 0) {
+        released.addAndGet(unstarted);
+        release((int) unstarted);
+      }
+    }
+  }
+
   private final Thread ownerThread;
   private final StructuredTaskScope<T> taskScope;
-  private final LinkedBlockingQueue<Result<T,E>> tasks = new LinkedBlockingQueue<>();
+  private final ResultChannel<T, E> tasks;
+  private final ConcurrencyLimiter limiter;  // null if unbounded
+  private final ScopeListener listener;
+  private boolean closed;
   private volatile long taskCount;
 
   private static final VarHandle TASK_COUNT;
@@ -270,13 +349,77 @@ public final class StructuredScopeAsStream<T, E extends Exception> implements Au
    * Creates an asynchronous scope to manage several asynchronous computations.
    */
   public StructuredScopeAsStream() {
+    this(null, ScopeListener.NONE);
+  }
+
+  /**
+   * Creates an asynchronous scope to manage several asynchronous computations
+   * and report its activity to a listener.
+   *
+   * @param listener the listener of the events of this scope.
+   *
+   * @see ScopeMetrics
+   */
+  public StructuredScopeAsStream(ScopeListener listener) {
+    this(null, Objects.requireNonNull(listener, "listener is null"));
+  }
+
+  /**
+   * Creates an asynchronous scope to manage several asynchronous computations
+   * with at most {@code maxConcurrency} computations running at the same time.
+   * Past that limit, {@link #fork(Invokable)} blocks the owner thread until
+   * a running computation finishes, so no virtual thread is created for a waiting computation.
+   *
+   * @param maxConcurrency the maximum number of computations running at the same time.
+   * @throws IllegalArgumentException if {@code maxConcurrency} is less than 1.
+   *
+   * @see #setMaxConcurrency(int)
+   */
+  public StructuredScopeAsStream(int maxConcurrency) {
+    this(new ConcurrencyLimiter(checkMaxConcurrency(maxConcurrency)), ScopeListener.NONE);
+  }
+
+  /**
+   * Creates an asynchronous scope to manage several asynchronous computations
+   * with at most {@code maxConcurrency} computations running at the same time
+   * and report its activity to a listener.
+   *
+   * @param maxConcurrency the maximum number of computations running at the same time.
+   * @param listener the listener of the events of this scope.
+   * @throws IllegalArgumentException if {@code maxConcurrency} is less than 1.
+   *
+   * @see #StructuredScopeAsStream(int)
+   * @see ScopeMetrics
+   */
+  public StructuredScopeAsStream(int maxConcurrency, ScopeListener listener) {
+    this(new ConcurrencyLimiter(checkMaxConcurrency(maxConcurrency)), Objects.requireNonNull(listener, "listener is null"));
+  }
+
+  private static int checkMaxConcurrency(int maxConcurrency) {
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("maxConcurrency < 1");
+    }
+    return maxConcurrency;
+  }
+
+  private StructuredScopeAsStream(ConcurrencyLimiter limiter, ScopeListener listener) {
+    this.limiter = limiter;
+    this.listener = listener;
     this.ownerThread = Thread.currentThread();
+    this.tasks = new ResultChannel<>(ownerThread);
     this.taskScope = new StructuredTaskScope<>() {
       @Override
       protected void handleComplete(Subtask<? extends T> subtask) {
         var result = toResult(subtask);
         if (result != null) {
-          tasks.add(result);
+          if (listener != ScopeListener.NONE) {
+            switch (result.state) {
+              case SUCCESS -> listener.onSuccess();
+              case FAILED -> listener.onFailure(result.failure);
+            }
+            result.completionNanos = System.nanoTime();
+          }
+          tasks.send(result);
         }
       }
     };
@@ -291,18 +434,98 @@ public final class StructuredScopeAsStream<T, E extends Exception> implements Au
   @Override
   public void close() {
     taskScope.close();
+    if (limiter != null) {
+      limiter.releaseUnstarted();
+    }
+    if (!closed) {
+      closed = true;
+      listener.onClose();
+    }
+  }
+
+  /**
+   * Returns the maximum number of computations running at the same time.
+   * @return the maximum number of computations running at the same time
+   *   or {@link Integer#MAX_VALUE} if the scope is unbounded.
+   */
+  public int maxConcurrency() {
+    checkThread();
+    return limiter == null? Integer.MAX_VALUE: limiter.limit;
+  }
+
+  /**
+   * Changes the maximum number of computations running at the same time.
+   * If the limit is decreased, the running computations are not stopped but {@link #fork(Invokable)}
+   * blocks until the number of running computations is below the new limit.
+   *
+   * @param maxConcurrency the new maximum number of computations running at the same time.
+   * @throws IllegalArgumentException if {@code maxConcurrency} is less than 1.
+   * @throws IllegalStateException if the scope was not created with a maximum concurrency.
+   * @throws WrongThreadException if this method is not called by the thread that has created this scope.
+   */
+  public void setMaxConcurrency(int maxConcurrency) {
+    checkMaxConcurrency(maxConcurrency);
+    checkThread();
+    if (limiter == null) {
+      throw new IllegalStateException("scope created without a max concurrency");
+    }
+    limiter.setLimit(maxConcurrency);
   }
 
   /**
    * Starts an asynchronous computation on a new virtual thread.
+   * If the scope has a {@link #maxConcurrency() maximum concurrency}, the current thread
+   * waits until the number of running computations is below the limit.
+   * If the current thread is interrupted while waiting, the computation is not started,
+   * the interrupt status is kept and the returned task is {@link Subtask.State#UNAVAILABLE unavailable}.
    * @param invokable the computation to run.
    * @return an asynchronous task, an object that represents the result of the computation in the future.
    *
    * @see Subtask#get()
    */
   public Subtask<T, E> fork(Invokable<? extends T, ? extends E> invokable) {
-    var subtask = taskScope.<T>fork(invokable::invoke);
+    Callable<T> task = invokable::invoke;
+    var listener = this.listener;
+    if (listener != ScopeListener.NONE) {
+      var timedTask = task;
+      task = () -> {
+        var start = System.nanoTime();
+        try {
+          return timedTask.call();
+        } finally {
+          listener.onRun(System.nanoTime() - start);
+        }
+      };
+    }
+    var limiter = this.limiter;
+    var permit = limiter != null && !taskScope.isShutdown();  // a task forked after shutdown never runs
+    if (permit) {
+      try {
+        limiter.acquirePermit();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return unavailableSubtask();
+      }
+      var limitedTask = task;
+      task = () -> {
+        try {
+          return limitedTask.call();
+        } finally {
+          limiter.releasePermit();
+        }
+      };
+    }
+    StructuredTaskScope.Subtask<T> subtask;
+    try {
+      subtask = taskScope.fork(task);
+    } catch (RuntimeException | Error e) {  // the task never runs
+      if (permit) {
+        limiter.releasePermit();
+      }
+      throw e;
+    }
     TASK_COUNT.getAndAdd(this, 1);
+    listener.onFork();
     return new Subtask<>() {
       @Override
       public State state() {
@@ -335,6 +558,20 @@ public final class StructuredScopeAsStream<T, E extends Exception> implements Au
     };
   }
 
+  private static <T, E extends Exception> Subtask<T, E> unavailableSubtask() {
+    return new Subtask<>() {
+      @Override
+      public State state() {
+        return State.UNAVAILABLE;
+      }
+
+      @Override
+      public T get() {
+        throw new IllegalStateException("Task unavailable");
+      }
+    };
+  }
+
   private Result<T, E> toResult(StructuredTaskScope.Subtask<? extends T> subtask) {
     return switch (subtask.state()) {
       case UNAVAILABLE -> throw new AssertionError();
@@ -356,12 +593,38 @@ public final class StructuredScopeAsStream<T, E extends Exception> implements Au
    */
   public void joinAll() throws InterruptedException {
     checkThread();
-    taskScope.join();
+    var start = System.nanoTime();
+    try {
+      taskScope.join();
+    } finally {
+      listener.onJoin(System.nanoTime() - start);
+    }
     taskScope.shutdown();
   }
 
   private final class ResultSpliterator implements Spliterator<Result<T,E>> {
     private long index;
+    private long blockedNanos;
+
+    private Result<T,E> take() throws InterruptedException {
+      if (listener == ScopeListener.NONE) {
+        return tasks.take();
+      }
+      var start = System.nanoTime();
+      var result = tasks.take();
+      var end = System.nanoTime();
+      blockedNanos += end - start;
+      listener.onConsume(end - result.completionNanos);
+      return result;
+    }
+
+    private Result<T,E> poll() {
+      var result = tasks.poll();
+      if (result != null && listener != ScopeListener.NONE) {
+        listener.onConsume(System.nanoTime() - result.completionNanos);
+      }
+      return result;
+    }
 
     @Override
     public boolean tryAdvance(Consumer<? super Result<T, E>> action) {
@@ -372,7 +635,7 @@ public final class StructuredScopeAsStream<T, E extends Exception> implements Au
       }
       Result<T,E> result;
       try {
-        result = tasks.take();
+        result = take();
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
         index = Long.MAX_VALUE;
@@ -383,6 +646,33 @@ public final class StructuredScopeAsStream<T, E extends Exception> implements Au
       return true;
     }
 
+    @Override
+    public void forEachRemaining(Consumer<? super Result<T, E>> action) {
+      checkThread();
+      for(;;) {
+        var count = taskCount;  // volatile read, once per batch
+        if (index >= count) {
+          index = Long.MAX_VALUE;
+          return;
+        }
+        Result<T,E> result;
+        try {
+          result = take();  // only blocks if no result is available
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          index = Long.MAX_VALUE;
+          return;
+        }
+        action.accept(result);
+        index++;
+        // drain all the results already available
+        while(index < count && (result = poll()) != null) {
+          action.accept(result);
+          index++;
+        }
+      }
+    }
+
     @Override
     public Spliterator<Result<T, E>> trySplit() {
       return null;
@@ -406,6 +696,8 @@ public final class StructuredScopeAsStream<T, E extends Exception> implements Au
   /**
    * Awaits until the stream of {@link Result results} finished.
    * If the stream sent to the stream mapper is short-circuited then the non-finished tasks will be cancelled.
+   * If the stream is not short-circuited, the results are consumed by batch,
+   * all the results already available are processed before waiting for the next one.
    *
    * @param streamMapper a function that takes a stream of results and transform it to a value.
    * @return the result the stream mapper function.
@@ -415,13 +707,54 @@ public final class StructuredScopeAsStream<T, E extends Exception> implements Au
    */
   public <V> V joinAll(Function<? super Stream<Result<T,E>>, ? extends V> streamMapper) throws InterruptedException {
     checkThread();
-    var stream = StreamSupport.stream(new ResultSpliterator(), false);
+    var spliterator = new ResultSpliterator();
+    var stream = StreamSupport.stream(spliterator, false);
     var value = streamMapper.apply(stream);
     if (Thread.interrupted()) {
       throw new InterruptedException();
     }
     taskScope.shutdown();
+    var start = System.nanoTime();
+    try {
+      taskScope.join();
+    } finally {
+      listener.onJoin(spliterator.blockedNanos + System.nanoTime() - start);
+    }
+    if (limiter != null) {
+      limiter.releaseUnstarted();
+    }
+    return value;
+  }
+
+  /**
+   * Awaits until all the {@link Result results} are available and sends them as a parallel stream
+   * to the stream mapper.
+   * Unlike {@link #joinAll(Function)}, the stream mapper is called once all the tasks are finished
+   * so short-circuiting the stream does not cancel the tasks, but the processing of the results
+   * can be split across several threads. The stream is not ordered.
+   *
+   * @param streamMapper a function that takes a parallel stream of results and transform it to a value.
+   * @return the result the stream mapper function.
+   * @param <V> the type of the result of the stream mapper function
+   * @throws InterruptedException if the current thread is interrupted
+   * @throws WrongThreadException if this method is not called by the thread that has created this scope.
+   */
+  public <V> V joinAllParallel(Function<? super Stream<Result<T,E>>, ? extends V> streamMapper) throws InterruptedException {
+    checkThread();
+    var results = new ArrayList<Result<T,E>>();
+    var resultSpliterator = new ResultSpliterator();
+    resultSpliterator.forEachRemaining(results::add);
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    listener.onJoin(resultSpliterator.blockedNanos);
+    var spliterator = Spliterators.<Result<T,E>>spliterator(results.toArray(), Spliterator.NONNULL);
+    var value = streamMapper.apply(StreamSupport.stream(spliterator, true));
+    taskScope.shutdown();
     taskScope.join();
+    if (limiter != null) {
+      limiter.releaseUnstarted();
+    }
     return value;
   }
 
@@ -0,0 +1,118 @@
+package fr.umlv.loom.structured;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A variant of {@link StructuredScopeShutdownOnSuccess} that sends hedged requests.
+ * <p>
+ * The first invokable (the primary) is forked immediately, the other invokables (the backups)
+ * are forked one by one by {@link #joinAll()}, either when the {@link HedgePolicy#hedgeDelay(Object) delay}
+ * of the key is elapsed and the budget of the policy allows it, or when all the invokables already forked
+ * have failed. The first success wins, the other invokables are cancelled.
+ * <p>
+ * The latencies of the successful invokables are recorded in the policy under the key of the scope,
+ * the time until a cancelled invokable is interrupted is only a lower bound of its latency
+ * and would lower the hedge delay, so it is not recorded, neither is the time until a failure.
+ *
+ * @param <K> type of the key
+ * @param <T> type of the result
+ * @param <E> type of the checked exception
+ *
+ * @see HedgePolicy
+ */
+public class StructuredScopeHedging<K, T, E extends Exception> implements AutoCloseable {
+  private final StructuredScopeShutdownOnSuccess<T, E> scope = new StructuredScopeShutdownOnSuccess<>();
+  private final HedgePolicy<K> policy;
+  private final K key;
+  private final ArrayList<Invokable<? extends T, ? extends E>> backups = new ArrayList<>();
+  private long lastForkTime;
+  private int forked;
+
+  /**
+   * Creates a scope.
+   * @param policy the hedge policy.
+   * @param key the key used to record the latencies, by example the name of the backend.
+   */
+  public StructuredScopeHedging(HedgePolicy<K> policy, K key) {
+    this.policy = Objects.requireNonNull(policy, "policy is null");
+    this.key = Objects.requireNonNull(key, "key is null");
+  }
+
+  /**
+   * Forks the primary invokable if it's the first call, or registers a backup invokable.
+   * @param invokable the invokable.
+   */
+  public void fork(Invokable<? extends T, ? extends E> invokable) {
+    Objects.requireNonNull(invokable, "invokable is null");
+    if (forked == 0) {
+      policy.onRequest();
+      start(invokable);
+      return;
+    }
+    backups.add(invokable);
+  }
+
+  private void start(Invokable<? extends T, ? extends E> invokable) {
+    forked++;
+    lastForkTime = System.nanoTime();
+    scope.fork(() -> {
+      var start = System.nanoTime();
+      var succeed = false;
+      try {
+        var result = invokable.invoke();
+        succeed = true;
+        return result;
+      } finally {
+        if (succeed) {  // neither a failure nor a cancellation is a latency
+          policy.record(key, System.nanoTime() - start);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the number of invokables forked, the primary included.
+   * @return the number of invokables forked.
+   */
+  public int forked() {
+    return forked;
+  }
+
+  public T joinAll() throws E, InterruptedException {
+    return joinAll(e -> e);
+  }
+
+  public <X extends Exception> T joinAll(Function<? super E, ? extends X> exceptionMapper) throws X, InterruptedException {
+    Objects.requireNonNull(exceptionMapper, "exceptionMapper is null");
+    var hedge = true;
+    var index = 0;
+    while(forked != 0 && index < backups.size()) {
+      boolean completed;
+      if (hedge) {
+        var remaining = policy.hedgeDelayNanos(key) - (System.nanoTime() - lastForkTime);
+        completed = scope.joinUntil(Instant.now().plusNanos(Math.max(0, remaining)));
+      } else {
+        scope.join();
+        completed = true;
+      }
+      if (scope.isShutdown()) {
+        break;  // success
+      }
+      if (!completed && !policy.tryAcquireHedge()) {
+        hedge = false;  // no budget, only fork a backup if all the invokables fail
+        continue;
+      }
+      start(backups.get(index++));
+    }
+    backups.clear();
+    return scope.joinAll(exceptionMapper);
+  }
+
+  @Override
+  public void close() {
+    scope.close();
+  }
+}
@@ -1,7 +1,9 @@
 package fr.umlv.loom.structured;
 
+import java.time.Instant;
 import java.util.Objects;
 import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
 public class StructuredScopeShutdownOnSuccess<T, E extends Exception> implements AutoCloseable {
@@ -15,6 +17,25 @@ public class StructuredScopeShutdownOnSuccess<T, E extends Exception> implements
     scope.fork(invokable::invoke);
   }
 
+  void join() throws InterruptedException {
+    scope.join();
+  }
+
+  // returns true if a subtask succeeded or all the subtasks are completed, false if the deadline is reached
+  boolean joinUntil(Instant deadline) throws InterruptedException {
+    try {
+      scope.joinUntil(deadline);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    }
+  }
+
+  // true if a subtask succeeded
+  boolean isShutdown() {
+    return scope.isShutdown();
+  }
+
   public T joinAll() throws E, InterruptedException {
     return joinAll(e -> e);
   }
@@ -0,0 +1,123 @@
+package fr.umlv.loom.continuation;
+
+import fr.umlv.loom.executor.UnsafeExecutors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Compare the number of yields per second of the previous implementation of Continuation
+// (ReentrantLock + Condition), of the park/unpark handoff and of the internal continuation
+// mvn -Pjmh test-compile exec:exec -Djmh.args="ContinuationBenchmark -prof gc"
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class ContinuationBenchmark {
+  private static final int YIELDS = 1_000;
+
+  // the previous implementation of Continuation
+  static final class LockContinuation {
+    private enum State { NEW, RUNNING, WAITED, TERMINATED }
+
+    private static final ScopedValue<LockContinuation> CONTINUATION_SCOPE_LOCAL = ScopedValue.newInstance();
+
+    private final Runnable runnable;
+    private State state = State.NEW;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition condition = lock.newCondition();
+
+    LockContinuation(Runnable runnable) {
+      this.runnable = runnable;
+    }
+
+    void run() {
+      switch (state) {
+        case NEW -> {
+          state = State.RUNNING;
+          var executor = UnsafeExecutors.virtualThreadExecutor(Runnable::run);
+          executor.execute(() -> {
+            ScopedValue.runWhere(CONTINUATION_SCOPE_LOCAL, this, runnable);
+            state = State.TERMINATED;
+          });
+        }
+        case WAITED -> {
+          state = State.RUNNING;
+          lock.lock();
+          try {
+            condition.signal();
+          } finally {
+            lock.unlock();
+          }
+        }
+        case RUNNING, TERMINATED -> throw new IllegalStateException();
+      }
+    }
+
+    boolean isDone() {
+      return state == State.TERMINATED;
+    }
+
+    static void yield() {
+      var continuation = CONTINUATION_SCOPE_LOCAL.get();
+      continuation.lock.lock();
+      try {
+        continuation.state = State.WAITED;
+        continuation.condition.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        continuation.lock.unlock();
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(YIELDS)
+  public void lockCondition() {
+    var continuation = new LockContinuation(() -> {
+      for(var i = 0; i < YIELDS; i++) {
+        LockContinuation.yield();
+      }
+    });
+    while(!continuation.isDone()) {
+      continuation.run();
+    }
+  }
+
+  private static void runContinuation() {
+    var continuation = new Continuation(() -> {
+      for(var i = 0; i < YIELDS; i++) {
+        Continuation.yield();
+      }
+    });
+    for(var i = 0; i <= YIELDS; i++) {
+      continuation.run();
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(YIELDS)
+  public void parkUnpark() {
+    runContinuation();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(YIELDS)
+  @Fork(value = 1, jvmArgsAppend = { "--enable-preview", "--add-exports", "java.base/jdk.internal.vm=ALL-UNNAMED" })
+  public void internal() {
+    runContinuation();
+  }
+}
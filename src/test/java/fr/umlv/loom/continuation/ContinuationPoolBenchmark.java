@@ -0,0 +1,54 @@
+package fr.umlv.loom.continuation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Compare the cost of a short-lived coroutine (one yield) with and without a ContinuationPool
+// mvn -Pjmh test-compile exec:exec -Djmh.args="ContinuationPoolBenchmark -prof gc"
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ContinuationPoolBenchmark {
+  private final ContinuationPool pool = new ContinuationPool(16);
+  private int value;
+
+  @TearDown
+  public void tearDown() {
+    pool.close();
+  }
+
+  private void body() {
+    value++;
+    Continuation.yield();
+    value++;
+  }
+
+  @Benchmark
+  public int unpooled() {
+    var continuation = new Continuation(this::body);
+    continuation.run();
+    continuation.run();
+    return value;
+  }
+
+  @Benchmark
+  public int pooled() {
+    var continuation = pool.newContinuation(this::body);
+    continuation.run();
+    continuation.run();
+    return value;
+  }
+}
@@ -0,0 +1,151 @@
+package fr.umlv.loom.continuation;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContinuationPoolTest {
+  @Test
+  public void reuse() {
+    try(var pool = new ContinuationPool(4)) {
+      var log = new ArrayList<String>();
+      for(var i = 0; i < 10; i++) {
+        var index = i;
+        var continuation = pool.newContinuation(() -> {
+          log.add("start " + index);
+          Continuation.yield();
+          log.add("end " + index);
+        });
+        continuation.run();
+        continuation.run();
+        assertTrue(continuation.isDone());
+      }
+      assertEquals(20, log.size());
+      var internal = Continuation.isInternal();  // the pool is not used
+      assertAll(
+          () -> assertEquals(internal? 0: 1, pool.misses()),
+          () -> assertEquals(internal? 0: 9, pool.hits()),
+          () -> assertEquals(internal? 0: 1, pool.idle())
+      );
+    }
+  }
+
+  @Test
+  public void interleaved() {
+    try(var pool = new ContinuationPool(4)) {
+      var log = new ArrayList<String>();
+      var continuations = new ArrayList<Continuation>();
+      for(var i = 0; i < 3; i++) {
+        var index = i;
+        continuations.add(pool.newContinuation(() -> {
+          log.add("a" + index);
+          Continuation.yield();
+          log.add("b" + index);
+        }));
+      }
+      for(var round = 0; round < 2; round++) {
+        continuations.forEach(Continuation::run);
+      }
+      assertEquals(List.of("a0", "a1", "a2", "b0", "b1", "b2"), log);
+      var internal = Continuation.isInternal();
+      assertAll(
+          () -> assertEquals(internal? 0: 3, pool.misses()),
+          () -> assertEquals(internal? 0: 3, pool.idle())
+      );
+    }
+  }
+
+  @Test
+  public void reuseFromAnotherThread() throws InterruptedException {
+    try(var pool = new ContinuationPool(4)) {
+      pool.newContinuation(() -> {}).run();
+      var thread = Thread.ofPlatform().start(() -> {
+        var box = new Object() { Thread thread; };
+        var continuation = pool.newContinuation(() -> {
+          Continuation.yield();
+          box.thread = Thread.currentThread();
+        });
+        continuation.run();
+        continuation.run();
+        assertTrue(continuation.isDone());
+        assertNotNull(box.thread);
+      });
+      thread.join();
+      assertEquals(Continuation.isInternal()? 0: 1, pool.hits());
+    }
+  }
+
+  @Test
+  public void maxIdle() {
+    try(var pool = new ContinuationPool(0)) {
+      for(var i = 0; i < 5; i++) {
+        pool.newContinuation(() -> {}).run();
+      }
+      assertAll(
+          () -> assertEquals(0, pool.hits()),
+          () -> assertEquals(0, pool.idle())
+      );
+    }
+  }
+
+  @Test
+  public void bodyException() {
+    try(var pool = new ContinuationPool(4)) {
+      var continuation = pool.newContinuation(() -> {
+        throw new IllegalStateException("oops");
+      });
+      var handler = Thread.getDefaultUncaughtExceptionHandler();
+      Thread.setDefaultUncaughtExceptionHandler((t, e) -> {});
+      try {
+        continuation.run();
+      } catch (IllegalStateException e) {
+        // the internal continuation propagates the exception
+      } finally {
+        Thread.setDefaultUncaughtExceptionHandler(handler);
+      }
+      assertTrue(continuation.isDone());
+      var other = pool.newContinuation(() -> {});
+      other.run();
+      assertTrue(other.isDone());
+    }
+  }
+
+  @Test
+  public void bodyInterrupted() {
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+      try(var pool = new ContinuationPool(4)) {
+        var continuation = pool.newContinuation(() -> Thread.currentThread().interrupt());
+        continuation.run();
+        assertTrue(continuation.isDone());
+        var box = new Object() { boolean interrupted = true; };
+        var other = pool.newContinuation(() -> box.interrupted = Thread.currentThread().isInterrupted());
+        other.run();
+        assertAll(
+            () -> assertTrue(other.isDone()),
+            () -> assertFalse(box.interrupted)
+        );
+        assertEquals(Continuation.isInternal()? 0: 1, pool.hits());
+      }
+    });
+  }
+
+  @Test
+  public void close() {
+    var pool = new ContinuationPool(4);
+    pool.newContinuation(() -> {}).run();
+    pool.close();
+    assertAll(
+        () -> assertEquals(0, pool.idle()),
+        () -> assertThrows(IllegalStateException.class, () -> pool.newContinuation(() -> {}))
+    );
+  }
+
+  @Test
+  public void invalidMaxIdle() {
+    assertThrows(IllegalArgumentException.class, () -> new ContinuationPool(-1));
+  }
+}
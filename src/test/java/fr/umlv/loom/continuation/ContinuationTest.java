@@ -1,10 +1,26 @@
 package fr.umlv.loom.continuation;
 
+import fr.umlv.loom.executor.UnsafeExecutors;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ContinuationTest {
+  @Test
+  public void internalIfExported() {
+    // the surefire execution internal-continuation exports jdk.internal.vm and sets this property
+    assertEquals(Boolean.getBoolean("fr.umlv.loom.continuation.internal"), Continuation.isInternal());
+  }
+
+  @Test
+  public void noContinuationOnTheDefaultScheduler() {
+    // the mode depends on the JDK and on the options of the test run
+    if (!Continuation.isInternal() && UnsafeExecutors.mode() == UnsafeExecutors.Mode.DEFAULT_SCHEDULER) {
+      assertThrows(UnsupportedOperationException.class, () -> new Continuation(() -> {}));
+    } else {
+      assertFalse(new Continuation(() -> {}).isDone());
+    }
+  }
 
   @Test
   public void startAndYield() {
@@ -58,4 +74,77 @@ public class ContinuationTest {
   public void yieldNotBound() {
     assertThrows(IllegalStateException.class, Continuation::yield);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void manyYields() {
+    var box = new Object() { int value; };
+    var continuation = new Continuation(() -> {
+      for(var i = 0; i < 100_000; i++) {
+        box.value = i;
+        Continuation.yield();
+      }
+    });
+    for(var i = 0; i < 100_000; i++) {
+      continuation.run();
+      assertEquals(i, box.value);
+    }
+    continuation.run();
+    assertThrows(IllegalStateException.class, continuation::run);
+  }
+
+  @Test
+  public void runFromAnotherThread() throws InterruptedException {
+    var continuation = new Continuation(Continuation::yield);
+    continuation.run();
+    var exception = new Object() { Throwable value; };
+    var thread = Thread.ofPlatform().start(() -> {
+      try {
+        continuation.run();
+      } catch (Throwable e) {
+        exception.value = e;
+      }
+    });
+    thread.join();
+    assertTrue(exception.value instanceof IllegalStateException);
+  }
+
+  @Test
+  public void bodyException() {
+    var continuation = new Continuation(() -> {
+      throw new IllegalArgumentException("oops");
+    });
+    var handler = Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler((t, e) -> {});
+    try {
+      continuation.run();
+    } catch (IllegalArgumentException e) {
+      // the internal continuation propagates the exception
+    } finally {
+      Thread.setDefaultUncaughtExceptionHandler(handler);
+    }
+    assertTrue(continuation.isDone());
+    assertThrows(IllegalStateException.class, continuation::run);
+  }
+
+  @Test
+  public void interruptStatusDoesNotLeak() {
+    var box = new Object() { boolean interrupted1, interrupted2; };
+    var continuation = new Continuation(() -> {
+      box.interrupted1 = Thread.currentThread().isInterrupted();
+      Thread.currentThread().interrupt();
+    });
+    Thread.currentThread().interrupt();
+    continuation.run();
+    assertAll(
+        () -> assertTrue(continuation.isDone()),
+        () -> assertTrue(Thread.interrupted()),  // clears the status
+        () -> assertFalse(box.interrupted1)
+    );
+    var continuation2 = new Continuation(() -> box.interrupted2 = Thread.currentThread().isInterrupted());
+    continuation2.run();
+    assertAll(
+        () -> assertFalse(box.interrupted2),
+        () -> assertFalse(Thread.currentThread().isInterrupted())
+    );
+  }
+}
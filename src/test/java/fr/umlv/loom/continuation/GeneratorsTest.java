@@ -0,0 +1,146 @@
+package fr.umlv.loom.continuation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeneratorsTest {
+  @Test
+  public void iteratorSimple() {
+    assertAll(
+        () -> assertFalse(Generators.iterator(consumer -> {}).hasNext()),
+        () -> assertTrue(Generators.iterator(consumer -> consumer.accept("foo")).hasNext()),
+        () -> assertEquals("bar", Generators.iterator(consumer -> consumer.accept("bar")).next()),
+        () -> {
+          var it = Generators.iterator(consumer -> {
+            consumer.accept("booz");
+            consumer.accept("baz");
+          });
+          assertTrue(it.hasNext());
+          assertEquals("booz", it.next());
+          assertTrue(it.hasNext());
+          assertEquals("baz", it.next());
+          assertFalse(it.hasNext());
+          assertThrows(NoSuchElementException.class, it::next);
+        }
+    );
+  }
+
+  @Test
+  public void iteratorIsLazy() {
+    var log = new ArrayList<String>();
+    var it = Generators.<Integer>iterator(consumer -> {
+      for(var i = 0; i < 3; i++) {
+        log.add("produce " + i);
+        consumer.accept(i);
+      }
+    });
+    assertTrue(log.isEmpty());
+    while(it.hasNext()) {
+      log.add("consume " + it.next());
+    }
+    assertEquals(List.of("produce 0", "consume 0", "produce 1", "consume 1", "produce 2", "consume 2"), log);
+  }
+
+  @Test
+  public void iteratorWithALotOfObject() {
+    var it = Generators.<Integer>iterator(consumer -> IntStream.range(0, 10_000).forEach(consumer::accept));
+    var list = new ArrayList<Integer>();
+    it.forEachRemaining(list::add);
+    assertEquals(IntStream.range(0, 10_000).boxed().toList(), list);
+  }
+
+  @Test
+  public void streamSimple() {
+    assertAll(
+        () -> assertFalse(Generators.stream(consumer -> {}).findFirst().isPresent()),
+        () -> assertEquals("bar", Generators.stream(consumer -> consumer.accept("bar")).findFirst().orElseThrow()),
+        () -> assertEquals(List.of("booz", "baz"), Generators.<String>stream(consumer -> {
+          consumer.accept("booz");
+          consumer.accept("baz");
+        }).toList())
+    );
+  }
+
+  @Test
+  public void streamInfiniteProducer() {
+    var stream = Generators.<Integer>stream(consumer -> {
+      for(var i = 0;; i++) {
+        consumer.accept(i);
+      }
+    });
+    assertEquals(List.of(0, 1, 2, 3, 4), stream.limit(5).toList());
+  }
+
+  @Test
+  public void spliterator() {
+    var spliterator = Generators.<String>spliterator(consumer -> {
+      consumer.accept("foo");
+      consumer.accept("bar");
+    });
+    var list = new ArrayList<String>();
+    assertTrue(spliterator.tryAdvance(list::add));
+    spliterator.forEachRemaining(list::add);
+    assertAll(
+        () -> assertEquals(List.of("foo", "bar"), list),
+        () -> assertFalse(spliterator.tryAdvance(list::add)),
+        () -> assertNull(spliterator.trySplit())
+    );
+  }
+
+  @Test
+  public void batching() {
+    var log = new ArrayList<String>();
+    var it = Generators.<Integer>iterator(4, consumer -> {
+      for(var i = 0; i < 10; i++) {
+        log.add("produce " + i);
+        consumer.accept(i);
+      }
+    });
+    assertEquals(0, it.next());
+    assertEquals(4, log.size());  // a batch of 4 elements is produced
+    var list = new ArrayList<Integer>();
+    it.forEachRemaining(list::add);
+    assertAll(
+        () -> assertEquals(IntStream.range(1, 10).boxed().toList(), list),
+        () -> assertEquals(10, log.size())
+    );
+  }
+
+  @Test
+  public void batchingStream() {
+    assertEquals(IntStream.range(0, 10_000).boxed().toList(),
+        Generators.<Integer>stream(64, consumer -> IntStream.range(0, 10_000).forEach(consumer::accept)).toList());
+  }
+
+  @Test
+  public void producerException() {
+    var it = Generators.<String>iterator(consumer -> {
+      consumer.accept("foo");
+      throw new IllegalStateException("oops");
+    });
+    assertEquals("foo", it.next());
+    var e = assertThrows(IllegalStateException.class, it::hasNext);
+    assertEquals("oops", e.getMessage());
+  }
+
+  @Test
+  public void nullElement() {
+    var it = Generators.<String>iterator(consumer -> consumer.accept(null));
+    assertThrows(NullPointerException.class, it::hasNext);
+  }
+
+  @Test
+  public void invalidBatchSize() {
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class, () -> Generators.iterator(0, consumer -> {})),
+        () -> assertThrows(IllegalArgumentException.class, () -> Generators.stream(-1, consumer -> {})),
+        () -> assertThrows(NullPointerException.class, () -> Generators.iterator(null))
+    );
+  }
+}
@@ -0,0 +1,179 @@
+package fr.umlv.loom.continuation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchedulerTest {
+  private static List<String> pingPong(Scheduler scheduler) {
+    var log = new ArrayList<String>();
+    for(var name: List.of("a", "b", "c")) {
+      scheduler.schedule(() -> {
+        for(var i = 0; i < 3; i++) {
+          log.add(name + i);
+          scheduler.pause();
+        }
+      });
+    }
+    scheduler.loop();
+    return log;
+  }
+
+  @Test
+  public void fifo() {
+    assertEquals(List.of("a0", "b0", "c0", "a1", "b1", "c1", "a2", "b2", "c2"), pingPong(new FifoScheduler()));
+  }
+
+  @Test
+  public void yieldAndRegister() {
+    var scheduler = new FifoScheduler();
+    var log = new ArrayList<String>();
+    var waiter = scheduler.schedule(() -> {
+      log.add("wait");
+      scheduler.yield();
+      log.add("woken up");
+    });
+    scheduler.schedule(() -> {
+      log.add("wake up");
+      scheduler.register(waiter);
+    });
+    scheduler.loop();
+    assertAll(
+        () -> assertEquals(List.of("wait", "wake up", "woken up"), log),
+        () -> assertTrue(waiter.isDone())
+    );
+  }
+
+  @Test
+  public void yieldWithoutRegister() {
+    var scheduler = new FifoScheduler();
+    var coroutine = scheduler.schedule(scheduler::yield);
+    scheduler.loop();
+    assertFalse(coroutine.isDone());
+  }
+
+  @Test
+  public void randomIsDeterministic() {
+    var trace1 = new ArrayList<Integer>();
+    var scheduler1 = new RandomScheduler(42);
+    scheduler1.tracer(trace1::add);
+    var log1 = pingPong(scheduler1);
+
+    var trace2 = new ArrayList<Integer>();
+    var scheduler2 = new RandomScheduler(42);
+    scheduler2.tracer(trace2::add);
+    var log2 = pingPong(scheduler2);
+
+    assertAll(
+        () -> assertEquals(42, scheduler1.seed()),
+        () -> assertEquals(trace1, trace2),
+        () -> assertEquals(log1, log2),
+        () -> assertEquals(9, log1.size())
+    );
+  }
+
+  @Test
+  public void replay() {
+    var trace = new ArrayList<Integer>();
+    var random = new RandomScheduler(7);
+    random.tracer(trace::add);
+    var expected = pingPong(random);
+
+    var replay = new ReplayScheduler(trace.stream().mapToInt(Integer::intValue).toArray());
+    assertEquals(expected, pingPong(replay));
+  }
+
+  @Test
+  public void replayInvalidTrace() {
+    var scheduler = new ReplayScheduler(1, 0);
+    scheduler.schedule(scheduler::pause);
+    assertThrows(IllegalStateException.class, scheduler::loop);
+  }
+
+  @Test
+  public void fair() {
+    var time = new Object() { long value; };
+    var scheduler = new FairScheduler(() -> time.value);
+    var log = new ArrayList<String>();
+    scheduler.schedule(() -> {  // consumes 3 units by run
+      for(var i = 0; i < 4; i++) {
+        log.add("slow");
+        time.value += 3;
+        scheduler.pause();
+      }
+    });
+    scheduler.schedule(() -> {  // consumes 1 unit by run
+      for(var i = 0; i < 12; i++) {
+        log.add("fast");
+        time.value += 1;
+        scheduler.pause();
+      }
+    });
+    scheduler.loop();
+    // the fast coroutine runs 3 times for each run of the slow one
+    assertEquals(List.of("slow", "fast", "fast", "fast", "slow", "fast", "fast", "fast"), log.subList(0, 8));
+  }
+
+  @Test
+  public void fairNewCoroutineDoesNotMonopolize() {
+    var time = new Object() { long value; };
+    var scheduler = new FairScheduler(() -> time.value);
+    var log = new ArrayList<String>();
+    scheduler.schedule(() -> {
+      for(var i = 0; i < 10; i++) {
+        time.value += 10;
+        if (i == 4) {
+          scheduler.schedule(() -> {
+            for(var j = 0; j < 3; j++) {
+              log.add("new");
+              time.value += 10;
+              scheduler.pause();
+            }
+          });
+        }
+        log.add("old");
+        scheduler.pause();
+      }
+    });
+    scheduler.loop();
+    assertEquals(List.of("old", "old", "old", "old", "old", "new", "old", "new", "old", "new", "old", "old", "old"), log);
+  }
+
+  @Test
+  public void manyCoroutines() {
+    var scheduler = new FairScheduler();
+    var counter = new Object() { int value; };
+    for(var i = 0; i < 1_000; i++) {
+      scheduler.schedule(() -> {
+        for(var j = 0; j < 10; j++) {
+          counter.value++;
+          scheduler.pause();
+        }
+      });
+    }
+    scheduler.loop();
+    assertEquals(10_000, counter.value);
+  }
+
+  @Test
+  public void noCurrentCoroutine() {
+    var scheduler = new FifoScheduler();
+    assertAll(
+        () -> assertFalse(scheduler.hasCurrentCoroutine()),
+        () -> assertThrows(IllegalStateException.class, scheduler::currentCoroutine),
+        () -> assertThrows(IllegalStateException.class, scheduler::pause),
+        () -> assertThrows(IllegalStateException.class, scheduler::yield)
+    );
+  }
+
+  @Test
+  public void registerDone() {
+    var scheduler = new FifoScheduler();
+    var coroutine = scheduler.schedule(() -> {});
+    scheduler.loop();
+    assertThrows(IllegalStateException.class, () -> scheduler.register(coroutine));
+  }
+}
@@ -0,0 +1,200 @@
+package fr.umlv.loom.example;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+public class _14_http_serverTest {
+  private HttpServer server;
+  private HttpClient client;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    server = _14_http_server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+        new _14_http_server.TaskRepository());
+    client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+  }
+
+  @AfterEach
+  public void teardown() {
+    server.stop(0);
+  }
+
+  private URI uri(String path) {
+    return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+  }
+
+  private HttpResponse<byte[]> send(String method, String path, String body) throws IOException, InterruptedException {
+    var publisher = body == null? BodyPublishers.noBody(): BodyPublishers.ofString(body, UTF_8);
+    var request = HttpRequest.newBuilder(uri(path)).method(method, publisher).build();
+    return client.send(request, BodyHandlers.ofByteArray());
+  }
+
+  private static String text(HttpResponse<byte[]> response) {
+    return new String(response.body(), UTF_8);
+  }
+
+  private static long contentLength(HttpResponse<?> response) {
+    return response.headers().firstValueAsLong("Content-Length").orElseThrow();
+  }
+
+  @Test
+  public void emptyList() throws IOException, InterruptedException {
+    var response = send("GET", "/tasks", null);
+    assertAll(
+        () -> assertEquals(200, response.statusCode()),
+        () -> assertEquals("application/json", response.headers().firstValue("Content-Type").orElseThrow()),
+        () -> assertEquals("[]", text(response))
+    );
+  }
+
+  @Test
+  public void postAppendsToTheList() throws IOException, InterruptedException {
+    var first = send("POST", "/tasks", """
+        {"content": "first"}""");
+    var second = send("POST", "/tasks", """
+        {"other": [1, 2], "content": "second"}""");
+    var list = send("GET", "/tasks", null);
+    assertAll(
+        () -> assertEquals(200, first.statusCode()),
+        () -> assertEquals("""
+            {"id":0,"content":"first"}""", text(first)),
+        () -> assertEquals(200, second.statusCode()),
+        () -> assertEquals("""
+            {"id":1,"content":"second"}""", text(second)),
+        () -> assertEquals("""
+            [{"id":0,"content":"first"},{"id":1,"content":"second"}]""", text(list))
+    );
+  }
+
+  @Test
+  public void nonAsciiRoundTrip() throws IOException, InterruptedException {
+    var content = "tâche à faire € 日本";
+    var post = send("POST", "/tasks", "{\"content\": \"" + content + "\"}");
+    var list = send("GET", "/tasks", null);
+    assertAll(
+        () -> assertEquals(200, post.statusCode()),
+        () -> assertEquals("{\"id\":0,\"content\":\"" + content + "\"}", text(post)),
+        () -> assertEquals(post.body().length, contentLength(post)),
+        () -> assertEquals(200, list.statusCode()),
+        () -> assertEquals("[{\"id\":0,\"content\":\"" + content + "\"}]", text(list)),
+        () -> assertEquals(list.body().length, contentLength(list))
+    );
+  }
+
+  @Test
+  public void deleteRebuildsTheList() throws IOException, InterruptedException {
+    send("POST", "/tasks", """
+        {"content": "first"}""");
+    send("POST", "/tasks", """
+        {"content": "second"}""");
+    send("POST", "/tasks", """
+        {"content": "third"}""");
+    var delete = send("DELETE", "/tasks/1", null);
+    var deleteAgain = send("DELETE", "/tasks/1", null);
+    var list = send("GET", "/tasks", null);
+    assertAll(
+        () -> assertEquals(204, delete.statusCode()),
+        () -> assertEquals(404, deleteAgain.statusCode()),
+        () -> assertEquals("""
+            [{"id":0,"content":"first"},{"id":2,"content":"third"}]""", text(list))
+    );
+  }
+
+  @Test
+  public void deleteAll() throws IOException, InterruptedException {
+    send("POST", "/tasks", """
+        {"content": "first"}""");
+    var delete = send("DELETE", "/tasks/0", null);
+    var list = send("GET", "/tasks", null);
+    assertAll(
+        () -> assertEquals(204, delete.statusCode()),
+        () -> assertEquals("[]", text(list))
+    );
+  }
+
+  @Test
+  public void badRequests() throws IOException, InterruptedException {
+    var notJson = send("POST", "/tasks", "not json");
+    var notAnObject = send("POST", "/tasks", "[1, 2]");
+    var noContent = send("POST", "/tasks", """
+        {"title": "first"}""");
+    var badId = send("DELETE", "/tasks/first", null);
+    var list = send("GET", "/tasks", null);
+    assertAll(
+        () -> assertEquals(400, notJson.statusCode()),
+        () -> assertEquals(400, notAnObject.statusCode()),
+        () -> assertEquals(400, noContent.statusCode()),
+        () -> assertEquals(400, badId.statusCode()),
+        () -> assertEquals("[]", text(list))
+    );
+  }
+
+  @Test
+  public void methodNotAllowed() throws IOException, InterruptedException {
+    var response = send("PUT", "/tasks", """
+        {"content": "first"}""");
+    assertAll(
+        () -> assertEquals(405, response.statusCode()),
+        () -> assertEquals("GET, POST, DELETE", response.headers().firstValue("Allow").orElseThrow())
+    );
+  }
+
+  @Test
+  public void staticContent() throws IOException, InterruptedException {
+    var response = send("GET", "/todo.html", null);
+    assertAll(
+        () -> assertEquals(200, response.statusCode()),
+        () -> assertEquals("text/html; charset=utf-8", response.headers().firstValue("Content-Type").orElseThrow()),
+        () -> assertArrayEquals(Files.readAllBytes(Path.of("todo.html")), response.body()),
+        () -> assertEquals(response.body().length, contentLength(response))
+    );
+  }
+
+  // the status code of a request sent as is, the HTTP client normalizes the '..' of the path
+  private int rawStatusCode(String path) throws IOException {
+    try(var socket = new Socket(InetAddress.getLoopbackAddress(), server.getAddress().getPort())) {
+      var output = socket.getOutputStream();
+      output.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes(UTF_8));
+      output.flush();
+      var response = new String(socket.getInputStream().readAllBytes(), UTF_8);
+      return Integer.parseInt(response.split(" ", 3)[1]);
+    }
+  }
+
+  @Test
+  public void pathTraversalIsRejected() throws IOException {
+    var outside = Files.createTempFile("loom-http-server", ".html");
+    try {
+      var root = Path.of(".").toAbsolutePath().normalize();
+      var relative = root.relativize(outside.toAbsolutePath()).toString().replace('\\', '/');
+      assertTrue(relative.startsWith("../"));
+      assertAll(
+          () -> assertEquals(404, rawStatusCode("/" + relative)),
+          () -> assertEquals(404, rawStatusCode("/todo.html/../" + relative)),
+          () -> assertEquals(200, rawStatusCode("/src/../todo.html"))
+      );
+    } finally {
+      Files.delete(outside);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package fr.umlv.loom.executor;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CarrierPoolTest {
+  private static String carrierThreadName() {
+    var name = Thread.currentThread().toString();
+    var index = name.lastIndexOf('@');
+    if (index == -1) {
+      throw new AssertionError();
+    }
+    return name.substring(index + 1);
+  }
+
+  @Test
+  public void namedCarriers() throws InterruptedException {
+    var carrierThreadNames = new CopyOnWriteArraySet<String>();
+    try(var pool = UnsafeExecutors.carrierPool("test").parallelism(2).build()) {
+      var threads = new Thread[10];
+      for(var i = 0; i < threads.length; i++) {
+        threads[i] = pool.threadBuilder().start(() -> carrierThreadNames.add(carrierThreadName()));
+      }
+      for(var thread: threads) {
+        thread.join();
+      }
+    }
+    assertAll(
+        () -> assertFalse(carrierThreadNames.isEmpty()),
+        () -> assertTrue(carrierThreadNames.size() <= 2),
+        () -> assertTrue(carrierThreadNames.stream().allMatch(name -> name.startsWith("test-carrier-")))
+    );
+  }
+
+  @Test
+  public void stats() throws InterruptedException {
+    try(var pool = UnsafeExecutors.carrierPool("stats").parallelism(1).build()) {
+      var latch = new CountDownLatch(10);
+      var executor = pool.virtualThreadExecutor();
+      for(var i = 0; i < 10; i++) {
+        executor.execute(() -> {
+          Thread.yield();
+          latch.countDown();
+        });
+      }
+      latch.await();
+      var stats = pool.stats();
+      assertAll(
+          () -> assertEquals("stats", stats.name()),
+          () -> assertEquals(1, stats.parallelism()),
+          () -> assertEquals(1, stats.carriers()),
+          () -> assertEquals(0, stats.pinnedCarriers()),
+          () -> assertTrue(stats.executed() >= 20),  // at least one start and one yield per virtual thread
+          () -> assertTrue(stats.queueDepth() >= 0)
+      );
+    }
+  }
+
+  @Test
+  public void cpuSetConfig() throws IOException, InterruptedException {
+    var config = Files.createTempFile("carriers", ".properties");
+    try {
+      Files.writeString(config, """
+          pinned.cpus = 0
+          other.cpus = 1-3
+          """);
+      try(var pool = UnsafeExecutors.carrierPool("pinned").parallelism(1).cpuSetConfig(config).build()) {
+        pool.threadBuilder().start(() -> {}).join();
+        var pinned = pool.stats().pinnedCarriers();
+        assertEquals(CarrierPool.isPinningSupported()? 1: 0, pinned);
+      }
+    } finally {
+      Files.delete(config);
+    }
+  }
+
+  @Test
+  public void parseCpuSet() {
+    var expected = new BitSet();
+    expected.set(0, 4);
+    expected.set(8);
+    assertAll(
+        () -> assertEquals(expected, CarrierPool.parseCpuSet("0-3,8")),
+        () -> assertEquals(expected, CarrierPool.parseCpuSet(" 0 - 3 , 8 ")),
+        () -> assertThrows(IllegalArgumentException.class, () -> CarrierPool.parseCpuSet("3-1")),
+        () -> assertThrows(IllegalArgumentException.class, () -> CarrierPool.parseCpuSet("foo")),
+        () -> assertThrows(IllegalArgumentException.class, () -> CarrierPool.parseCpuSet("-1"))
+    );
+  }
+
+  @Test
+  public void invalidParallelism() {
+    assertThrows(IllegalArgumentException.class, () -> UnsafeExecutors.carrierPool("test").parallelism(0));
+  }
+}
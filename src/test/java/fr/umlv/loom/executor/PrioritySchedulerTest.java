@@ -0,0 +1,127 @@
+package fr.umlv.loom.executor;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrioritySchedulerTest {
+  // blocks the only carrier until the latch is released
+  private static CountDownLatch blockCarrier(PriorityScheduler scheduler) throws InterruptedException {
+    var started = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    scheduler.executor(0).execute(() -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    });
+    started.await();
+    return release;
+  }
+
+  @Test
+  public void highPriorityFirst() throws InterruptedException {
+    var order = new CopyOnWriteArrayList<String>();
+    try(var scheduler = new PriorityScheduler(1, 2, Duration.ofDays(1))) {
+      var release = blockCarrier(scheduler);
+      scheduler.executor(0).execute(() -> order.add("low1"));
+      scheduler.executor(0).execute(() -> order.add("low2"));
+      scheduler.executor(1).execute(() -> order.add("high1"));
+      scheduler.executor(1).execute(() -> order.add("high2"));
+      release.countDown();
+    }
+    assertEquals(List.of("high1", "high2", "low1", "low2"), order);
+  }
+
+  @Test
+  public void agingAvoidsStarvation() throws InterruptedException {
+    var order = new CopyOnWriteArrayList<String>();
+    try(var scheduler = new PriorityScheduler(1, 2, Duration.ofMillis(1))) {
+      var release = blockCarrier(scheduler);
+      scheduler.executor(0).execute(() -> order.add("low"));
+      Thread.sleep(50);
+      scheduler.executor(1).execute(() -> order.add("high"));
+      release.countDown();
+    }
+    assertEquals(List.of("low", "high"), order);
+  }
+
+  @Test
+  public void virtualThreads() throws InterruptedException {
+    try(var scheduler = new PriorityScheduler(2, 3, Duration.ofMillis(10))) {
+      var carrierNames = new CopyOnWriteArrayList<String>();
+      var threads = new Thread[30];
+      for(var i = 0; i < threads.length; i++) {
+        threads[i] = scheduler.threadBuilder(i % 3).start(() -> {
+          Thread.yield();
+          var name = Thread.currentThread().toString();
+          carrierNames.add(name.substring(name.lastIndexOf('@') + 1));
+        });
+      }
+      for(var thread: threads) {
+        thread.join();
+      }
+      assertAll(
+          () -> assertEquals(30, carrierNames.size()),
+          () -> assertTrue(carrierNames.stream().allMatch(name -> name.startsWith("priority-carrier-"))),
+          () -> assertTrue(scheduler.executed(0) >= 20),  // start + yield
+          () -> assertEquals(0, scheduler.queued(2))
+      );
+    }
+  }
+
+  @Test
+  public void rejectedAfterClose() {
+    var scheduler = new PriorityScheduler(1, 1, Duration.ofMillis(10));
+    scheduler.close();
+    assertThrows(RejectedExecutionException.class, () -> scheduler.executor(0).execute(() -> {}));
+  }
+
+  @Test
+  public void scheduleRacingWithClose() throws InterruptedException {
+    for(var i = 0; i < 200; i++) {
+      var scheduler = new PriorityScheduler(2, 1, Duration.ofMillis(10));
+      var accepted = new AtomicInteger();
+      var ran = new AtomicInteger();
+      var started = new CountDownLatch(1);
+      var submitter = Thread.ofPlatform().start(() -> {
+        started.countDown();
+        for(;;) {
+          try {
+            scheduler.executor(0).execute(ran::incrementAndGet);
+          } catch (RejectedExecutionException e) {
+            return;
+          }
+          accepted.incrementAndGet();
+        }
+      });
+      started.await();
+      scheduler.close();
+      submitter.join();
+      assertEquals(accepted.get(), ran.get(), "a task was neither run nor rejected");
+    }
+  }
+
+  @Test
+  public void invalidArguments() {
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class, () -> new PriorityScheduler(0, 1, Duration.ofMillis(1))),
+        () -> assertThrows(IllegalArgumentException.class, () -> new PriorityScheduler(1, 0, Duration.ofMillis(1))),
+        () -> assertThrows(IllegalArgumentException.class, () -> new PriorityScheduler(1, 1, Duration.ZERO)),
+        () -> {
+          try(var scheduler = new PriorityScheduler(1, 2, Duration.ofMillis(1))) {
+            assertThrows(IllegalArgumentException.class, () -> scheduler.executor(2));
+          }
+        }
+    );
+  }
+}
@@ -31,4 +31,38 @@ public class UnsafeExecutorsTest {
     executor.awaitTermination(1, TimeUnit.DAYS);
     assertEquals(1, carrierThreadNames.size());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void configureBuilderExecutor() throws InterruptedException {
+    // the mode depends on the JDK and on the options of the test run, but when a mode can set
+    // the executor of a builder, the executor is really used
+    var mode = UnsafeExecutors.mode();
+    assertNotNull(mode);
+    var executor = Executors.newSingleThreadExecutor();
+    try {
+      var builder = UnsafeExecutors.configureBuilderExecutor(Thread.ofVirtual().name("foo"), executor);
+      var carrierThreadNames = new CopyOnWriteArraySet<String>();
+      var thread = builder.start(() -> carrierThreadNames.add(carrierThreadName()));
+      thread.join();
+      var usesExecutor = carrierThreadNames.iterator().next().startsWith("pool-");
+      assertAll(
+          () -> assertEquals("foo", thread.getName()),
+          () -> assertEquals(1, carrierThreadNames.size()),
+          () -> assertEquals(mode != UnsafeExecutors.Mode.DEFAULT_SCHEDULER, usesExecutor)
+      );
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void configureBuilderExecutorNotAVirtualBuilder() {
+    var executor = Executors.newSingleThreadExecutor();
+    try {
+      assertThrows(IllegalArgumentException.class,
+          () -> UnsafeExecutors.configureBuilderExecutor(Thread.ofPlatform(), executor));
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
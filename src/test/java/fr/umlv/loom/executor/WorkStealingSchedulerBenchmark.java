@@ -0,0 +1,112 @@
+package fr.umlv.loom.executor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+// Compare the carrier executors of virtual threads: a single thread executor (like TCPVirtualThreadProxy),
+// a ForkJoinPool in async mode (like the default scheduler) and the WorkStealingScheduler
+// mvn -Pjmh test-compile exec:exec -Djmh.args="WorkStealingSchedulerBenchmark -prof gc"
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class WorkStealingSchedulerBenchmark {
+  @Param({"singleThread", "forkJoinPool", "workStealing"})
+  private String scheduler;
+
+  private AutoCloseable closeable;
+  private Thread.Builder.OfVirtual builder;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    var parallelism = Runtime.getRuntime().availableProcessors();
+    switch (scheduler) {
+      case "singleThread" -> {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        closeable = executor::shutdownNow;
+        builder = UnsafeExecutors.configureBuilderExecutor(Thread.ofVirtual(), executor);
+      }
+      case "forkJoinPool" -> {
+        var pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        closeable = pool::shutdownNow;
+        builder = UnsafeExecutors.configureBuilderExecutor(Thread.ofVirtual(), pool);
+      }
+      case "workStealing" -> {
+        var workStealing = new WorkStealingScheduler(parallelism);
+        closeable = workStealing;
+        builder = workStealing.threadBuilder();
+      }
+      default -> throw new AssertionError();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    closeable.close();
+  }
+
+  // 1 000 virtual threads, each one yields 10 times
+  @Benchmark
+  public void yieldFanOut() throws InterruptedException {
+    var threads = new Thread[1_000];
+    for(var i = 0; i < threads.length; i++) {
+      threads[i] = builder.start(() -> {
+        for(var j = 0; j < 10; j++) {
+          Thread.yield();
+        }
+      });
+    }
+    for(var thread: threads) {
+      thread.join();
+    }
+  }
+
+  // 100 pairs of virtual threads exchanging 100 values, each exchange wakes up the other virtual thread
+  @Benchmark
+  public void pingPong() throws InterruptedException {
+    var threads = new Thread[200];
+    for(var i = 0; i < threads.length; i += 2) {
+      var queue = new SynchronousQueue<Integer>();
+      threads[i] = builder.start(() -> {
+        try {
+          for(var j = 0; j < 100; j++) {
+            queue.put(j);
+          }
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      });
+      threads[i + 1] = builder.start(() -> {
+        try {
+          for(var j = 0; j < 100; j++) {
+            queue.take();
+          }
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      });
+    }
+    for(var thread: threads) {
+      thread.join();
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package fr.umlv.loom.executor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkStealingSchedulerTest {
+  @Test
+  public void runAll() throws InterruptedException {
+    var counter = new AtomicInteger();
+    try(var scheduler = new WorkStealingScheduler(4)) {
+      var threads = new Thread[1_000];
+      for(var i = 0; i < threads.length; i++) {
+        threads[i] = scheduler.threadBuilder().start(() -> {
+          for(var j = 0; j < 10; j++) {
+            Thread.yield();
+          }
+          counter.incrementAndGet();
+        });
+      }
+      for(var thread: threads) {
+        thread.join();
+      }
+      assertTrue(scheduler.executed() >= 11_000);
+    }
+    assertEquals(1_000, counter.get());
+  }
+
+  @Test
+  public void carrierNames() throws InterruptedException {
+    var carrierNames = new CopyOnWriteArrayList<String>();
+    try(var scheduler = new WorkStealingScheduler(2)) {
+      var executor = UnsafeExecutors.virtualThreadExecutor(scheduler);
+      var latch = new CountDownLatch(10);
+      for(var i = 0; i < 10; i++) {
+        executor.execute(() -> {
+          var name = Thread.currentThread().toString();
+          carrierNames.add(name.substring(name.lastIndexOf('@') + 1));
+          latch.countDown();
+        });
+      }
+      latch.await();
+    }
+    assertTrue(carrierNames.stream().allMatch(name -> name.startsWith("work-stealing-carrier-")));
+  }
+
+  @Test
+  public void pingPong() throws InterruptedException {
+    try(var scheduler = new WorkStealingScheduler(2)) {
+      var queue = new SynchronousQueue<Integer>();
+      var consumer = scheduler.threadBuilder().start(() -> {
+        try {
+          for(var i = 0; i < 1_000; i++) {
+            assertEquals(i, queue.take());
+          }
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      });
+      for(var i = 0; i < 1_000; i++) {
+        queue.put(i);
+      }
+      consumer.join();
+      assertTrue(scheduler.affinityHits() > 0);
+    }
+  }
+
+  @Test
+  public void steal() throws InterruptedException {
+    try(var scheduler = new WorkStealingScheduler(2)) {
+      var release = new CountDownLatch(1);
+      var done = new CountDownLatch(100);
+      scheduler.execute(() -> {
+        // push all the tasks on the deque of this carrier, the other carrier has to steal them
+        for(var i = 0; i < 100; i++) {
+          scheduler.execute(done::countDown);
+        }
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      });
+      done.await();
+      release.countDown();
+      assertTrue(scheduler.steals() >= 100);
+    }
+  }
+
+  @Test
+  public void rejectedAfterClose() {
+    var scheduler = new WorkStealingScheduler(1);
+    scheduler.close();
+    assertThrows(RejectedExecutionException.class, () -> scheduler.execute(() -> {}));
+  }
+
+  @Test
+  public void executeRacingWithClose() throws InterruptedException {
+    for(var i = 0; i < 200; i++) {
+      var scheduler = new WorkStealingScheduler(2);
+      var accepted = new AtomicInteger();
+      var ran = new AtomicInteger();
+      var started = new CountDownLatch(1);
+      var submitter = Thread.ofPlatform().start(() -> {
+        started.countDown();
+        for(;;) {
+          try {
+            scheduler.execute(ran::incrementAndGet);
+          } catch (RejectedExecutionException e) {
+            return;
+          }
+          accepted.incrementAndGet();
+        }
+      });
+      started.await();
+      scheduler.close();
+      submitter.join();
+      assertEquals(accepted.get(), ran.get(), "a task was neither run nor rejected");
+    }
+  }
+
+  @Test
+  public void invalidParallelism() {
+    assertThrows(IllegalArgumentException.class, () -> new WorkStealingScheduler(0));
+  }
+}
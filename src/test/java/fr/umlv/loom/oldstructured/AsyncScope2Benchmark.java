@@ -0,0 +1,41 @@
+package fr.umlv.loom.oldstructured;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// mvn -Pjmh test-compile exec:exec -Djmh.args="AsyncScope2Benchmark -prof gc"
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class AsyncScope2Benchmark {
+  @Param({"1", "10", "100", "1000", "10000", "100000"})
+  private int width;
+
+  @Param({"true", "false"})
+  private boolean ordered;
+
+  @Benchmark
+  public long asyncAwait() throws InterruptedException {
+    try(var scope = ordered? AsyncScope2.<Integer, RuntimeException>ordered(): AsyncScope2.<Integer, RuntimeException>unordered()) {
+      for(var i = 0; i < width; i++) {
+        var value = i;
+        scope.async(() -> value);
+      }
+      return scope.await(Stream::count);
+    }
+  }
+}
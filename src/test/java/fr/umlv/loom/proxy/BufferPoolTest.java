@@ -0,0 +1,72 @@
+package fr.umlv.loom.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+  @Test
+  public void acquireCapacity() {
+    var pool = new BufferPool(1024, 8192, 4);
+    assertAll(
+        () -> assertEquals(1024, pool.acquire(1).capacity()),
+        () -> assertEquals(1024, pool.acquire(1024).capacity()),
+        () -> assertEquals(2048, pool.acquire(1025).capacity()),
+        () -> assertEquals(8192, pool.acquire(8192).capacity()),
+        () -> assertEquals(8192, pool.acquire(100_000).capacity()),
+        () -> assertTrue(pool.acquire(1).isDirect())
+    );
+  }
+
+  @Test
+  public void reuse() {
+    var pool = new BufferPool(1024, 8192, 4);
+    var buffer = pool.acquire(2048);
+    buffer.put((byte) 42);
+    pool.release(buffer);
+    var buffer2 = pool.acquire(2048);
+    assertAll(
+        () -> assertSame(buffer, buffer2),
+        () -> assertEquals(0, buffer2.position()),
+        () -> assertEquals(1, pool.hits()),
+        () -> assertEquals(1, pool.misses()),
+        () -> assertEquals(2048, pool.allocatedBytes())
+    );
+  }
+
+  @Test
+  public void maxIdle() {
+    var pool = new BufferPool(1024, 1024, 2);
+    var buffers = new ByteBuffer[] { pool.acquire(1024), pool.acquire(1024), pool.acquire(1024) };
+    for(var buffer: buffers) {
+      pool.release(buffer);
+    }
+    assertAll(
+        () -> assertEquals(2, pool.idle()),
+        () -> assertEquals(2 * 1024, pool.allocatedBytes())
+    );
+  }
+
+  @Test
+  public void releaseForeignBuffer() {
+    var pool = new BufferPool(1024, 8192, 4);
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocate(1024))),
+        () -> assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocateDirect(1000))),
+        () -> assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocateDirect(16_384))),
+        () -> assertThrows(NullPointerException.class, () -> pool.release(null))
+    );
+  }
+
+  @Test
+  public void invalidCapacities() {
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class, () -> new BufferPool(1000, 8192, 4)),
+        () -> assertThrows(IllegalArgumentException.class, () -> new BufferPool(1024, 512, 4)),
+        () -> assertThrows(IllegalArgumentException.class, () -> new BufferPool(1024, 3000, 4)),
+        () -> assertThrows(IllegalArgumentException.class, () -> new BufferPool(1024, 8192, -1))
+    );
+  }
+}
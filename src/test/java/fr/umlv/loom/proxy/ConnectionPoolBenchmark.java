@@ -0,0 +1,98 @@
+package fr.umlv.loom.proxy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+// Compare the number of short sessions (one round trip of one byte) per second against a loopback echo server
+// with a new connection per session and with a connection acquired from a ConnectionPool.
+// pooledContended uses a pool limited to 2 connections for 4 threads, so the threads wait for each other.
+// The sessions know where a round trip ends so they reuse the connections, the proxies do not,
+// through ConnectionPool.upstream() they get the same waiting but a new connection per session.
+// mvn -Pjmh test-compile exec:exec -Djmh.args="ConnectionPoolBenchmark"
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(4)
+public class ConnectionPoolBenchmark {
+  private EchoServer echo;
+  private SocketAddress address;
+  private ConnectionPool pool;
+  private ConnectionPool contendedPool;
+
+  @State(Scope.Thread)
+  public static class Buffer {
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1);
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    echo = EchoServer.start(1024);
+    address = echo.address();
+    pool = ConnectionPool.builder().maxPerHost(64).build();
+    contendedPool = ConnectionPool.builder().maxPerHost(2).build();
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() throws IOException {
+    pool.close();
+    contendedPool.close();
+    echo.close();
+    System.out.println("\npool created " + pool.created() + " reused " + pool.reused() +
+        ", contended pool created " + contendedPool.created() + " reused " + contendedPool.reused() +
+        " waits " + contendedPool.waits());
+  }
+
+  private static void roundTrip(SocketChannel channel, ByteBuffer buffer) throws IOException {
+    channel.write(buffer.clear().put((byte) 42).flip());
+    if (channel.read(buffer.clear()) != 1) {
+      throw new IOException("no echo");
+    }
+  }
+
+  @Benchmark
+  public void connect(Buffer buffer) throws IOException {
+    try(var channel = SocketChannel.open(address)) {
+      roundTrip(channel, buffer.buffer);
+    }
+  }
+
+  @Benchmark
+  public void pooled(Buffer buffer) throws IOException, InterruptedException {
+    var channel = pool.acquire(address);
+    try {
+      roundTrip(channel, buffer.buffer);
+    } finally {
+      pool.release(channel);
+    }
+  }
+
+  @Benchmark
+  public void pooledContended(Buffer buffer) throws IOException, InterruptedException {
+    var channel = contendedPool.acquire(address);
+    try {
+      roundTrip(channel, buffer.buffer);
+    } finally {
+      contendedPool.release(channel);
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package fr.umlv.loom.proxy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+public class ConnectionPoolTest {
+  private EchoServer echo;
+  private SocketAddress address;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    echo = EchoServer.start(1024);
+    address = echo.address();
+  }
+
+  @AfterEach
+  public void teardown() throws IOException {
+    echo.close();
+  }
+
+  @Test
+  public void reuse() throws IOException, InterruptedException {
+    try(var pool = ConnectionPool.builder().build()) {
+      var channel = pool.acquire(address);
+      pool.release(channel);
+      var channel2 = pool.acquire(address);
+      assertAll(
+          () -> assertSame(channel, channel2),
+          () -> assertEquals(1, pool.created()),
+          () -> assertEquals(1, pool.reused()),
+          () -> assertEquals(1, pool.open(address)),
+          () -> assertEquals(0, pool.idle(address))
+      );
+      pool.release(channel2);
+      assertEquals(1, pool.idle(address));
+    }
+  }
+
+  @Test
+  public void maxPerHostWaits() throws Exception {
+    try(var pool = ConnectionPool.builder().maxPerHost(1).build();
+        var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var channel = pool.acquire(address);
+      var future = executor.submit(() -> pool.acquire(address));
+      while(pool.waits() == 0) {
+        Thread.sleep(10);
+      }
+      pool.release(channel);
+      var channel2 = future.get();
+      assertAll(
+          () -> assertSame(channel, channel2),
+          () -> assertEquals(1, pool.waits()),
+          () -> assertEquals(1, pool.open(address))
+      );
+    }
+  }
+
+  @Test
+  public void maxPerHostTimeout() throws IOException, InterruptedException {
+    try(var pool = ConnectionPool.builder().maxPerHost(1).acquireTimeout(Duration.ofMillis(100)).build()) {
+      pool.acquire(address);
+      assertThrows(IOException.class, () -> pool.acquire(address));
+      assertEquals(1, pool.open(address));
+    }
+  }
+
+  @Test
+  public void idleEviction() throws IOException, InterruptedException {
+    try(var pool = ConnectionPool.builder().idleTimeout(Duration.ofMillis(50)).build()) {
+      var channel = pool.acquire(address);
+      pool.release(channel);
+      var end = System.nanoTime() + 5_000_000_000L;
+      while(pool.evicted() == 0 && System.nanoTime() < end) {
+        Thread.sleep(10);
+      }
+      assertAll(
+          () -> assertEquals(1, pool.evicted()),
+          () -> assertEquals(0, pool.idle(address)),
+          () -> assertEquals(0, pool.open(address)),
+          () -> assertFalse(channel.isOpen())
+      );
+    }
+  }
+
+  @Test
+  public void healthCheckFails() throws IOException, InterruptedException {
+    try(var pool = ConnectionPool.builder().healthCheck(channel -> false).build()) {
+      var channel = pool.acquire(address);
+      pool.release(channel);
+      var channel2 = pool.acquire(address);
+      assertAll(
+          () -> assertNotSame(channel, channel2),
+          () -> assertFalse(channel.isOpen()),
+          () -> assertEquals(1, pool.failedChecks()),
+          () -> assertEquals(2, pool.created()),
+          () -> assertEquals(1, pool.open(address))
+      );
+    }
+  }
+
+  @Test
+  public void healthCheckThrows() throws IOException, InterruptedException {
+    try(var pool = ConnectionPool.builder().maxPerHost(1).healthCheck(channel -> {
+          throw new IllegalStateException("oops");
+        }).build()) {
+      var channel = pool.acquire(address);
+      pool.release(channel);
+      assertThrows(IllegalStateException.class, () -> pool.acquire(address));
+      assertAll(
+          () -> assertFalse(channel.isOpen()),
+          () -> assertEquals(0, pool.open(address))
+      );
+    }
+  }
+
+  @Test
+  public void defaultHealthCheck() throws IOException, InterruptedException {
+    try(var pool = ConnectionPool.builder().build()) {
+      var channel = pool.acquire(address);
+      assertTrue(ConnectionPool.isAlive(channel));
+      pool.release(channel);
+      var end = System.nanoTime() + 5_000_000_000L;
+      while(echo.connections() == 0 && System.nanoTime() < end) {  // the echo server has accepted it
+        Thread.sleep(10);
+      }
+      echo.close();  // the remote closes the connection
+      while(ConnectionPool.isAlive(channel) && System.nanoTime() < end) {
+        Thread.sleep(10);
+      }
+      assertFalse(ConnectionPool.isAlive(channel));
+    }
+  }
+
+  @Test
+  public void releaseClosedChannel() throws IOException, InterruptedException {
+    try(var pool = ConnectionPool.builder().build()) {
+      var channel = pool.acquire(address);
+      channel.close();
+      pool.release(channel);
+      assertAll(
+          () -> assertEquals(0, pool.idle(address)),
+          () -> assertEquals(0, pool.open(address))
+      );
+    }
+  }
+
+  @Test
+  public void releaseMoreThanMaxIdle() throws IOException, InterruptedException {
+    try(var pool = ConnectionPool.builder().maxIdlePerHost(1).build()) {
+      var channel = pool.acquire(address);
+      var channel2 = pool.acquire(address);
+      pool.release(channel);
+      pool.release(channel2);
+      assertAll(
+          () -> assertTrue(channel.isOpen()),
+          () -> assertFalse(channel2.isOpen()),
+          () -> assertEquals(1, pool.idle(address)),
+          () -> assertEquals(1, pool.open(address))
+      );
+    }
+  }
+
+  @Test
+  public void releaseForeignChannel() throws IOException {
+    try(var pool = ConnectionPool.builder().build();
+        var channel = SocketChannel.open(address)) {
+      assertThrows(IllegalArgumentException.class, () -> pool.release(channel));
+    }
+  }
+
+  @Test
+  public void closeWakesWaiters() throws Exception {
+    try(var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var pool = ConnectionPool.builder().maxPerHost(1).build();
+      var channel = pool.acquire(address);
+      var future = executor.submit(() -> pool.acquire(address));
+      while(pool.waits() == 0) {
+        Thread.sleep(10);
+      }
+      pool.close();
+      var exception = assertThrows(ExecutionException.class, future::get);
+      assertInstanceOf(IllegalStateException.class, exception.getCause());
+      pool.release(channel);
+      assertAll(
+          () -> assertFalse(channel.isOpen()),
+          () -> assertThrows(IllegalStateException.class, () -> pool.acquire(address))
+      );
+    }
+  }
+
+  @Test
+  public void upstream() throws IOException {
+    try(var pool = ConnectionPool.builder().build()) {
+      var upstream = pool.upstream(address);
+      var channel = upstream.connect();
+      upstream.release(channel);
+      var channel2 = upstream.connect();
+      assertAll(
+          () -> assertFalse(channel.isOpen()),
+          () -> assertNotSame(channel, channel2),
+          () -> assertEquals(1, pool.open(address)),
+          () -> assertEquals(0, pool.reused())
+      );
+    }
+  }
+
+  @Test
+  public void upstreamClosed() {
+    var pool = ConnectionPool.builder().build();
+    var upstream = pool.upstream(address);
+    pool.close();
+    assertThrows(IOException.class, upstream::connect);
+  }
+
+  @Test
+  public void invalidBuilder() {
+    var builder = ConnectionPool.builder();
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class, () -> builder.maxPerHost(0)),
+        () -> assertThrows(IllegalArgumentException.class, () -> builder.maxIdlePerHost(-1)),
+        () -> assertThrows(IllegalArgumentException.class, () -> builder.idleTimeout(Duration.ZERO)),
+        () -> assertThrows(IllegalArgumentException.class, () -> builder.acquireTimeout(Duration.ofSeconds(-1))),
+        () -> assertThrows(NullPointerException.class, () -> builder.healthCheck(null))
+    );
+  }
+}
@@ -0,0 +1,153 @@
+package fr.umlv.loom.proxy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+// Compare the forwarding modes of the proxy on loopback, a client sends a payload through the proxy
+// to a sink that answers one byte once it has received the whole payload.
+// transfer reuses the same connection, connection opens a new connection per payload
+// (gc.alloc.rate.norm is the heap allocated per connection), the direct memory held by the pool
+// is printed at the end of each trial.
+// mvn -Pjmh test-compile exec:exec -Djmh.args="ForwarderBenchmark -prof gc"
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ForwarderBenchmark {
+  @Param({"COPY", "POOLED"})
+  private Forwarder.Mode mode;
+
+  @Param({"1024", "1048576"})
+  private int payload;
+
+  private BufferPool pool;
+  private ServerSocketChannel sink;
+  private ServerSocketChannel proxy;
+  private SocketChannel client;
+  private ByteBuffer payloadBuffer;
+  private ByteBuffer ackBuffer;
+
+  private static void acceptLoop(ServerSocketChannel server, ServerSocketChannel sink, Forwarder forwarder) {
+    Thread.ofVirtual().start(() -> {
+      try {
+        for(;;) {
+          var socket = server.accept();
+          var remote = SocketChannel.open(sink.getLocalAddress());
+          Thread.ofVirtual().start(() -> forward(forwarder, socket, remote));
+          Thread.ofVirtual().start(() -> forward(forwarder, remote, socket));
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    });
+  }
+
+  private static void forward(Forwarder forwarder, SocketChannel in, SocketChannel out) {
+    try(in; out) {
+      forwarder.forward(in, out);
+    } catch (IOException e) {
+      // closed
+    }
+  }
+
+  private static void sinkLoop(ServerSocketChannel sink, int payload) {
+    Thread.ofVirtual().start(() -> {
+      try {
+        for(;;) {
+          var socket = sink.accept();
+          Thread.ofVirtual().start(() -> {
+            var buffer = ByteBuffer.allocateDirect(65536);
+            var ack = ByteBuffer.allocateDirect(1);
+            var received = 0L;
+            try(socket) {
+              int read;
+              while((read = socket.read(buffer.clear())) != -1) {
+                received += read;
+                if (received >= payload) {
+                  received -= payload;
+                  socket.write(ack.clear());
+                }
+              }
+            } catch (IOException e) {
+              // closed
+            }
+          });
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    });
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    pool = new BufferPool(4096, 65536, 1024);
+    var forwarder = Forwarder.of(mode, pool);
+    var loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    sink = ServerSocketChannel.open().bind(loopback);
+    proxy = ServerSocketChannel.open().bind(loopback);
+    sinkLoop(sink, payload);
+    acceptLoop(proxy, sink, forwarder);
+    client = SocketChannel.open(proxy.getLocalAddress());
+    payloadBuffer = ByteBuffer.allocateDirect(payload);
+    ackBuffer = ByteBuffer.allocateDirect(1);
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() throws IOException {
+    client.close();
+    proxy.close();
+    sink.close();
+    System.out.println("\ndirect memory " + pool.allocatedBytes() + " bytes, idle buffers " + pool.idle() +
+        ", hits " + pool.hits() + ", misses " + pool.misses());
+  }
+
+  private void send(SocketChannel socket) {
+    try {
+      payloadBuffer.clear();
+      do {
+        socket.write(payloadBuffer);
+      } while(payloadBuffer.hasRemaining());
+      ackBuffer.clear();
+      if (socket.read(ackBuffer) != 1) {
+        throw new IOException("no ack");
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Benchmark
+  public void transfer() {
+    send(client);
+  }
+
+  @Benchmark
+  public void connection() throws IOException {
+    try(var socket = SocketChannel.open(proxy.getLocalAddress())) {
+      send(socket);
+    }
+  }
+}
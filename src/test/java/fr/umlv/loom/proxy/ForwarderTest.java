@@ -0,0 +1,141 @@
+package fr.umlv.loom.proxy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import static fr.umlv.loom.proxy.SocketPairs.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+public class ForwarderTest {
+  private SocketPairs sockets;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    sockets = new SocketPairs();
+  }
+
+  @AfterEach
+  public void teardown() throws IOException {
+    sockets.close();
+  }
+
+  // writes the bytes into the source, forwards source -> sink and returns the bytes read from the sink
+  private byte[] forward(Forwarder forwarder, byte[] bytes, LongAdder counter) throws Exception {
+    var source = sockets.pair();
+    var sink = sockets.pair();
+    try(var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var writer = executor.submit(() -> {
+        writeAll(source[0], bytes);
+        source[0].shutdownOutput();
+        return null;
+      });
+      var forward = executor.submit(() -> {
+        try {
+          return forwarder.forward(source[1], sink[0], counter::add);
+        } finally {
+          sink[0].shutdownOutput();  // so readAll() returns even if the forward fails
+        }
+      });
+      var received = readAll(sink[1]);
+      writer.get();
+      assertEquals(bytes.length, forward.get());
+      return received;
+    }
+  }
+
+  @Test
+  public void copy() throws Exception {
+    var bytes = randomBytes(1 << 20, 0);
+    var counter = new LongAdder();
+    var received = forward(Forwarder.copy(), bytes, counter);
+    assertAll(
+        () -> assertArrayEquals(bytes, received),
+        () -> assertEquals(bytes.length, counter.sum())
+    );
+  }
+
+  @Test
+  public void pooledGrows() throws Exception {
+    var pool = new BufferPool(1024, 64 * 1024, 16);
+    var bytes = randomBytes(4 << 20, 0);
+    var counter = new LongAdder();
+    var received = forward(Forwarder.pooled(pool), bytes, counter);
+    assertAll(
+        () -> assertArrayEquals(bytes, received),
+        () -> assertEquals(bytes.length, counter.sum()),
+        () -> assertTrue(pool.misses() > 1, "the buffer did not grow"),
+        () -> assertEquals(pool.misses(), pool.idle(), "a buffer was not released")
+    );
+  }
+
+  @Test
+  public void pooledShrinks() throws Exception {
+    var pool = new BufferPool(1024, 4096, 16);
+    var source = sockets.pair();
+    var sink = sockets.pair();
+    var forward = Thread.ofVirtual().start(() -> {
+      try {
+        Forwarder.pooled(pool).forward(source[1], sink[0]);
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    });
+    // a bulk transfer grows the buffer up to 4096
+    var bulk = randomBytes(1 << 20, 0);
+    var writer = Thread.ofVirtual().start(() -> {
+      try {
+        writeAll(source[0], bulk);
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    });
+    var buffer = ByteBuffer.allocate(bulk.length);
+    while(buffer.hasRemaining()) {
+      sink[1].read(buffer);
+    }
+    writer.join();
+    var hits = pool.hits();
+
+    // then small round trips, one read of one byte each, shrink it
+    var one = ByteBuffer.allocate(1);
+    for(var i = 0; i < 40; i++) {
+      source[0].write(one.clear().put((byte) i).flip());
+      one.clear();
+      while(one.hasRemaining()) {
+        sink[1].read(one);
+      }
+      assertEquals((byte) i, one.get(0));
+    }
+    source[0].shutdownOutput();
+    forward.join();
+    assertTrue(pool.hits() > hits, "the buffer did not shrink");
+    assertEquals(pool.misses(), pool.idle(), "a buffer was not released");
+  }
+
+  @Test
+  public void modeFromSystemProperty() {
+    var old = System.getProperty("fr.umlv.loom.proxy.mode");
+    try {
+      System.clearProperty("fr.umlv.loom.proxy.mode");
+      assertEquals(Forwarder.Mode.POOLED, Forwarder.Mode.fromSystemProperty());
+      System.setProperty("fr.umlv.loom.proxy.mode", "copy");
+      assertEquals(Forwarder.Mode.COPY, Forwarder.Mode.fromSystemProperty());
+      System.setProperty("fr.umlv.loom.proxy.mode", "zero-copy");
+      assertThrows(IllegalArgumentException.class, Forwarder.Mode::fromSystemProperty);
+    } finally {
+      if (old == null) {
+        System.clearProperty("fr.umlv.loom.proxy.mode");
+      } else {
+        System.setProperty("fr.umlv.loom.proxy.mode", old);
+      }
+    }
+  }
+}
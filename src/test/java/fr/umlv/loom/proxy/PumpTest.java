@@ -0,0 +1,122 @@
+package fr.umlv.loom.proxy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+
+import static fr.umlv.loom.proxy.SocketPairs.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+public class PumpTest {
+  private SocketPairs sockets;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    sockets = new SocketPairs();
+  }
+
+  @AfterEach
+  public void teardown() throws IOException {
+    sockets.close();
+  }
+
+  @Test
+  public void halfCloseStillReceivesTheResponse() throws Exception {
+    var client = sockets.pair();  // [0] the client application, [1] the proxy side
+    var remote = sockets.pair();  // [0] the proxy side, [1] the remote application
+    var request = randomBytes(100_000, 1);
+    var response = randomBytes(1 << 20, 2);
+    var pump = new Pump(client[1], remote[0], Forwarder.pooled(new BufferPool(1024, 64 * 1024, 16)));
+    try(var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var pumping = executor.submit(() -> {
+        pump.run(Thread.ofVirtual().factory());
+        return null;
+      });
+      // the remote answers only once it has read the whole request, like a HTTP/1.0 server
+      var remoteApplication = executor.submit(() -> {
+        var received = readAll(remote[1]);
+        writeAll(remote[1], response);
+        remote[1].shutdownOutput();
+        return received;
+      });
+      writeAll(client[0], request);
+      client[0].shutdownOutput();  // the client has nothing more to send
+      var received = readAll(client[0]);
+      pumping.get();
+      assertAll(
+          () -> assertArrayEquals(request, remoteApplication.get()),
+          () -> assertArrayEquals(response, received),
+          () -> assertEquals(request.length, pump.bytesIn()),
+          () -> assertEquals(response.length, pump.bytesOut()),
+          () -> assertTrue(pump.isDone())
+      );
+    }
+  }
+
+  @Test
+  public void counters() throws Exception {
+    var client = sockets.pair();
+    var remote = sockets.pair();
+    var pump = new Pump(client[1], remote[0], Forwarder.copy());
+    try(var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var pumping = executor.submit(() -> {
+        pump.run(Thread.ofVirtual().factory());
+        return null;
+      });
+      writeAll(client[0], new byte[10]);
+      var buffer = ByteBuffer.allocate(10);
+      while(buffer.hasRemaining()) {
+        remote[1].read(buffer);
+      }
+      writeAll(remote[1], new byte[25]);
+      buffer = ByteBuffer.allocate(25);
+      while(buffer.hasRemaining()) {
+        client[0].read(buffer);
+      }
+      assertAll(
+          () -> assertEquals(10, pump.bytesIn()),
+          () -> assertEquals(25, pump.bytesOut()),
+          () -> assertFalse(pump.isDone())
+      );
+      client[0].shutdownOutput();
+      remote[1].shutdownOutput();
+      pumping.get();
+      assertAll(
+          () -> assertEquals(10, pump.bytesIn()),
+          () -> assertEquals(25, pump.bytesOut()),
+          () -> assertTrue(pump.isDone())
+      );
+    }
+  }
+
+  @Test
+  public void forkedDirectionFailureClosesBothSockets() throws Exception {
+    var client = sockets.pair();
+    var remote = sockets.pair();
+    var pump = new Pump(client[1], remote[0], Forwarder.copy());
+    try(var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var pumping = executor.submit(() -> {
+        pump.run(Thread.ofVirtual().factory());
+        return null;
+      });
+      // the remote resets the connection, so the read of remote -> client (the forked direction) fails,
+      // the client stays silent, so client -> remote is blocked in a read
+      remote[1].setOption(StandardSocketOptions.SO_LINGER, 0);
+      remote[1].close();
+      var exception = assertThrows(Exception.class, pumping::get);
+      assertAll(
+          () -> assertInstanceOf(IOException.class, exception.getCause()),
+          () -> assertFalse(client[1].isOpen()),
+          () -> assertFalse(remote[0].isOpen()),
+          () -> assertTrue(pump.isDone())
+      );
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package fr.umlv.loom.proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Connected pairs of loopback sockets for the tests of the proxy package,
+ * all the sockets are closed by {@link #close()}.
+ */
+final class SocketPairs implements Closeable {
+  private final ServerSocketChannel server;
+  private final ArrayList<SocketChannel> channels = new ArrayList<>();
+
+  SocketPairs() throws IOException {
+    server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+  }
+
+  // a connected pair of sockets, [0] is the client side, [1] is the server side
+  SocketChannel[] pair() throws IOException {
+    var client = SocketChannel.open(server.getLocalAddress());
+    channels.add(client);
+    var accepted = server.accept();
+    channels.add(accepted);
+    return new SocketChannel[] { client, accepted };
+  }
+
+  @Override
+  public void close() throws IOException {
+    for(var channel: channels) {
+      channel.close();
+    }
+    server.close();
+  }
+
+  static byte[] randomBytes(int size, long seed) {
+    var bytes = new byte[size];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+
+  // a write on a socket from a virtual thread may be partial
+  static void writeAll(SocketChannel channel, byte[] bytes) throws IOException {
+    var buffer = ByteBuffer.wrap(bytes);
+    while(buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  static byte[] readAll(SocketChannel channel) throws IOException {
+    var output = new ByteArrayOutputStream();
+    var buffer = ByteBuffer.allocate(8192);
+    while(channel.read(buffer) != -1) {
+      output.write(buffer.array(), 0, buffer.position());
+      buffer.clear();
+    }
+    return output.toByteArray();
+  }
+}
@@ -0,0 +1,100 @@
+package fr.umlv.loom.proxy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+public class TCPVirtualThreadProxyTest {
+  private EchoServer echo;
+  private ServerSocketChannel server;
+  private Thread proxy;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    echo = EchoServer.start(1024);
+    server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+  }
+
+  @AfterEach
+  public void teardown() throws IOException, InterruptedException {
+    server.close();  // stops the proxy
+    if (proxy != null) {
+      proxy.join();
+    }
+    echo.close();
+  }
+
+  private void startProxy(Upstream upstream) {
+    proxy = Thread.ofVirtual().start(() -> {
+      try {
+        TCPVirtualThreadProxy.serve(server, upstream, Forwarder.copy(), Thread.ofVirtual());
+      } catch (IOException | InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    });
+  }
+
+  private static void roundTrip(SocketChannel channel, byte value) throws IOException {
+    channel.write(ByteBuffer.wrap(new byte[] { value }));
+    var buffer = ByteBuffer.allocate(1);
+    while(buffer.hasRemaining()) {
+      if (channel.read(buffer) == -1) {
+        throw new IOException("no echo");
+      }
+    }
+    assertEquals(value, buffer.get(0));
+  }
+
+  @Test
+  public void roundTripsThroughTheProxy() throws IOException {
+    startProxy(Upstream.onDemand(echo.address()));
+    try(var client = SocketChannel.open(server.getLocalAddress())) {
+      roundTrip(client, (byte) 42);
+      roundTrip(client, (byte) 43);
+    }
+  }
+
+  @Test
+  public void connectionPoolCapsTheConnectionsToTheRemote() throws Exception {
+    try(var pool = ConnectionPool.builder().maxPerHost(1).build()) {
+      var address = echo.address();
+      startProxy(pool.upstream(address));
+      try(var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        var client = SocketChannel.open(server.getLocalAddress());
+        roundTrip(client, (byte) 1);
+
+        // the second client waits for the connection of the first one
+        var second = executor.submit(() -> {
+          try(var client2 = SocketChannel.open(server.getLocalAddress())) {
+            roundTrip(client2, (byte) 2);
+          }
+          return null;
+        });
+        while(pool.waits() == 0) {
+          Thread.sleep(10);
+        }
+        assertEquals(1, pool.open(address));
+        client.close();
+        second.get();
+      }
+      assertAll(
+          () -> assertEquals(1, pool.waits()),
+          () -> assertEquals(2, pool.created()),
+          () -> assertEquals(0, pool.reused())
+      );
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package fr.umlv.loom.proxy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+public class UpstreamTest {
+  private EchoServer echo;
+  private SocketAddress address;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    echo = EchoServer.start(1024);
+    address = echo.address();
+  }
+
+  @AfterEach
+  public void teardown() throws IOException {
+    echo.close();
+  }
+
+  @Test
+  public void onDemand() throws IOException {
+    try(var upstream = Upstream.onDemand(address)) {
+      var channel = upstream.connect();
+      var channel2 = upstream.connect();
+      assertAll(
+          () -> assertTrue(channel.isConnected()),
+          () -> assertNotSame(channel, channel2)
+      );
+      upstream.release(channel);
+      upstream.release(channel2);
+      assertAll(
+          () -> assertFalse(channel.isOpen()),
+          () -> assertFalse(channel2.isOpen())
+      );
+    }
+  }
+
+  @Test
+  public void warm() throws IOException, InterruptedException {
+    try(var upstream = Upstream.warm(address, 2)) {
+      while(upstream.warmConnections() != 2) {
+        Thread.sleep(10);
+      }
+      var channel = upstream.connect();
+      assertAll(
+          () -> assertTrue(channel.isConnected()),
+          () -> assertEquals(1, upstream.hits()),
+          () -> assertEquals(0, upstream.misses())
+      );
+      upstream.release(channel);
+      assertFalse(channel.isOpen());
+    }
+  }
+
+  @Test
+  public void warmMiss() throws IOException {
+    try(var upstream = Upstream.warm(address, 1)) {
+      // the refill thread puts at most one connection, so at least one of the two is a miss
+      var channel = upstream.connect();
+      var channel2 = upstream.connect();
+      assertAll(
+          () -> assertTrue(channel.isConnected()),
+          () -> assertTrue(channel2.isConnected()),
+          () -> assertEquals(2, upstream.hits() + upstream.misses()),
+          () -> assertTrue(upstream.misses() >= 1)
+      );
+      upstream.release(channel);
+      upstream.release(channel2);
+    }
+  }
+
+  @Test
+  public void warmClose() throws IOException, InterruptedException {
+    var upstream = Upstream.warm(address, 2);
+    while(upstream.warmConnections() != 2) {
+      Thread.sleep(10);
+    }
+    upstream.close();
+    assertAll(
+        () -> assertEquals(0, upstream.warmConnections()),
+        () -> assertThrows(IOException.class, upstream::connect)
+    );
+    upstream.close();  // idempotent
+  }
+
+  @Test
+  public void warmRemoteDown() throws IOException, InterruptedException {
+    echo.close();
+    try(var upstream = Upstream.warm(address, 2)) {
+      Thread.sleep(200);  // the refill retries without filling the queue
+      assertAll(
+          () -> assertEquals(0, upstream.warmConnections()),
+          () -> assertThrows(IOException.class, upstream::connect),
+          () -> assertEquals(1, upstream.misses())
+      );
+    }
+  }
+
+  @Test
+  public void invalidWarm() {
+    assertAll(
+        () -> assertThrows(NullPointerException.class, () -> Upstream.warm(null, 1)),
+        () -> assertThrows(IllegalArgumentException.class, () -> Upstream.warm(address, 0)),
+        () -> assertThrows(NullPointerException.class, () -> Upstream.onDemand(null))
+    );
+  }
+}
@@ -0,0 +1,51 @@
+package fr.umlv.loom.reducer;
+
+import fr.umlv.loom.reducer.StructuredAsyncScope.Reducer;
+import fr.umlv.loom.reducer.StructuredLongAsyncScope.LongReducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Compare the sum of long values with the boxed StructuredAsyncScope and with StructuredLongAsyncScope
+// mvn -Pjmh test-compile exec:exec -Djmh.args="PrimitiveAsyncScopeBenchmark -prof gc"
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class PrimitiveAsyncScopeBenchmark {
+  @Param({"1000", "100000"})
+  private int width;
+
+  @Benchmark
+  public long boxedSum() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Long>sum(v -> v))) {
+      for(var i = 0; i < width; i++) {
+        var value = i * 1_000L;
+        scope.fork(() -> value);
+      }
+      return scope.result();
+    }
+  }
+
+  @Benchmark
+  public long primitiveSum() throws InterruptedException {
+    try(var scope = StructuredLongAsyncScope.of(LongReducer.sum())) {
+      for(var i = 0; i < width; i++) {
+        var value = i * 1_000L;
+        scope.fork(() -> value);
+      }
+      return scope.result();
+    }
+  }
+}
@@ -0,0 +1,201 @@
+package fr.umlv.loom.reducer;
+
+import fr.umlv.loom.reducer.StructuredDoubleAsyncScope.DoubleReducer;
+import fr.umlv.loom.reducer.StructuredIntAsyncScope.IntReducer;
+import fr.umlv.loom.reducer.StructuredLongAsyncScope.LongReducer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrimitiveAsyncScopeTest {
+  @Test
+  public void intSum() throws InterruptedException {
+    try(var scope = StructuredIntAsyncScope.of(IntReducer.sum())) {
+      for(var i = 0; i < 10_000; i++) {
+        var value = i;
+        scope.fork(() -> value);
+      }
+      long sum = scope.result();
+      assertAll(
+          () -> assertEquals(IntStream.range(0, 10_000).asLongStream().sum(), sum),
+          () -> assertTrue(scope.exception().isEmpty())
+      );
+    }
+  }
+
+  @Test
+  public void summaryStatisticsResultTwice() throws InterruptedException {
+    try(var scope = StructuredIntAsyncScope.of(IntReducer.summaryStatistics())) {
+      scope.fork(() -> 1);
+      scope.fork(() -> 2);
+      var statistics1 = scope.result();
+      scope.fork(() -> 3);
+      var statistics2 = scope.result();
+      assertAll(
+          () -> assertNotSame(statistics1, statistics2),
+          () -> assertEquals(2, statistics1.getCount()),
+          () -> assertEquals(3, statistics1.getSum()),
+          () -> assertEquals(3, statistics2.getCount()),
+          () -> assertEquals(6, statistics2.getSum())
+      );
+    }
+  }
+
+  @Test
+  public void intMinMax() throws InterruptedException {
+    try(var scope = StructuredIntAsyncScope.of(IntReducer.max())) {
+      scope.fork(() -> 3);
+      scope.fork(() -> 42);
+      scope.fork(() -> 7);
+      assertEquals(OptionalInt.of(42), scope.result());
+    }
+    try(var scope = StructuredIntAsyncScope.of(IntReducer.min())) {
+      scope.fork(() -> 3);
+      scope.fork(() -> 42);
+      scope.fork(() -> 7);
+      assertEquals(OptionalInt.of(3), scope.result());
+    }
+  }
+
+  @Test
+  public void intNoTask() throws InterruptedException {
+    try(var scope = StructuredIntAsyncScope.of(IntReducer.max())) {
+      assertEquals(OptionalInt.empty(), scope.result());
+    }
+  }
+
+  @Test
+  public void longAverageWithFailures() throws InterruptedException {
+    try(var scope = StructuredLongAsyncScope.of(LongReducer.average())) {
+      scope.fork(() -> 10L);
+      scope.fork(() -> 20L);
+      scope.fork(() -> {
+        throw new IOException("oops");
+      });
+      scope.fork(() -> {
+        throw new IOException("oops2");
+      });
+      var average = scope.result();
+      var exception = scope.exception().orElseThrow();
+      assertAll(
+          () -> assertEquals(OptionalDouble.of(15.0), average),
+          () -> assertTrue(exception instanceof IOException),
+          () -> assertEquals(1, exception.getSuppressed().length)
+      );
+    }
+  }
+
+  @Test
+  public void longCountAndSummaryStatistics() throws InterruptedException {
+    try(var scope = StructuredLongAsyncScope.of(LongReducer.summaryStatistics())) {
+      for(var i = 0; i < 1_000; i++) {
+        var value = (long) i;
+        scope.fork(() -> value);
+      }
+      var statistics = scope.result();
+      assertAll(
+          () -> assertEquals(1_000, statistics.getCount()),
+          () -> assertEquals(0, statistics.getMin()),
+          () -> assertEquals(999, statistics.getMax()),
+          () -> assertEquals(999 * 1_000 / 2, statistics.getSum())
+      );
+    }
+  }
+
+  @Test
+  public void longMax() throws InterruptedException {
+    try(var scope = StructuredLongAsyncScope.of(LongReducer.max())) {
+      scope.fork(() -> Long.MAX_VALUE);
+      scope.fork(() -> 0L);
+      assertEquals(OptionalLong.of(Long.MAX_VALUE), scope.result());
+    }
+  }
+
+  @Test
+  public void longHistogram() throws InterruptedException {
+    try(var scope = StructuredLongAsyncScope.of(LongReducer.histogram(10, 100))) {
+      for(var i = 0; i < 200; i++) {
+        var value = (long) i;
+        scope.fork(() -> value);
+      }
+      assertArrayEquals(new long[] { 11, 90, 99 }, scope.result());
+    }
+  }
+
+  @Test
+  public void histogramBoundsNotStrictlyIncreasing() {
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class, () -> LongReducer.histogram(100, 10)),
+        () -> assertThrows(IllegalArgumentException.class, () -> IntReducer.histogram(10, 10)),
+        () -> assertThrows(IllegalArgumentException.class, () -> DoubleReducer.histogram(0.5, Double.NaN))
+    );
+  }
+
+  @Test
+  public void histogramBoundsAreCopied() throws InterruptedException {
+    var bounds = new int[] { 10 };
+    try(var scope = StructuredIntAsyncScope.of(IntReducer.histogram(bounds))) {
+      bounds[0] = 0;
+      scope.fork(() -> 5);
+      assertArrayEquals(new long[] { 1, 0 }, scope.result());
+    }
+  }
+
+  @Test
+  public void doubleSumAndHistogram() throws InterruptedException {
+    try(var scope = StructuredDoubleAsyncScope.of(DoubleReducer.sum())) {
+      scope.fork(() -> 1.5);
+      scope.fork(() -> 2.5);
+      assertEquals(4.0, scope.result());
+    }
+    try(var scope = StructuredDoubleAsyncScope.of(DoubleReducer.histogram(0.5))) {
+      scope.fork(() -> 0.25);
+      scope.fork(() -> 0.75);
+      scope.fork(() -> 1.0);
+      assertArrayEquals(new long[] { 1, 2 }, scope.result());
+    }
+  }
+
+  @Test
+  public void resultAfterShutdownWaitsForAccumulatingSubtask() throws InterruptedException {
+    var reducer = new IntReducer<long[], Long>(() -> new long[1],
+        (sum, value) -> {
+          var end = System.nanoTime() + 200_000_000L;  // still accumulating when the scope is shutdown
+          long remaining;
+          while((remaining = end - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+          }
+          sum[0] += value;
+        },
+        (sum1, sum2) -> {
+          sum1[0] += sum2[0];
+          return sum1;
+        }, sum -> sum[0]);
+    try(var scope = StructuredIntAsyncScope.of(reducer)) {
+      scope.fork(() -> 42);
+      Thread.sleep(50);
+      scope.shutdown();
+      assertEquals(42L, scope.result());
+    }
+  }
+
+  @Test
+  public void resultIsIdempotent() throws InterruptedException {
+    try(var scope = StructuredIntAsyncScope.of(IntReducer.count())) {
+      for(var i = 0; i < 100; i++) {
+        scope.fork(() -> 1);
+      }
+      assertAll(
+          () -> assertEquals(100, scope.result()),
+          () -> assertEquals(100, scope.result())
+      );
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package fr.umlv.loom.reducer;
+
+import fr.umlv.loom.reducer.StructuredAsyncScope.Reducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// mvn -Pjmh test-compile exec:exec -Djmh.args="StructuredAsyncScopeBenchmark -prof gc"
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class StructuredAsyncScopeBenchmark {
+  @Param({"1", "10", "100", "1000", "10000", "100000"})
+  private int width;
+
+  @Param({"toList", "max", "first", "firstException"})
+  private String reducerName;
+
+  private Reducer<Integer, ?, ?> reducer;
+
+  @Setup
+  public void setup() {
+    reducer = switch (reducerName) {
+      case "toList" -> Reducer.<Integer>toList();
+      case "max" -> Reducer.max(Integer::compareTo);
+      case "first" -> Reducer.<Integer>first();
+      case "firstException" -> Reducer.<Integer>firstException();
+      default -> throw new AssertionError("unknown reducer " + reducerName);
+    };
+  }
+
+  @Benchmark
+  public Object forkResult() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(reducer)) {
+      for(var i = 0; i < width; i++) {
+        var value = i;
+        scope.fork(() -> value);
+      }
+      return scope.result();
+    }
+  }
+}
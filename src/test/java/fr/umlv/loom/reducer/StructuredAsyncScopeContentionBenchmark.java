@@ -0,0 +1,124 @@
+package fr.umlv.loom.reducer;
+
+import fr.umlv.loom.reducer.StructuredAsyncScope.Reducer;
+import fr.umlv.loom.reducer.StructuredAsyncScope.Result;
+import fr.umlv.loom.reducer.StructuredAsyncScope.Result.State;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.TimeUnit;
+
+// Compare the reduction of StructuredAsyncScope with a CAS loop on the value (the previous implementation)
+// on 16 carrier threads, use -jvmArgsAppend to try with more carriers.
+// mvn -Pjmh test-compile exec:exec -Djmh.args="StructuredAsyncScopeContentionBenchmark -prof gc"
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview", "-Djdk.virtualThreadScheduler.parallelism=16" })
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class StructuredAsyncScopeContentionBenchmark {
+  static final class CasAsyncScope<T, A, V> extends StructuredTaskScope<T> {
+    private static final VarHandle VALUE_HANDLE;
+    static {
+      try {
+        VALUE_HANDLE = MethodHandles.lookup().findVarHandle(CasAsyncScope.class, "value", Object.class);
+      } catch (NoSuchFieldException | IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    private volatile A value;
+    private final Reducer<T, A, V> reducer;
+
+    CasAsyncScope(Reducer<T, A, V> reducer) {
+      this.reducer = reducer;
+    }
+
+    static <T, V> CasAsyncScope<T, ?, V> of(Reducer<T, ?, V> reducer) {
+      return new CasAsyncScope<>(reducer);
+    }
+
+    @Override
+    protected void handleComplete(Subtask<? extends T> subtask) {
+      Result<T> result = switch (subtask.state()) {
+        case UNAVAILABLE -> throw new AssertionError();
+        case SUCCESS -> new Result<T>(State.SUCCEED, subtask.get(), null);
+        case FAILED -> new Result<T>(State.FAILED, null, subtask.exception());
+      };
+      var shouldShutdown = new Runnable() {
+        private boolean shutdown;
+        @Override
+        public void run() {
+          shutdown = true;
+        }
+      };
+      for(;;) {
+        var oldValue = value;  // volatile read
+        var newValue = reducer.combiner().apply(oldValue, result, shouldShutdown);
+        if (VALUE_HANDLE.compareAndSet(this, oldValue, newValue)) {  // volatile read/write
+          if (shouldShutdown.shutdown) {
+            shutdown();
+          }
+          return;
+        }
+      }
+    }
+
+    V result() throws InterruptedException {
+      join();
+      return reducer.finisher().apply(value);  // volatile read
+    }
+  }
+
+  @Param({"10000", "100000"})
+  private int width;
+
+  @Param({"toList", "max", "firstException"})
+  private String reducerName;
+
+  private Reducer<Integer, ?, ?> reducer;
+
+  @Setup
+  public void setup() {
+    reducer = switch (reducerName) {
+      case "toList" -> Reducer.<Integer>toList();
+      case "max" -> Reducer.max(Integer::compareTo);
+      case "firstException" -> Reducer.<Integer>firstException();
+      default -> throw new AssertionError("unknown reducer " + reducerName);
+    };
+  }
+
+  @Benchmark
+  public Object structuredAsyncScope() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(reducer)) {
+      for(var i = 0; i < width; i++) {
+        var value = i;
+        scope.fork(() -> value);
+      }
+      return scope.result();
+    }
+  }
+
+  @Benchmark
+  public Object casLoop() throws InterruptedException {
+    try(var scope = CasAsyncScope.of(reducer)) {
+      for(var i = 0; i < width; i++) {
+        var value = i;
+        scope.fork(() -> value);
+      }
+      return scope.result();
+    }
+  }
+}
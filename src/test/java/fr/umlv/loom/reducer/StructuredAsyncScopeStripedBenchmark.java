@@ -0,0 +1,72 @@
+package fr.umlv.loom.reducer;
+
+import fr.umlv.loom.reducer.StructuredAsyncScope.Reducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Compare a commutative reducer accumulated in striped cells with the same reducer
+// reduced by one thread at a time (the merger is removed), on 16 carrier threads.
+// mvn -Pjmh test-compile exec:exec -Djmh.args="StructuredAsyncScopeStripedBenchmark -prof gc"
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview", "-Djdk.virtualThreadScheduler.parallelism=16" })
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class StructuredAsyncScopeStripedBenchmark {
+  @Param({"10000", "100000"})
+  private int width;
+
+  @Param({"sum", "count", "unorderedMax", "toUnorderedList"})
+  private String reducerName;
+
+  private Reducer<Integer, ?, ?> striped;
+  private Reducer<Integer, ?, ?> serialized;
+
+  @Setup
+  public void setup() {
+    striped = switch (reducerName) {
+      case "sum" -> Reducer.<Integer>sum(v -> v);
+      case "count" -> Reducer.<Integer>count();
+      case "unorderedMax" -> Reducer.unorderedMax(Integer::compareTo);
+      case "toUnorderedList" -> Reducer.<Integer>toUnorderedList();
+      default -> throw new AssertionError("unknown reducer " + reducerName);
+    };
+    serialized = withoutMerger(striped);
+  }
+
+  private static <T, A, V> Reducer<T, A, V> withoutMerger(Reducer<T, A, V> reducer) {
+    return new Reducer<>(reducer.combiner(), reducer.finisher());
+  }
+
+  private static Object run(Reducer<Integer, ?, ?> reducer, int width) throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(reducer)) {
+      for(var i = 0; i < width; i++) {
+        var value = i;
+        scope.fork(() -> value);
+      }
+      return scope.result();
+    }
+  }
+
+  @Benchmark
+  public Object striped() throws InterruptedException {
+    return run(striped, width);
+  }
+
+  @Benchmark
+  public Object serialized() throws InterruptedException {
+    return run(serialized, width);
+  }
+}
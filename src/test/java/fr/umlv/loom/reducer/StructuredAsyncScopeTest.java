@@ -0,0 +1,388 @@
+package fr.umlv.loom.reducer;
+
+import fr.umlv.loom.reducer.StructuredAsyncScope.Reducer;
+import fr.umlv.loom.reducer.StructuredAsyncScope.Result;
+import fr.umlv.loom.reducer.StructuredAsyncScope.Result.State;
+import fr.umlv.loom.structured.ScopeMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StructuredAsyncScopeTest {
+  @Test
+  public void toListManyTasks() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>toList())) {
+      for(var i = 0; i < 10_000; i++) {
+        var value = i;
+        scope.fork(() -> value);
+      }
+      var list = scope.result();
+      assertEquals(IntStream.range(0, 10_000).boxed().toList(),
+          list.stream().map(Result::element).sorted().toList());
+    }
+  }
+
+  @Test
+  public void maxManyTasks() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.max(Integer::compareTo))) {
+      for(var i = 0; i < 10_000; i++) {
+        var value = i;
+        scope.fork(() -> {
+          if (value % 1_000 == 0) {
+            throw new IOException("oops " + value);
+          }
+          return value;
+        });
+      }
+      var result = scope.result().orElseThrow();
+      assertAll(
+          () -> assertEquals(State.SUCCEED, result.state()),
+          () -> assertEquals(9_999, result.element()),
+          () -> assertEquals(9, result.suppressed().getSuppressed().length)
+      );
+    }
+  }
+
+  @Test
+  public void unorderedMaxManyTasks() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.unorderedMax(Integer::compareTo))) {
+      for(var i = 0; i < 10_000; i++) {
+        var value = i;
+        scope.fork(() -> {
+          if (value % 1_000 == 0) {
+            throw new IOException("oops " + value);
+          }
+          return value;
+        });
+      }
+      var result = scope.result().orElseThrow();
+      assertAll(
+          () -> assertEquals(State.SUCCEED, result.state()),
+          () -> assertEquals(9_999, result.element()),
+          () -> assertEquals(10, countExceptions(result.suppressed()))
+      );
+    }
+  }
+
+  private static int countExceptions(Throwable throwable) {
+    var count = 1;
+    for(var suppressed: throwable.getSuppressed()) {
+      count += countExceptions(suppressed);
+    }
+    return count;
+  }
+
+  @Test
+  public void firstShutdown() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>first())) {
+      scope.fork(() -> {
+        Thread.sleep(5_000);
+        return 1;
+      });
+      scope.fork(() -> 42);
+      var result = scope.result().orElseThrow();
+      assertEquals(42, result.element());
+    }
+  }
+
+  @Test
+  public void firstExceptionShutdownOnFailure() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>firstException().shutdownOnFailure())) {
+      scope.fork(() -> {
+        Thread.sleep(5_000);
+        return 1;
+      });
+      scope.fork(() -> {
+        throw new IOException("oops");
+      });
+      var exception = scope.result().orElseThrow();
+      assertEquals("oops", exception.getMessage());
+    }
+  }
+
+  @Test
+  public void sumManyTasks() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>sum(v -> v))) {
+      for(var i = 0; i < 10_000; i++) {
+        var value = i;
+        scope.fork(() -> {
+          if (value % 2 == 0) {
+            throw new IOException("oops");
+          }
+          return value;
+        });
+      }
+      long sum = scope.result();
+      assertEquals(IntStream.range(0, 10_000).filter(i -> i % 2 != 0).asLongStream().sum(), sum);
+    }
+  }
+
+  @Test
+  public void countManyTasks() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>count())) {
+      for(var i = 0; i < 10_000; i++) {
+        var value = i;
+        scope.fork(() -> value);
+      }
+      long count = scope.result();
+      assertAll(
+          () -> assertEquals(10_000, count),
+          () -> assertEquals(10_000, scope.result())  // idempotent
+      );
+    }
+  }
+
+  @Test
+  public void minManyTasks() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.min(Integer::compareTo))) {
+      for(var i = 0; i < 10_000; i++) {
+        var value = i;
+        scope.fork(() -> value + 100);
+      }
+      assertEquals(100, scope.result().orElseThrow().element());
+    }
+  }
+
+  @Test
+  public void unorderedMinManyTasks() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.unorderedMin(Integer::compareTo))) {
+      for(var i = 0; i < 10_000; i++) {
+        var value = i;
+        scope.fork(() -> value + 100);
+      }
+      assertEquals(100, scope.result().orElseThrow().element());
+    }
+  }
+
+  @Test
+  public void toUnorderedListManyTasks() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>toUnorderedList())) {
+      for(var i = 0; i < 10_000; i++) {
+        var value = i;
+        scope.fork(() -> value);
+      }
+      var list = scope.result();
+      assertEquals(IntStream.range(0, 10_000).boxed().toList(),
+          list.stream().map(Result::element).sorted().toList());
+    }
+  }
+
+  @Test
+  public void commutativeShutdownOnFailure() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>count().shutdownOnFailure())) {
+      scope.fork(() -> {
+        Thread.sleep(5_000);
+        return 1;
+      });
+      scope.fork(() -> {
+        throw new IOException("oops");
+      });
+      long count = scope.result();
+      assertEquals(0, count);
+    }
+  }
+
+  @Test
+  public void commutativeShutdownWaitsForAccumulatingSubtask() throws InterruptedException {
+    var reducer = Reducer.<Integer, ArrayList<Result<Integer>>, List<Result<Integer>>>commutative(
+        (list, result, shutdown) -> {
+          var newList = list == null? new ArrayList<Result<Integer>>(): list;
+          if (result.state() == State.SUCCEED) {  // still accumulating when the scope is shutdown
+            var end = System.nanoTime() + 200_000_000L;
+            long remaining;
+            while((remaining = end - System.nanoTime()) > 0) {
+              LockSupport.parkNanos(remaining);
+            }
+          }
+          newList.add(result);
+          return newList;
+        },
+        (list1, list2) -> {
+          list1.addAll(list2);
+          return list1;
+        },
+        list -> list == null? List.of(): List.copyOf(list)).shutdownOnFailure();
+    try(var scope = StructuredAsyncScope.of(reducer)) {
+      scope.fork(() -> 42);
+      scope.fork(() -> {
+        Thread.sleep(50);
+        throw new IOException("oops");
+      });
+      var list = scope.result();
+      assertEquals(List.of(State.FAILED, State.SUCCEED), list.stream().map(Result::state).sorted().toList());
+    }
+  }
+
+  @Test
+  public void listenerInterruptedSubtaskIsCancelled() throws InterruptedException {
+    var metrics = new ScopeMetrics("test");
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>toList(), metrics)) {
+      scope.fork(() -> 1);
+      scope.fork(() -> {
+        throw new IOException("oops");
+      });
+      scope.fork(() -> {
+        throw new InterruptedException();
+      });
+      scope.result();
+    }
+    assertAll(
+        () -> assertEquals(3, metrics.forked()),
+        () -> assertEquals(1, metrics.succeeded()),
+        () -> assertEquals(1, metrics.failed()),
+        () -> assertEquals(1, metrics.cancelled())
+    );
+  }
+
+  @Test
+  public void listenerJoinInterrupted() {
+    var metrics = new ScopeMetrics("test");
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>toList(), metrics)) {
+      scope.fork(() -> {
+        Thread.sleep(5_000);
+        return 1;
+      });
+      Thread.currentThread().interrupt();
+      assertThrows(InterruptedException.class, scope::result);
+    }
+    assertEquals(1, metrics.joinBlockedTime().count());
+  }
+
+  @Test
+  public void noTask() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>toList())) {
+      assertEquals(0, scope.result().size());
+    }
+  }
+
+  @Test
+  public void partialResult() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>toList())) {
+      for(var i = 0; i < 10; i++) {
+        var value = i;
+        scope.fork(() -> {
+          if (value % 2 == 0) {
+            Thread.sleep(5_000);
+          }
+          return value;
+        });
+      }
+      var partial = scope.partialResult(Instant.now().plusMillis(500));
+      assertAll(
+          () -> assertEquals(List.of(1, 3, 5, 7, 9), partial.value().stream().map(Result::element).sorted().toList()),
+          () -> assertEquals(5, partial.included()),
+          () -> assertEquals(5, partial.dropped()),
+          () -> assertFalse(partial.isComplete())
+      );
+    }
+  }
+
+  @Test
+  public void partialResultCommutative() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>sum(Integer::intValue))) {
+      for(var i = 0; i < 10; i++) {
+        var value = i;
+        scope.fork(() -> {
+          if (value >= 7) {
+            Thread.sleep(5_000);
+          }
+          return value;
+        });
+      }
+      var partial = scope.partialResult(Instant.now().plusMillis(500));
+      assertAll(
+          () -> assertEquals(21L, partial.value()),
+          () -> assertEquals(7, partial.included()),
+          () -> assertEquals(3, partial.dropped())
+      );
+    }
+  }
+
+  @Test
+  public void partialResultAfterShutdown() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>toList().shutdownOnFailure())) {
+      for(var i = 0; i < 1_000; i++) {
+        var value = i;
+        scope.fork(() -> {
+          if (value == 500) {
+            throw new IOException("oops");
+          }
+          return value;
+        });
+      }
+      var partial = scope.partialResult(Instant.now().plusSeconds(10));
+      assertAll(
+          () -> assertEquals(partial.included(), partial.value().size()),
+          () -> assertEquals(1_000, partial.included() + partial.dropped()),
+          () -> assertEquals(partial.value(), scope.result())  // sealed, so stable
+      );
+    }
+  }
+
+  @Test
+  public void partialResultCommutativeAfterShutdown() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>toUnorderedList().shutdownOnFailure())) {
+      for(var i = 0; i < 1_000; i++) {
+        var value = i;
+        scope.fork(() -> {
+          if (value == 500) {
+            throw new IOException("oops");
+          }
+          return value;
+        });
+      }
+      var partial = scope.partialResult(Instant.now().plusSeconds(10));
+      assertAll(
+          () -> assertEquals(partial.included(), partial.value().size()),
+          () -> assertEquals(1_000, partial.included() + partial.dropped()),
+          () -> assertEquals(partial.value().size(), scope.result().size())  // sealed, so stable
+      );
+    }
+  }
+
+  @Test
+  public void partialResultComplete() throws InterruptedException {
+    try(var scope = StructuredAsyncScope.of(Reducer.<Integer>count())) {
+      for(var i = 0; i < 100; i++) {
+        scope.fork(() -> 1);
+      }
+      var partial = scope.partialResult(Instant.now().plusSeconds(10));
+      assertAll(
+          () -> assertEquals(100L, partial.value()),
+          () -> assertEquals(100, partial.included()),
+          () -> assertTrue(partial.isComplete())
+      );
+    }
+  }
+
+  @Test
+  public void combinerExceptionDoesNotDetachTheQueue() throws InterruptedException {
+    var reducer = new Reducer<Integer, Long, Long>(
+        (sum, result, shutdown) -> {
+          if (result.element() == 50) {
+            throw new IllegalStateException("oops");
+          }
+          return (sum == null? 0L: sum) + result.element();
+        },
+        sum -> sum == null? 0L: sum);
+    var handler = Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler((t, e) -> {});  // the subtask completing with 50 throws
+    try(var scope = StructuredAsyncScope.of(reducer)) {
+      for(var i = 0; i < 100; i++) {
+        var value = i;
+        scope.fork(() -> value);
+      }
+      long sum = scope.result();
+      assertEquals(IntStream.range(0, 100).filter(i -> i != 50).asLongStream().sum(), sum);
+    } finally {
+      Thread.setDefaultUncaughtExceptionHandler(handler);
+    }
+  }
+}
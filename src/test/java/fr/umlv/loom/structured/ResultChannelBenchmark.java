@@ -0,0 +1,65 @@
+package fr.umlv.loom.structured;
+
+import fr.umlv.loom.structured.StructuredScopeAsStream.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// mvn -Pjmh test-compile exec:exec -Djmh.args="ResultChannelBenchmark -prof gc"
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class ResultChannelBenchmark {
+  @Param({"1", "4", "16"})
+  private int producers;
+
+  @Param({"50000"})
+  private int messages;
+
+  private void startProducers(Consumer<Result<Integer, RuntimeException>> sender) {
+    var messagesPerProducer = messages / producers;
+    for(var i = 0; i < producers; i++) {
+      Thread.ofPlatform().start(() -> {
+        for(var j = 0; j < messagesPerProducer; j++) {
+          sender.accept(new Result<>(Result.State.SUCCESS, j, null));
+        }
+      });
+    }
+  }
+
+  @Benchmark
+  public long resultChannel() throws InterruptedException {
+    var channel = new ResultChannel<Integer, RuntimeException>(Thread.currentThread());
+    startProducers(channel::send);
+    var sum = 0L;
+    for(var i = 0; i < messages / producers * producers; i++) {
+      sum += channel.take().result();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long linkedBlockingQueue() throws InterruptedException {
+    var queue = new LinkedBlockingQueue<Result<Integer, RuntimeException>>();
+    startProducers(queue::add);
+    var sum = 0L;
+    for(var i = 0; i < messages / producers * producers; i++) {
+      sum += queue.take().result();
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,81 @@
+package fr.umlv.loom.structured;
+
+import fr.umlv.loom.structured.StructuredScopeAsStream.Result;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultChannelTest {
+  private static Result<Integer, RuntimeException> success(int value) {
+    return new Result<>(Result.State.SUCCESS, value, null);
+  }
+
+  @Test
+  public void sendAndPoll() {
+    var channel = new ResultChannel<Integer, RuntimeException>(Thread.currentThread());
+    channel.send(success(1));
+    channel.send(success(2));
+    assertAll(
+        () -> assertEquals(1, channel.poll().result()),
+        () -> assertEquals(2, channel.poll().result()),
+        () -> assertNull(channel.poll())
+    );
+  }
+
+  @Test
+  public void pollEmpty() {
+    var channel = new ResultChannel<Integer, RuntimeException>(Thread.currentThread());
+    assertNull(channel.poll());
+  }
+
+  @Test
+  public void takeWaitForAResult() throws InterruptedException {
+    var channel = new ResultChannel<Integer, RuntimeException>(Thread.currentThread());
+    Thread.ofVirtual().start(() -> {
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+      channel.send(success(42));
+    });
+    assertEquals(42, channel.take().result());
+  }
+
+  @Test
+  public void takeManyProducers() throws InterruptedException {
+    var channel = new ResultChannel<Integer, RuntimeException>(Thread.currentThread());
+    var threads = new ArrayList<Thread>();
+    for(var i = 0; i < 10; i++) {
+      var id = i;
+      threads.add(Thread.ofVirtual().start(() -> {
+        for(var j = 0; j < 1_000; j++) {
+          channel.send(success(id * 1_000 + j));
+        }
+      }));
+    }
+    var values = new HashSet<Integer>();
+    for(var i = 0; i < 10_000; i++) {
+      values.add(channel.take().result());
+    }
+    for(var thread: threads) {
+      thread.join();
+    }
+    assertAll(
+        () -> assertEquals(IntStream.range(0, 10_000).boxed().collect(toSet()), values),
+        () -> assertNull(channel.poll())
+    );
+  }
+
+  @Test
+  public void takeInterrupted() {
+    var channel = new ResultChannel<Integer, RuntimeException>(Thread.currentThread());
+    Thread.currentThread().interrupt();
+    assertThrows(InterruptedException.class, channel::take);
+  }
+}
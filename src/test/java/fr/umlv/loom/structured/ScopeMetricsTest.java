@@ -0,0 +1,62 @@
+package fr.umlv.loom.structured;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScopeMetricsTest {
+  @Test
+  public void histogramEmpty() {
+    var metrics = new ScopeMetrics("test");
+    var histogram = metrics.runTime();
+    assertAll(
+        () -> assertEquals(0, histogram.count()),
+        () -> assertEquals(0, histogram.sum()),
+        () -> assertEquals(0, histogram.max()),
+        () -> assertEquals(0.0, histogram.mean()),
+        () -> assertEquals(0, histogram.percentile(.99))
+    );
+  }
+
+  @Test
+  public void histogramPercentile() {
+    var metrics = new ScopeMetrics("test");
+    for(var i = 0; i < 99; i++) {
+      metrics.onRun(100);
+    }
+    metrics.onRun(10_000);
+    var histogram = metrics.runTime();
+    assertAll(
+        () -> assertEquals(100, histogram.count()),
+        () -> assertEquals(99 * 100 + 10_000, histogram.sum()),
+        () -> assertEquals(10_000, histogram.max()),
+        () -> assertEquals(127, histogram.percentile(.5)),
+        () -> assertEquals(127, histogram.percentile(.99)),
+        () -> assertEquals(10_000, histogram.percentile(1))
+    );
+  }
+
+  @Test
+  public void histogramInvalidPercentile() {
+    var metrics = new ScopeMetrics("test");
+    assertThrows(IllegalArgumentException.class, () -> metrics.runTime().percentile(2));
+  }
+
+  @Test
+  public void counters() {
+    var metrics = new ScopeMetrics("test");
+    metrics.onFork();
+    metrics.onFork();
+    metrics.onFork();
+    metrics.onSuccess();
+    metrics.onFailure(new RuntimeException());
+    metrics.onClose();
+    assertAll(
+        () -> assertEquals("test", metrics.name()),
+        () -> assertEquals(3, metrics.forked()),
+        () -> assertEquals(1, metrics.succeeded()),
+        () -> assertEquals(1, metrics.failed()),
+        () -> assertEquals(1, metrics.cancelled())
+    );
+  }
+}
@@ -0,0 +1,50 @@
+package fr.umlv.loom.structured;
+
+import fr.umlv.loom.structured.StructuredScopeAsStream.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// mvn -Pjmh test-compile exec:exec -Djmh.args="StructuredScopeAsStreamBenchmark -prof gc"
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class StructuredScopeAsStreamBenchmark {
+  @Param({"1", "10", "100", "1000", "10000", "100000"})
+  private int width;
+
+  @Benchmark
+  public void forkJoinAll(Blackhole blackhole) throws InterruptedException {
+    try(var scope = new StructuredScopeAsStream<Integer, RuntimeException>()) {
+      for(var i = 0; i < width; i++) {
+        var value = i;
+        blackhole.consume(scope.fork(() -> value));
+      }
+      scope.joinAll();
+    }
+  }
+
+  @Benchmark
+  public long forkJoinAllStream() throws InterruptedException {
+    try(var scope = new StructuredScopeAsStream<Integer, RuntimeException>()) {
+      for(var i = 0; i < width; i++) {
+        var value = i;
+        scope.fork(() -> value);
+      }
+      return scope.joinAll(stream -> stream.filter(Result::isSuccess).count());
+    }
+  }
+}
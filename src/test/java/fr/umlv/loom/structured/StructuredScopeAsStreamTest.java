@@ -7,7 +7,10 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.UnknownHostException;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.partitioningBy;
@@ -158,6 +161,74 @@ public class StructuredScopeAsStreamTest {
     }
   }
 
+  @Test
+  public void toResultParallelSuccess() {
+    var result = IntStream.range(0, 10_000)
+        .mapToObj(i -> new Result<Integer, IOException>(Result.State.SUCCESS, i, null))
+        .parallel()
+        .collect(Result.toResult(Collectors.summingInt(v -> v)));
+    assertEquals(IntStream.range(0, 10_000).sum(), result.result());
+  }
+
+  @Test
+  public void toResultParallelMixedSuccessFailure() {
+    var result = IntStream.range(0, 10_000)
+        .mapToObj(i -> i % 2 == 0?
+            new Result<Integer, IOException>(Result.State.SUCCESS, i, null):
+            new Result<Integer, IOException>(Result.State.FAILED, null, new IOException("oops " + i)))
+        .parallel()
+        .collect(Result.toResult(Collectors.toList()));
+    assertEquals(IntStream.range(0, 10_000).filter(i -> i % 2 == 0).boxed().toList(), result.result());
+  }
+
+  @Test
+  public void toResultParallelAllFailures() {
+    var result = IntStream.range(0, 10_000)
+        .mapToObj(i -> new Result<Integer, IOException>(Result.State.FAILED, null, new IOException("oops " + i)))
+        .parallel()
+        .collect(Result.toResult(Collectors.toList()));
+    assertAll(
+        () -> assertEquals("oops 0", result.failure().getMessage()),
+        () -> assertEquals(9_999, countFailures(result.failure()) - 1)
+    );
+  }
+
+  private static int countFailures(Throwable throwable) {
+    var count = 1;
+    for(var suppressed: throwable.getSuppressed()) {
+      count += countFailures(suppressed);
+    }
+    return count;
+  }
+
+  @Test
+  public void manyTasksJoinAllParallel() throws InterruptedException {
+    try(var scope = new StructuredScopeAsStream<Integer, IOException>()) {
+      for(var i = 0; i < 10_000; i++) {
+        var value = i;
+        scope.fork(() -> {
+          if (value % 3 == 0) {
+            throw new IOException("oops " + value);
+          }
+          return value;
+        });
+      }
+
+      var result = scope.joinAllParallel(stream -> stream.collect(Result.toResult(Collectors.summingLong(v -> v))));
+      assertEquals(IntStream.range(0, 10_000).filter(i -> i % 3 != 0).asLongStream().sum(), result.result());
+    }
+  }
+
+  @Test
+  public void joinAllParallelIsParallel() throws InterruptedException {
+    try(var scope = new StructuredScopeAsStream<Integer, RuntimeException>()) {
+      scope.fork(() -> 42);
+
+      boolean parallel = scope.joinAllParallel(Stream::isParallel);
+      assertTrue(parallel);
+    }
+  }
+
   @Test
   public void manyTasksPartition() throws InterruptedException{
     try(var scope = new StructuredScopeAsStream<Integer, IOException>()) {
@@ -215,6 +286,206 @@ public class StructuredScopeAsStreamTest {
     }
   }
 
+  @Test
+  public void burstOfTasksStreamToList() throws InterruptedException {
+    try(var scope = new StructuredScopeAsStream<Integer, RuntimeException>()) {
+      for(var i = 0; i < 10_000; i++) {
+        var value = i;
+        scope.fork(() -> value);
+      }
+
+      List<Integer> values = scope.joinAll(stream -> stream.map(Result::result).sorted().toList());
+      assertEquals(IntStream.range(0, 10_000).boxed().toList(), values);
+    }
+  }
+
+  @Test
+  public void maxConcurrency() throws InterruptedException {
+    var running = new AtomicInteger();
+    var maxRunning = new AtomicInteger();
+    try(var scope = new StructuredScopeAsStream<Integer, RuntimeException>(2)) {
+      for(var i = 0; i < 20; i++) {
+        scope.fork(() -> {
+          var count = running.incrementAndGet();
+          maxRunning.accumulateAndGet(count, Math::max);
+          Thread.sleep(10);
+          running.decrementAndGet();
+          return count;
+        });
+      }
+
+      var count = scope.joinAll(stream -> stream.filter(Result::isSuccess).count());
+      assertAll(
+          () -> assertEquals(20, count),
+          () -> assertEquals(2, maxRunning.get())
+      );
+    }
+  }
+
+  @Test
+  public void maxConcurrencyForkBlocks() throws InterruptedException {
+    var latch = new CountDownLatch(1);
+    var owner = Thread.currentThread();
+    try(var scope = new StructuredScopeAsStream<Integer, RuntimeException>(1)) {
+      scope.fork(() -> {
+        latch.await();
+        return 1;
+      });
+      // the second fork() must block the owner until the first computation finishes
+      var unblocker = Thread.ofPlatform().start(() -> {
+        while(owner.getState() != Thread.State.WAITING) {
+          Thread.onSpinWait();
+        }
+        latch.countDown();
+      });
+      var task = scope.fork(() -> 2);
+      assertEquals(0, latch.getCount());
+      scope.joinAll();
+      unblocker.join();
+      assertEquals(2, task.get());
+    }
+  }
+
+  @Test
+  public void maxConcurrencyForkInterrupted() throws InterruptedException {
+    var latch = new CountDownLatch(1);
+    try(var scope = new StructuredScopeAsStream<Integer, RuntimeException>(1)) {
+      var task1 = scope.fork(() -> {
+        latch.await();
+        return 1;
+      });
+      Thread.currentThread().interrupt();
+      var task2 = scope.fork(() -> 2);
+      assertAll(
+          () -> assertTrue(Thread.interrupted()),
+          () -> assertEquals(StructuredScopeAsStream.Subtask.State.UNAVAILABLE, task2.state()),
+          () -> assertThrows(IllegalStateException.class, task2::get)
+      );
+      latch.countDown();
+      var values = scope.joinAll(stream -> stream.map(Result::result).toList());
+      assertAll(
+          () -> assertEquals(List.of(1), values),
+          () -> assertEquals(1, task1.get())
+      );
+    }
+  }
+
+  @Test
+  public void setMaxConcurrency() throws InterruptedException {
+    var running = new AtomicInteger();
+    var maxRunning = new AtomicInteger();
+    try(var scope = new StructuredScopeAsStream<Integer, RuntimeException>(4)) {
+      scope.setMaxConcurrency(1);
+      for(var i = 0; i < 10; i++) {
+        scope.fork(() -> {
+          var count = running.incrementAndGet();
+          maxRunning.accumulateAndGet(count, Math::max);
+          Thread.sleep(10);
+          running.decrementAndGet();
+          return count;
+        });
+      }
+
+      scope.joinAll();
+      assertAll(
+          () -> assertEquals(1, scope.maxConcurrency()),
+          () -> assertEquals(1, maxRunning.get())
+      );
+    }
+  }
+
+  @Test
+  public void maxConcurrencyUnbounded() {
+    try(var scope = new StructuredScopeAsStream<Integer, RuntimeException>()) {
+      assertAll(
+          () -> assertEquals(Integer.MAX_VALUE, scope.maxConcurrency()),
+          () -> assertThrows(IllegalStateException.class, () -> scope.setMaxConcurrency(10))
+      );
+    }
+  }
+
+  @Test
+  public void maxConcurrencyInvalid() {
+    assertThrows(IllegalArgumentException.class, () -> new StructuredScopeAsStream<Integer, RuntimeException>(0));
+  }
+
+  @Test
+  public void listenerMetrics() throws InterruptedException {
+    var metrics = new ScopeMetrics("test");
+    try(var scope = new StructuredScopeAsStream<Integer, IOException>(metrics)) {
+      for(var i = 0; i < 10; i++) {
+        var value = i;
+        scope.fork(() -> {
+          Thread.sleep(10);
+          if (value % 2 == 0) {
+            throw new IOException("oops");
+          }
+          return value;
+        });
+      }
+      scope.joinAll(stream -> stream.filter(Result::isSuccess).count());
+    }
+    assertAll(
+        () -> assertEquals(10, metrics.forked()),
+        () -> assertEquals(5, metrics.succeeded()),
+        () -> assertEquals(5, metrics.failed()),
+        () -> assertEquals(0, metrics.cancelled()),
+        () -> assertEquals(10, metrics.runTime().count()),
+        () -> assertTrue(metrics.runTime().percentile(.5) >= 10_000_000),
+        () -> assertEquals(10, metrics.queueWaitTime().count()),
+        () -> assertEquals(1, metrics.joinBlockedTime().count())
+    );
+  }
+
+  @Test
+  public void listenerMetricsCancelled() throws InterruptedException {
+    var metrics = new ScopeMetrics("test");
+    try(var scope = new StructuredScopeAsStream<Integer, RuntimeException>(metrics)) {
+      scope.fork(() -> 10);
+      scope.fork(() -> {
+        Thread.sleep(1_000);
+        return 30;
+      });
+      scope.joinAll(stream -> stream.findFirst());
+    }
+    assertAll(
+        () -> assertEquals(2, metrics.forked()),
+        () -> assertEquals(1, metrics.succeeded()),
+        () -> assertEquals(1, metrics.cancelled())
+    );
+  }
+
+  @Test
+  public void listenerMetricsJoinInterrupted() {
+    var metrics = new ScopeMetrics("test");
+    try(var scope = new StructuredScopeAsStream<Integer, RuntimeException>(metrics)) {
+      scope.fork(() -> {
+        Thread.sleep(5_000);
+        return 1;
+      });
+      Thread.currentThread().interrupt();
+      assertThrows(InterruptedException.class, scope::joinAll);
+    }
+    assertEquals(1, metrics.joinBlockedTime().count());
+  }
+
+  @Test
+  public void listenerMetricsInterruptedSubtaskIsCancelled() throws InterruptedException {
+    var metrics = new ScopeMetrics("test");
+    try(var scope = new StructuredScopeAsStream<Integer, RuntimeException>(metrics)) {
+      scope.fork(() -> 10);
+      scope.fork(() -> {
+        throw new InterruptedException();
+      });
+      scope.joinAll();
+    }
+    assertAll(
+        () -> assertEquals(2, metrics.forked()),
+        () -> assertEquals(1, metrics.succeeded()),
+        () -> assertEquals(0, metrics.failed()),
+        () -> assertEquals(1, metrics.cancelled())
+    );
+  }
 
   @Test
   public void manyTasksSuccessShortCircuitStream() throws InterruptedException {
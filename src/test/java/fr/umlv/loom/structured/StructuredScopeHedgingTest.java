@@ -0,0 +1,170 @@
+package fr.umlv.loom.structured;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StructuredScopeHedgingTest {
+  @Test
+  public void primaryIsFastEnough() throws InterruptedException {
+    var policy = HedgePolicy.<String>ofDelay(Duration.ofSeconds(1), 1);
+    try(var scope = new StructuredScopeHedging<String, Integer, RuntimeException>(policy, "key")) {
+      scope.fork(() -> 1);
+      scope.fork(() -> 2);
+      int value = scope.joinAll();
+      assertAll(
+          () -> assertEquals(1, value),
+          () -> assertEquals(1, scope.forked()),
+          () -> assertEquals(0, policy.hedges())
+      );
+    }
+  }
+
+  @Test
+  public void backupAfterDelay() throws InterruptedException {
+    var policy = HedgePolicy.<String>ofDelay(Duration.ofMillis(50), 1);
+    try(var scope = new StructuredScopeHedging<String, Integer, RuntimeException>(policy, "key")) {
+      scope.fork(() -> {
+        Thread.sleep(5_000);
+        return 1;
+      });
+      scope.fork(() -> 2);
+      int value = scope.joinAll();
+      assertAll(
+          () -> assertEquals(2, value),
+          () -> assertEquals(2, scope.forked()),
+          () -> assertEquals(1, policy.hedges())
+      );
+    }
+  }
+
+  @Test
+  public void cancelledIsNotALatency() throws InterruptedException {
+    var policy = HedgePolicy.<String>ofPercentile(.5, Duration.ofMillis(100), 1);
+    try(var scope = new StructuredScopeHedging<String, Integer, RuntimeException>(policy, "key")) {
+      scope.fork(() -> {
+        Thread.sleep(5_000);
+        return 1;
+      });
+      scope.fork(() -> 2);
+      int value = scope.joinAll();
+      assertEquals(2, value);
+    }
+    // only the backup is recorded, the primary is cancelled after at least 100 ms
+    assertTrue(policy.latency("key", 1).compareTo(Duration.ofMillis(100)) < 0);
+  }
+
+  @Test
+  public void noBudget() throws InterruptedException {
+    var policy = HedgePolicy.<String>ofDelay(Duration.ofMillis(10), 0);
+    try(var scope = new StructuredScopeHedging<String, Integer, RuntimeException>(policy, "key")) {
+      scope.fork(() -> {
+        Thread.sleep(200);
+        return 1;
+      });
+      scope.fork(() -> 2);
+      int value = scope.joinAll();
+      assertAll(
+          () -> assertEquals(1, value),
+          () -> assertEquals(1, scope.forked()),
+          () -> assertEquals(0, policy.hedges())
+      );
+    }
+  }
+
+  @Test
+  public void backupOnFailureWithoutBudget() throws InterruptedException, IOException {
+    var policy = HedgePolicy.<String>ofDelay(Duration.ofSeconds(10), 0);
+    try(var scope = new StructuredScopeHedging<String, Integer, IOException>(policy, "key")) {
+      scope.fork(() -> {
+        throw new IOException("boom");
+      });
+      scope.fork(() -> 2);
+      int value = scope.joinAll();
+      assertAll(
+          () -> assertEquals(2, value),
+          () -> assertEquals(2, scope.forked()),
+          () -> assertEquals(0, policy.hedges())
+      );
+    }
+  }
+
+  @Test
+  public void allFailures() throws InterruptedException {
+    var policy = HedgePolicy.<String>ofDelay(Duration.ofMillis(10), 1);
+    try(var scope = new StructuredScopeHedging<String, Integer, IOException>(policy, "key")) {
+      scope.fork(() -> {
+        throw new IOException("boom");
+      });
+      scope.fork(() -> {
+        throw new IOException("boom");
+      });
+      assertThrows(IOException.class, scope::joinAll);
+    }
+  }
+
+  @Test
+  public void budgetBoundsTheExtraLoad() throws InterruptedException {
+    var policy = HedgePolicy.<String>ofDelay(Duration.ZERO, .25);
+    for(var i = 0; i < 20; i++) {
+      try(var scope = new StructuredScopeHedging<String, Integer, RuntimeException>(policy, "key")) {
+        scope.fork(() -> {
+          Thread.sleep(20);
+          return 1;
+        });
+        scope.fork(() -> {
+          Thread.sleep(20);
+          return 2;
+        });
+        scope.joinAll();
+      }
+    }
+    assertAll(
+        () -> assertEquals(20, policy.requests()),
+        () -> assertEquals(5, policy.hedges())
+    );
+  }
+
+  @Test
+  public void percentileDelay() throws InterruptedException {
+    var policy = HedgePolicy.<String>ofPercentile(.5, Duration.ofSeconds(10), 0);
+    assertEquals(Duration.ofSeconds(10), policy.hedgeDelay("key"));
+    for(var i = 0; i < 32; i++) {
+      try(var scope = new StructuredScopeHedging<String, Integer, RuntimeException>(policy, "key")) {
+        scope.fork(() -> {
+          Thread.sleep(10);
+          return 1;
+        });
+        scope.joinAll();
+      }
+    }
+    var delay = policy.hedgeDelay("key");
+    assertAll(
+        () -> assertTrue(delay.compareTo(Duration.ofMillis(10)) >= 0),
+        () -> assertTrue(delay.compareTo(Duration.ofSeconds(1)) < 0),
+        () -> assertEquals(Duration.ofSeconds(10), policy.hedgeDelay("other")),
+        () -> assertEquals(Duration.ZERO, policy.latency("other", .5))
+    );
+  }
+
+  @Test
+  public void invalidPolicy() {
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class, () -> HedgePolicy.ofDelay(Duration.ofMillis(-1), .05)),
+        () -> assertThrows(IllegalArgumentException.class, () -> HedgePolicy.ofDelay(Duration.ZERO, 2)),
+        () -> assertThrows(IllegalArgumentException.class, () -> HedgePolicy.ofPercentile(1, Duration.ZERO, .05)),
+        () -> assertThrows(NullPointerException.class, () -> HedgePolicy.ofDelay(null, .05))
+    );
+  }
+
+  @Test
+  public void noTask() {
+    var policy = HedgePolicy.<String>ofDelay(Duration.ZERO, 1);
+    try(var scope = new StructuredScopeHedging<String, Object, RuntimeException>(policy, "key")) {
+      assertThrows(IllegalStateException.class, scope::joinAll);
+    }
+  }
+}